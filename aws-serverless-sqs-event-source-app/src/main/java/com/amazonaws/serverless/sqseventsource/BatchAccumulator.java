@@ -0,0 +1,124 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.math.RoundingMode;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.amazonaws.services.sqs.model.Message;
+
+import com.google.common.base.Preconditions;
+import com.google.common.math.IntMath;
+
+import lombok.AccessLevel;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Fills a single message processor batch from several SQS receives, since each receive returns at most 10 messages.
+ * Receives are issued in parallel rounds until the target batch size is reached, the queue comes back empty or the
+ * maximum linger time has passed. If a receive fails, the messages received so far are returned as the batch, and the
+ * failure is only passed on if there are none.
+ */
+@Slf4j
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class BatchAccumulator {
+    static final int SQS_MAX_MESSAGES_PER_RECEIVE = 10;
+    static final int MAX_CONCURRENT_RECEIVES = 10;
+
+    @NonNull
+    private final SQSProxy sqsProxy;
+    private final int targetBatchSize;
+    @NonNull
+    private final Duration maxLinger;
+    @NonNull
+    private final Clock clock;
+
+    public BatchAccumulator(final SQSProxy sqsProxy, final int targetBatchSize, final Duration maxLinger) {
+        this(sqsProxy, targetBatchSize, maxLinger, Clock.systemUTC());
+    }
+
+    /**
+     * @return an accumulator that issues a single receive per batch.
+     */
+    public static BatchAccumulator singleReceive(final SQSProxy sqsProxy) {
+        return new BatchAccumulator(sqsProxy, SQS_MAX_MESSAGES_PER_RECEIVE, Duration.ZERO);
+    }
+
+    /**
+     * Receives a batch of messages, blocking until it is filled.
+     *
+     * @param limit Maximum number of messages to receive.
+     * @return Received messages.
+     */
+    public List<Message> receive(final int limit) {
+        int batchSize = getBatchSize(limit);
+        if (batchSize <= SQS_MAX_MESSAGES_PER_RECEIVE) {
+            return sqsProxy.receiveMessages(batchSize);
+        }
+        return FutureUtil.join(accumulate(new ArrayList<>(), batchSize, Instant.now(clock).plus(maxLinger)));
+    }
+
+    /**
+     * Receives a batch of messages without blocking the calling thread.
+     *
+     * @param limit Maximum number of messages to receive.
+     * @return Future completed with the received messages.
+     */
+    public CompletableFuture<List<Message>> receiveAsync(final int limit) {
+        int batchSize = getBatchSize(limit);
+        if (batchSize <= SQS_MAX_MESSAGES_PER_RECEIVE) {
+            return sqsProxy.receiveMessagesAsync(batchSize);
+        }
+        return accumulate(new ArrayList<>(), batchSize, Instant.now(clock).plus(maxLinger));
+    }
+
+    private int getBatchSize(final int limit) {
+        Preconditions.checkArgument(limit > 0, "limit must be positive");
+        return Math.min(limit, targetBatchSize);
+    }
+
+    private CompletableFuture<List<Message>> accumulate(final List<Message> batch, final int batchSize, final Instant deadline) {
+        int missing = batchSize - batch.size();
+        int receiveCount = Math.min(MAX_CONCURRENT_RECEIVES, IntMath.divide(missing, SQS_MAX_MESSAGES_PER_RECEIVE, RoundingMode.CEILING));
+        // messages received so far are invisible to other consumers, so a failed receive must not drop them
+        AtomicReference<Throwable> receiveFailure = new AtomicReference<>();
+        List<CompletableFuture<List<Message>>> receives = IntStream.range(0, receiveCount)
+                .mapToObj(i -> sqsProxy.receiveMessagesAsync(Math.min(SQS_MAX_MESSAGES_PER_RECEIVE, missing - i * SQS_MAX_MESSAGES_PER_RECEIVE))
+                        .exceptionally(e -> {
+                            receiveFailure.compareAndSet(null, e);
+                            return Collections.emptyList();
+                        }))
+                .collect(Collectors.toList());
+
+        return CompletableFuture.allOf(receives.toArray(new CompletableFuture[0])).thenCompose(v -> {
+            int sizeBefore = batch.size();
+            receives.forEach(r -> batch.addAll(r.join()));
+
+            if (receiveFailure.get() != null) {
+                if (batch.isEmpty()) {
+                    CompletableFuture<List<Message>> failed = new CompletableFuture<>();
+                    failed.completeExceptionally(receiveFailure.get());
+                    return failed;
+                }
+                log.warn("Receive failed, dispatching the {} messages accumulated so far", batch.size(), receiveFailure.get());
+                return CompletableFuture.completedFuture(batch);
+            }
+
+            boolean queueEmpty = batch.size() == sizeBefore;
+            if (queueEmpty || batch.size() >= batchSize || !Instant.now(clock).isBefore(deadline)) {
+                log.info("Accumulated batch of {} messages (target {})", batch.size(), batchSize);
+                return CompletableFuture.completedFuture(batch);
+            }
+            return accumulate(batch, batchSize, deadline);
+        });
+    }
+}
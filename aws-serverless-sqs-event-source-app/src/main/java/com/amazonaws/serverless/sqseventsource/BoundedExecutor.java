@@ -0,0 +1,122 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import com.google.common.base.Preconditions;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Runs tasks on an executor while capping how many are in flight at once. Submitting a task blocks until a slot is free.
+ * <p>
+ * The cap can be lowered below the maximum at runtime with {@link #setLimit(int)}, e.g. while the tasks' downstream is
+ * congested. Tasks already in flight are not affected, new tasks wait until fewer than the new limit are in flight.
+ */
+public class BoundedExecutor {
+    private final ExecutorService executor;
+    @Getter
+    private final int maxInFlight;
+    private final Object lock = new Object();
+    private final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+    private int inFlight = 0;
+    private int limit;
+
+    public BoundedExecutor(@NonNull final ExecutorService executor, final int maxInFlight) {
+        Preconditions.checkArgument(maxInFlight > 0, "maxInFlight must be positive");
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.limit = maxInFlight;
+    }
+
+    /**
+     * Runs the given task once a slot is free. Unchecked exceptions thrown by the task are rethrown from
+     * {@link #awaitQuiescence()}.
+     *
+     * @param task Task to run.
+     */
+    public void execute(final Runnable task) {
+        synchronized (lock) {
+            awaitUninterruptibly(() -> inFlight < limit);
+            inFlight++;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (RuntimeException e) {
+                    failure.compareAndSet(null, e);
+                } finally {
+                    complete();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            complete();
+            throw e;
+        }
+    }
+
+    /**
+     * Blocks until every submitted task has completed.
+     *
+     * @throws RuntimeException the first exception thrown by a task since the last call, if any.
+     */
+    public void awaitQuiescence() {
+        synchronized (lock) {
+            awaitUninterruptibly(() -> inFlight == 0);
+        }
+
+        RuntimeException e = failure.getAndSet(null);
+        if (e != null) {
+            throw e;
+        }
+    }
+
+    /**
+     * @return Number of tasks currently allowed in flight at once.
+     */
+    public int getLimit() {
+        synchronized (lock) {
+            return limit;
+        }
+    }
+
+    /**
+     * @param limit Number of tasks to allow in flight at once, between 1 and {@link #getMaxInFlight()}. Values outside of
+     *              that range are clamped to it.
+     */
+    public void setLimit(final int limit) {
+        synchronized (lock) {
+            this.limit = Math.max(1, Math.min(maxInFlight, limit));
+            lock.notifyAll();
+        }
+    }
+
+    private void complete() {
+        synchronized (lock) {
+            inFlight--;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits on the lock until the condition holds. Must be called while holding the lock.
+     */
+    private void awaitUninterruptibly(final BooleanSupplier condition) {
+        boolean interrupted = false;
+        while (!condition.getAsBoolean()) {
+            try {
+                lock.wait();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
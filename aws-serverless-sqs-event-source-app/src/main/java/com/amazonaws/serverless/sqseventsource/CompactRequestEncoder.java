@@ -0,0 +1,86 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.Base64;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPOutputStream;
+
+import com.amazonaws.serverless.sqseventsource.messageprocessor.JsonCodec;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessorRequest;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.WireFormat;
+import com.amazonaws.services.sqs.model.Message;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.CountingOutputStream;
+
+/**
+ * Builds requests in the compact wire format described by {@link WireFormat}.
+ */
+final class CompactRequestEncoder {
+    private CompactRequestEncoder() {
+    }
+
+    /**
+     * Builds a compact request for the given messages.
+     *
+     * @param messages Messages to send.
+     * @param compressionEnabled If <code>true</code>, the batch is compressed whenever that makes it smaller.
+     * @param codec Codec to write compressed batches with. Binary attribute values must be written as base64 strings.
+     * @return Request to send to a processor that supports {@link WireFormat#COMPACT_VERSION}.
+     */
+    static SQSMessageProcessorRequest encode(final List<Message> messages, final boolean compressionEnabled, final JsonCodec codec) {
+        List<Message> projected = messages.stream()
+                .map(CompactRequestEncoder::project)
+                .collect(Collectors.toList());
+
+        SQSMessageProcessorRequest request = new SQSMessageProcessorRequest(projected);
+        request.setVersion(WireFormat.COMPACT_VERSION);
+        if (compressionEnabled) {
+            compress(request, codec);
+        }
+        return request;
+    }
+
+    /**
+     * Keeps only the fields a processor needs. Receipt handles stay with the poller, which does all acking.
+     */
+    private static Message project(final Message message) {
+        Message projected = new Message()
+                .withMessageId(message.getMessageId())
+                .withBody(message.getBody());
+        if (message.getAttributes() != null && !message.getAttributes().isEmpty()) {
+            projected.setAttributes(message.getAttributes());
+        }
+        if (message.getMessageAttributes() != null && !message.getMessageAttributes().isEmpty()) {
+            projected.setMessageAttributes(message.getMessageAttributes());
+        }
+        return projected;
+    }
+
+    private static void compress(final SQSMessageProcessorRequest request, final JsonCodec codec) {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        CountingOutputStream uncompressed;
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            uncompressed = new CountingOutputStream(gzip);
+            try (Writer writer = new OutputStreamWriter(uncompressed, Charsets.UTF_8)) {
+                codec.write(request.getMessages(), writer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        // base64 grows the compressed bytes by a third, small batches are usually smaller as they are
+        long encodedSize = (compressed.size() + 2) / 3 * 4L;
+        if (encodedSize >= uncompressed.getCount()) {
+            return;
+        }
+        request.setMessages(null);
+        request.setEncoding(WireFormat.GZIP_ENCODING);
+        request.setCompressedMessages(Base64.getEncoder().encodeToString(compressed.toByteArray()));
+    }
+}
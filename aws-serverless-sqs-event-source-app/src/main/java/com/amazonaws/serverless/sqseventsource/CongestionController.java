@@ -0,0 +1,113 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+import com.google.common.base.Preconditions;
+
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Adapts the number of in-flight processor invocations and the number of messages per invocation to the processor's
+ * capacity, additive increase / multiplicative decrease style.
+ * <p>
+ * Throttled invocations and invocations that take much longer than expected for their batch size are signs of congestion,
+ * e.g. when the processor shares its reserved concurrency with other functions. Each congestion event halves both limits. Invocations
+ * that finish in time grow them again by one message per invocation, and by one concurrent invocation once as many
+ * invocations as the current limit have succeeded.
+ * <p>
+ * Invocations in flight when congestion sets in tend to report it together, so limits are cut at most once per
+ * {@link #DECREASE_INTERVAL}.
+ */
+@Slf4j
+public class CongestionController {
+    static final Duration DECREASE_INTERVAL = Duration.ofSeconds(1);
+    /**
+     * How many times the expected latency an invocation may take before it counts as congestion.
+     */
+    static final double LATENCY_SPIKE_FACTOR = 2.0;
+
+    private final int maxConcurrency;
+    private final int maxBatchSize;
+    private final Clock clock;
+
+    private int concurrencyLimit;
+    private int batchSizeLimit;
+    private int successesSinceIncrease = 0;
+    private Instant lastDecrease;
+
+    /**
+     * @param maxConcurrency Largest number of in-flight invocations to allow.
+     * @param maxBatchSize Largest number of messages to send per invocation.
+     */
+    public CongestionController(final int maxConcurrency, final int maxBatchSize) {
+        this(maxConcurrency, maxBatchSize, Clock.systemUTC());
+    }
+
+    CongestionController(final int maxConcurrency, final int maxBatchSize, @NonNull final Clock clock) {
+        Preconditions.checkArgument(maxConcurrency > 0, "maxConcurrency must be positive");
+        Preconditions.checkArgument(maxBatchSize > 0, "maxBatchSize must be positive");
+        this.maxConcurrency = maxConcurrency;
+        this.maxBatchSize = maxBatchSize;
+        this.clock = clock;
+        this.concurrencyLimit = maxConcurrency;
+        this.batchSizeLimit = maxBatchSize;
+    }
+
+    /**
+     * Records an invocation that returned. Grows the limits, unless the invocation was slow enough to count as congestion.
+     *
+     * @param latency Time the invocation took.
+     * @param expectedLatency Time an invocation with as many messages is expected to take, e.g. from
+     *            {@link MessageProcessingStats#getExpectedDuration(int)}. Zero if there is no expectation yet.
+     */
+    public synchronized void onSuccess(@NonNull final Duration latency, @NonNull final Duration expectedLatency) {
+        // comparing whole invocations keeps the fixed per-invocation overhead of small batches from looking like a spike
+        boolean spike = !expectedLatency.isZero() && latency.toNanos() > LATENCY_SPIKE_FACTOR * expectedLatency.toNanos();
+        if (spike) {
+            decrease("latency spike");
+            return;
+        }
+
+        batchSizeLimit = Math.min(maxBatchSize, batchSizeLimit + 1);
+        if (++successesSinceIncrease >= concurrencyLimit) {
+            concurrencyLimit = Math.min(maxConcurrency, concurrencyLimit + 1);
+            successesSinceIncrease = 0;
+        }
+    }
+
+    /**
+     * Records an invocation that was throttled.
+     */
+    public synchronized void onThrottle() {
+        decrease("throttle");
+    }
+
+    /**
+     * @return Number of invocations to keep in flight at most.
+     */
+    public synchronized int getConcurrencyLimit() {
+        return concurrencyLimit;
+    }
+
+    /**
+     * @return Number of messages to send per invocation at most.
+     */
+    public synchronized int getBatchSizeLimit() {
+        return batchSizeLimit;
+    }
+
+    private void decrease(final String reason) {
+        Instant now = Instant.now(clock);
+        successesSinceIncrease = 0;
+        if (lastDecrease != null && now.isBefore(lastDecrease.plus(DECREASE_INTERVAL))) {
+            return;
+        }
+        lastDecrease = now;
+        concurrencyLimit = Math.max(1, concurrencyLimit / 2);
+        batchSizeLimit = Math.max(1, batchSizeLimit / 2);
+        log.info("Congestion ({}). Limiting to {} in-flight invocations of {} messages", reason, concurrencyLimit, batchSizeLimit);
+    }
+}
@@ -0,0 +1,54 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+
+import com.google.common.base.Throwables;
+
+/**
+ * Utility methods for working with futures.
+ */
+final class FutureUtil {
+    private FutureUtil() {
+    }
+
+    /**
+     * Waits for the given future to complete and returns its result. Unlike {@link CompletableFuture#join()}, unchecked
+     * exceptions the future completed with are rethrown as-is instead of being wrapped.
+     */
+    public static <T> T join(final CompletableFuture<T> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for future to complete", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause() instanceof CompletionException && e.getCause().getCause() != null
+                    ? e.getCause().getCause()
+                    : e.getCause();
+            Throwables.throwIfUnchecked(cause);
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Creates an AWS SDK async handler that completes the given future with the call's result or error.
+     */
+    public static <REQUEST extends AmazonWebServiceRequest, RESULT> AsyncHandler<REQUEST, RESULT> completing(final CompletableFuture<RESULT> future) {
+        return new AsyncHandler<REQUEST, RESULT>() {
+            @Override
+            public void onError(final Exception exception) {
+                future.completeExceptionally(exception);
+            }
+
+            @Override
+            public void onSuccess(final REQUEST request, final RESULT result) {
+                future.complete(result);
+            }
+        };
+    }
+}
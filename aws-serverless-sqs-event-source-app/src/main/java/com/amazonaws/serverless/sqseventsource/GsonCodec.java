@@ -0,0 +1,50 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+import com.amazonaws.serverless.sqseventsource.messageprocessor.JsonCodec;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializer;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * {@link JsonCodec} backed by Gson. This is the poller's default codec.
+ */
+@RequiredArgsConstructor
+public final class GsonCodec implements JsonCodec {
+    /**
+     * Binary attribute values are written as base64 strings, which is how processors decode them.
+     */
+    static final Gson GSON = new GsonBuilder()
+            .disableHtmlEscaping()
+            .registerTypeHierarchyAdapter(ByteBuffer.class, (JsonSerializer<ByteBuffer>) (src, type, context) -> {
+                byte[] bytes = new byte[src.remaining()];
+                src.duplicate().get(bytes);
+                return new JsonPrimitive(Base64.getEncoder().encodeToString(bytes));
+            })
+            .create();
+
+    public static final GsonCodec INSTANCE = new GsonCodec(GSON);
+
+    @NonNull
+    private final Gson gson;
+
+    @Override
+    public <T> T read(final Reader reader, final Type type) {
+        return gson.fromJson(reader, type);
+    }
+
+    @Override
+    public void write(final Object value, final Writer writer) {
+        gson.toJson(value, writer);
+    }
+}
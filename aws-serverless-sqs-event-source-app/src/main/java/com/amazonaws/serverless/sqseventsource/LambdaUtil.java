@@ -1,5 +1,9 @@
 package com.amazonaws.serverless.sqseventsource;
 
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.ByteBuffer;
 import java.util.Base64;
 
 import com.amazonaws.services.lambda.model.InvokeResult;
@@ -14,8 +18,18 @@ final class LambdaUtil {
         if (invokeResult.getPayload() == null) {
             return null;
         }
-        byte[] bytes = invokeResult.getPayload().array();
-        return new String(bytes, Charsets.UTF_8);
+        // decode from a duplicate so the payload's position is left alone, whatever its offset or backing
+        return Charsets.UTF_8.decode(invokeResult.getPayload().duplicate()).toString();
+    }
+
+    /**
+     * @return A reader decoding the payload in place, without copying it. <code>null</code> if there is no payload.
+     */
+    public static Reader getPayloadAsReader(final InvokeResult invokeResult) {
+        if (invokeResult.getPayload() == null) {
+            return null;
+        }
+        return new InputStreamReader(new ByteBufferInputStream(invokeResult.getPayload().duplicate()), Charsets.UTF_8);
     }
 
     public static String getDecodedLog(final InvokeResult invokeResult) {
@@ -25,4 +39,38 @@ final class LambdaUtil {
         byte[] decoded = Base64.getDecoder().decode(invokeResult.getLogResult());
         return new String(decoded, Charsets.UTF_8);
     }
+
+    /**
+     * Reads the remaining bytes of a buffer. Works for heap, direct and read-only buffers alike.
+     */
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(final ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int off, final int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(bytes, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
 }
@@ -3,70 +3,456 @@ package com.amazonaws.serverless.sqseventsource;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 
+import com.amazonaws.serverless.sqseventsource.messageprocessor.MessageGroups;
 import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessorRequest;
 import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessorResponse;
 import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageResult;
 import com.amazonaws.services.sqs.model.Message;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.Lists;
+import com.google.common.primitives.Ints;
 
-import lombok.AccessLevel;
+import lombok.Builder;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
  * Handles dispatching messages to message processor and acking/nacking SQS messages. Also provides capacity estimates based on
  * measuring processing times of previous messages.
+ * <p>
+ * If built with a {@link BoundedExecutor}, batches are dispatched to the message processor concurrently, up to the
+ * executor's limit of in-flight invocations. Callers must then {@link #awaitInFlight()} before returning.
+ * <p>
+ * If built with a {@link PayloadBatcher}, batches whose request payload would exceed its byte budget are split into
+ * several invocations.
+ * <p>
+ * For FIFO queues, messages of a group are never acked ahead of an earlier message of the group that did not succeed.
+ * Invocations that share a message group run one after another, other invocations are dispatched concurrently.
+ * <p>
+ * Batch sizes, invocation latencies and per-message outcomes are recorded in the given {@link PollMetrics}. Outcomes of
+ * messages from another queue are recorded in that queue's metrics instead.
+ * <p>
+ * If built with a {@link VisibilityHeartbeat}, the visibility of dispatched messages is extended until their
+ * invocation has returned, so slow invocations do not outlast the queue's visibility timeout.
+ * <p>
+ * If built with a {@link RetryBackoff}, messages the processor asks to retry without a delay back off exponentially
+ * with the number of times they were received.
+ * <p>
+ * If bisection is enabled, a batch of a standard queue whose invocation fails, e.g. because a poison message crashes the
+ * processor or makes it time out, is split in half and each half is invoked again, recursively, as long as the halves can
+ * still be processed before the cutoff set with {@link #setCutoff(Instant)}. The good messages are then processed and only
+ * the culprit is left to become visible again.
+ * <p>
+ * A throttled invocation is never counted as a failure of its batch. Without a {@link CongestionController} the batch is
+ * left to become visible again. With one, in-flight invocations and batch sizes are cut back while the processor is
+ * congested, and the throttled batch is sent again after {@link #THROTTLE_BACKOFF_IN_MILLIS} for as long as that fits before
+ * the cutoff.
  */
 @Slf4j
-@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
 public class MessageDispatcher {
     static final int DEFAULT_RETRY_DELAY_IN_SECONDS = 10;
+    static final int MIN_TIMEOUT_BUFFER_IN_MILLIS = 1000;
+    static final int MAX_TIMEOUT_BUFFER_IN_MILLIS = 5000;
+    static final int THROTTLE_BACKOFF_IN_MILLIS = 500;
 
-    @NonNull
     private final SQSProxy sqsProxy;
-    @NonNull
     private final MessageProcessorProxy messageProcessorProxy;
-    @NonNull
     private final Clock clock;
+    /**
+     * Executor for concurrent processor invocations. If <code>null</code>, batches are dispatched synchronously.
+     */
+    private final BoundedExecutor dispatchExecutor;
+    /**
+     * Splits batches that are too large for a single invocation. If <code>null</code>, batches are never split.
+     */
+    private final PayloadBatcher payloadBatcher;
+    private final PollMetrics metrics;
+    /**
+     * Extends the visibility of messages while they are processed. If <code>null</code>, visibility is never extended.
+     */
+    private final VisibilityHeartbeat visibilityHeartbeat;
+    /**
+     * Delays retries the processor did not give a delay for. If <code>null</code>, they are retried after
+     * {@link #DEFAULT_RETRY_DELAY_IN_SECONDS}.
+     */
+    private final RetryBackoff retryBackoff;
+    /**
+     * If <code>true</code>, batches whose invocation fails are bisected as described above.
+     */
+    private final boolean bisectOnFailure;
+    /**
+     * Adapts concurrency and batch sizes to throttling and latency. If <code>null</code>, both stay fixed and throttled batches
+     * are not sent again.
+     */
+    private final CongestionController congestionController;
 
-    private MessageProcessingStats stats = new MessageProcessingStats();
+    private final AtomicInteger inFlightMessages = new AtomicInteger();
+    private volatile MessageProcessingStats stats = new MessageProcessingStats();
+    private volatile int timeoutBufferInMillis = MAX_TIMEOUT_BUFFER_IN_MILLIS;
+    private volatile Instant cutoff;
+
+    /**
+     * Builds a {@link MessageDispatcher}. Optional collaborators that are not set stay disabled, and metrics are not reported.
+     */
+    public static class MessageDispatcherBuilder {
+        private Clock clock = Clock.systemUTC();
+        private PollMetrics metrics = PollMetrics.disabled();
+    }
 
     public MessageDispatcher(final SQSProxy sqsProxy, final MessageProcessorProxy messageProcessorProxy) {
-        this(sqsProxy, messageProcessorProxy, Clock.systemUTC());
+        this(sqsProxy, messageProcessorProxy, Clock.systemUTC(), null, null, PollMetrics.disabled(), null, null, false, null);
     }
 
+    @Builder
+    MessageDispatcher(@NonNull final SQSProxy sqsProxy, @NonNull final MessageProcessorProxy messageProcessorProxy,
+                      @NonNull final Clock clock, final BoundedExecutor dispatchExecutor, final PayloadBatcher payloadBatcher,
+                      @NonNull final PollMetrics metrics, final VisibilityHeartbeat visibilityHeartbeat, final RetryBackoff retryBackoff,
+                      final boolean bisectOnFailure, final CongestionController congestionController) {
+        this.sqsProxy = sqsProxy;
+        this.messageProcessorProxy = messageProcessorProxy;
+        this.clock = clock;
+        this.dispatchExecutor = dispatchExecutor;
+        this.payloadBatcher = payloadBatcher;
+        this.metrics = metrics;
+        this.visibilityHeartbeat = visibilityHeartbeat;
+        this.retryBackoff = retryBackoff;
+        this.bisectOnFailure = bisectOnFailure;
+        this.congestionController = congestionController;
+    }
+
+    /**
+     * Dispatches a batch of messages to the message processor. In concurrent mode this returns as soon as the batch has been
+     * handed to a free invocation slot, blocking while all slots are busy.
+     *
+     * @param messages Messages to process.
+     */
     public void dispatch(final List<Message> messages) {
+        dispatch(messages, sqsProxy);
+    }
+
+    /**
+     * Dispatches a batch of messages received from another queue than the one this dispatcher was constructed with, e.g. a
+     * lower priority tier sharing the same message processor. The messages are acked on that queue, and it must have the
+     * same visibility timeout.
+     *
+     * @param messages Messages to process.
+     * @param queue Proxy of the queue the messages were received from.
+     */
+    public void dispatch(final List<Message> messages, @NonNull final SQSProxy queue) {
         Preconditions.checkArgument(!messages.isEmpty(), "messages cannot be empty");
 
-        Instant start = Instant.now(clock);
+        // only messages from FIFO queues are received with a group id
+        boolean fifo = messages.stream().anyMatch(message -> MessageGroups.getGroupId(message) != null);
+        // keeping each group's messages together leaves as few groups as possible spanning several invocations
+        List<Message> toSplit = fifo ? MessageGroups.split(messages).stream().flatMap(List::stream).collect(Collectors.toList()) : messages;
+        List<List<Message>> batches = limitBatchSize(payloadBatcher == null ? Collections.singletonList(toSplit) : payloadBatcher.split(toSplit));
+        // batches of a dispatch may wait for each other, so their visibility is extended from the start
+        VisibilityHeartbeat.Extension extension = visibilityHeartbeat == null ? null : visibilityHeartbeat.start(messages, queue);
+        try {
+            if (fifo) {
+                // invocations a message group spans have to run one after another, other groups do not wait for them
+                for (List<List<Message>> chain : chainByGroup(batches)) {
+                    submit(chain.stream().mapToInt(List::size).sum(), () -> processInGroupOrder(chain, extension, queue));
+                }
+                return;
+            }
+            for (List<Message> batch : batches) {
+                submit(batch.size(), () -> process(batch, extension, queue));
+            }
+        } catch (RuntimeException e) {
+            if (extension != null) {
+                extension.releaseAll();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Splits batches further while the congestion controller limits the batch size.
+     */
+    private List<List<Message>> limitBatchSize(final List<List<Message>> batches) {
+        if (congestionController == null) {
+            return batches;
+        }
+        int batchSizeLimit = congestionController.getBatchSizeLimit();
+        List<List<Message>> limited = new ArrayList<>(batches.size());
+        for (List<Message> batch : batches) {
+            limited.addAll(batch.size() > batchSizeLimit ? Lists.partition(batch, batchSizeLimit) : Collections.singletonList(batch));
+        }
+        return limited;
+    }
+
+    /**
+     * Chains batches that share a message group. Expects each group's messages to be next to each other, so only
+     * consecutive batches can share one.
+     */
+    private static List<List<List<Message>>> chainByGroup(final List<List<Message>> batches) {
+        List<List<List<Message>>> chains = new ArrayList<>();
+        List<List<Message>> chain = null;
+        String lastGroupId = null;
+        for (List<Message> batch : batches) {
+            String firstGroupId = MessageGroups.getGroupId(batch.get(0));
+            if (chain == null || firstGroupId == null || !firstGroupId.equals(lastGroupId)) {
+                chain = new ArrayList<>();
+                chains.add(chain);
+            }
+            chain.add(batch);
+            lastGroupId = MessageGroups.getGroupId(batch.get(batch.size() - 1));
+        }
+        return chains;
+    }
+
+    private void submit(final int messageCount, final Runnable task) {
+        if (dispatchExecutor == null) {
+            task.run();
+            return;
+        }
+
+        inFlightMessages.addAndGet(messageCount);
+        try {
+            dispatchExecutor.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    inFlightMessages.addAndGet(-messageCount);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlightMessages.addAndGet(-messageCount);
+            throw e;
+        }
+    }
+
+    /**
+     * Blocks until all concurrently dispatched batches have been processed and acked.
+     */
+    public void awaitInFlight() {
+        if (dispatchExecutor != null) {
+            dispatchExecutor.awaitQuiescence();
+        }
+    }
+
+    private void process(final List<Message> messages, final VisibilityHeartbeat.Extension extension, final SQSProxy queue) {
+        // only bisecting needs the duration of a failed invocation
+        boolean bisect = bisectOnFailure && messages.size() > 1;
+        Instant start = bisect ? Instant.now(clock) : null;
         SQSMessageProcessorResponse response;
         try {
-            response = messageProcessorProxy.invoke(new SQSMessageProcessorRequest(messages));
-            stats.record(Duration.between(start, Instant.now(clock)), messages.size());
+            response = invokeUntilNotThrottled(messages);
+        } catch (MessageProcessorThrottledException e) {
+            log.warn("MessageProcessor is throttled. Leaving {} messages to become visible again", messages.size());
+            giveUp(messages, extension, queue);
+            return;
+        }
+        if (response == null && bisect) {
+            // each half may take as long as the whole batch did, e.g. if the culprit makes the processor time out
+            Duration failedInvocation = Duration.between(start, Instant.now(clock));
+            if (fitsBeforeCutoff(failedInvocation)) {
+                int middle = messages.size() / 2;
+                log.info("Bisecting failed batch of {} messages", messages.size());
+                process(new ArrayList<>(messages.subList(0, middle)), extension, queue);
+                if (fitsBeforeCutoff(failedInvocation)) {
+                    process(new ArrayList<>(messages.subList(middle, messages.size())), extension, queue);
+                } else {
+                    giveUp(messages.subList(middle, messages.size()), extension, queue);
+                }
+                return;
+            }
+        }
+        if (response == null) {
+            giveUp(messages, extension, queue);
+            return;
+        }
+        release(messages, extension);
+        ack(messages, response.getMessageResults(), queue);
+    }
+
+    private boolean fitsBeforeCutoff(final Duration invocationTime) {
+        Instant currentCutoff = cutoff;
+        return currentCutoff == null || !Instant.now(clock).plus(invocationTime).isAfter(currentCutoff);
+    }
+
+    /**
+     * Leaves messages the processor failed on to become visible again once their visibility timeout expires.
+     */
+    private void giveUp(final List<Message> messages, final VisibilityHeartbeat.Extension extension, final SQSProxy queue) {
+        release(messages, extension);
+        metricsOf(queue).addMessagesErrored(messages.size());
+    }
+
+    /**
+     * @return Metrics to count the outcomes of messages from the given queue in.
+     */
+    private PollMetrics metricsOf(final SQSProxy queue) {
+        return queue == sqsProxy ? metrics : queue.getMetrics();
+    }
+
+    private static void release(final List<Message> messages, final VisibilityHeartbeat.Extension extension) {
+        if (extension != null) {
+            // released before acking, so an extension cannot override a retry delay
+            extension.release(messages);
+        }
+    }
+
+    /**
+     * Processes FIFO queue batches so that no message is acked ahead of an earlier message of its group that did not succeed.
+     * Once a message of a group fails, later messages of the group are not sent to the processor and share its outcome.
+     */
+    private void processInGroupOrder(final List<List<Message>> batches, final VisibilityHeartbeat.Extension extension, final SQSProxy queue) {
+        Map<String, SQSMessageResult> groupFailures = new HashMap<>();
+        for (List<Message> batch : batches) {
+            List<Message> toInvoke = batch.stream()
+                    .filter(message -> !groupFailures.containsKey(MessageGroups.getGroupId(message)))
+                    .collect(Collectors.toList());
+            // skipped messages are handed back right away
+            release(batch.stream()
+                    .filter(message -> groupFailures.containsKey(MessageGroups.getGroupId(message)))
+                    .collect(Collectors.toList()), extension);
+            SQSMessageProcessorResponse response = null;
+            if (!toInvoke.isEmpty()) {
+                try {
+                    response = invokeUntilNotThrottled(toInvoke);
+                } catch (MessageProcessorThrottledException e) {
+                    // later messages of the throttled groups are skipped, the same as after an error
+                    log.warn("MessageProcessor is throttled. Leaving {} messages to become visible again", toInvoke.size());
+                }
+            }
+            release(toInvoke, extension);
+            List<SQSMessageResult> results = response == null ? Collections.emptyList() : response.getMessageResults();
+            ack(batch, inGroupOrder(batch, results, groupFailures), queue);
+        }
+    }
+
+    private static List<SQSMessageResult> inGroupOrder(final List<Message> messages, final List<SQSMessageResult> results,
+                                                       final Map<String, SQSMessageResult> groupFailures) {
+        Map<String, SQSMessageResult> resultsByMessageId = results.stream()
+                .collect(Collectors.toMap(SQSMessageResult::getMessageId, Function.identity(), (first, second) -> first));
+        List<SQSMessageResult> ordered = new ArrayList<>(messages.size());
+        for (Message message : messages) {
+            String groupId = MessageGroups.getGroupId(message);
+            SQSMessageResult failure = groupId == null ? null : groupFailures.get(groupId);
+            if (failure != null) {
+                ordered.add(MessageGroups.skippedResult(message, failure));
+                continue;
+            }
+
+            // a message without a result is left alone, the same as an error
+            SQSMessageResult result = resultsByMessageId.getOrDefault(message.getMessageId(),
+                    new SQSMessageResult(message.getMessageId(), SQSMessageResult.Status.ERROR));
+            if (groupId != null && result.getStatus() != SQSMessageResult.Status.SUCCESS) {
+                groupFailures.put(groupId, result);
+            }
+            ordered.add(result);
+        }
+        return ordered;
+    }
+
+    /**
+     * Invokes the processor, sending the batch again after a backoff while the invocation is throttled and a congestion
+     * controller is present.
+     *
+     * @return The processor's response, or <code>null</code> if the processor failed.
+     * @throws MessageProcessorThrottledException if the processor is still throttled when there is no time left to back off.
+     */
+    private SQSMessageProcessorResponse invokeUntilNotThrottled(final List<Message> messages) throws MessageProcessorThrottledException {
+        while (true) {
+            try {
+                return invoke(messages);
+            } catch (MessageProcessorThrottledException e) {
+                if (congestionController == null) {
+                    throw e;
+                }
+                congestionController.onThrottle();
+                applyConcurrencyLimit();
+                Instant currentCutoff = cutoff;
+                // without a cutoff there is no telling how long the processor may stay throttled
+                if (currentCutoff == null
+                        || Instant.now(clock).plusMillis(THROTTLE_BACKOFF_IN_MILLIS + timeoutBufferInMillis).isAfter(currentCutoff)) {
+                    throw e;
+                }
+                log.info("MessageProcessor is throttled. Sending {} messages again in {}ms", messages.size(), THROTTLE_BACKOFF_IN_MILLIS);
+                if (!sleep(THROTTLE_BACKOFF_IN_MILLIS)) {
+                    throw e;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The processor's response, or <code>null</code> if the processor failed.
+     */
+    private SQSMessageProcessorResponse invoke(final List<Message> messages) throws MessageProcessorThrottledException {
+        metrics.recordBatchSize(messages.size());
+        Instant start = Instant.now(clock);
+        try {
+            SQSMessageProcessorResponse response = messageProcessorProxy.invoke(new SQSMessageProcessorRequest(messages));
+            Duration latency = Duration.between(start, Instant.now(clock));
+            // expected from earlier batches only, so a slow batch does not raise its own bar
+            Duration expectedLatency = congestionController != null ? stats.getExpectedDuration(messages.size()) : null;
+            stats.record(latency, messages.size());
+            metrics.recordProcessorInvokeLatency(latency);
+            if (congestionController != null) {
+                congestionController.onSuccess(latency, expectedLatency);
+                applyConcurrencyLimit();
+            }
+            return response;
         } catch (MessageProcessorException e) {
             log.warn("MessageProcessor encountered an error", e);
-            return;
+            return null;
+        }
+    }
+
+    private void applyConcurrencyLimit() {
+        if (dispatchExecutor != null) {
+            dispatchExecutor.setLimit(congestionController.getConcurrencyLimit());
         }
+    }
+
+    /**
+     * @return <code>false</code> if interrupted.
+     */
+    private static boolean sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
 
-        Map<SQSMessageResult.Status, List<SQSMessageResult>> resultsByStatus = response.getMessageResults()
+    private void ack(final List<Message> messages, final List<SQSMessageResult> results, final SQSProxy queue) {
+        Map<SQSMessageResult.Status, List<SQSMessageResult>> resultsByStatus = results
                 .stream()
                 .collect(Collectors.groupingBy(SQSMessageResult::getStatus));
 
-        deleteMessages(messages, resultsByStatus.getOrDefault(SQSMessageResult.Status.SUCCESS, Collections.emptyList()));
-        retryMessages(messages, resultsByStatus.getOrDefault(SQSMessageResult.Status.RETRY, Collections.emptyList()));
+        CompletableFuture<SQSBatchResult> deleted = deleteMessages(messages, resultsByStatus.getOrDefault(SQSMessageResult.Status.SUCCESS, Collections.emptyList()), queue);
+        CompletableFuture<SQSBatchResult> retried = retryMessages(messages, resultsByStatus.getOrDefault(SQSMessageResult.Status.RETRY, Collections.emptyList()), queue);
 
         // Just log failed messages, but do not do anything to the queue. Let user control this behavior through SQS queue's visibility timeout setting
-        logFailedMessageResults(resultsByStatus.getOrDefault(SQSMessageResult.Status.ERROR, Collections.emptyList()));
+        List<SQSMessageResult> errors = resultsByStatus.getOrDefault(SQSMessageResult.Status.ERROR, Collections.emptyList());
+        logFailedMessageResults(errors);
+        PollMetrics queueMetrics = metricsOf(queue);
+        queueMetrics.addMessagesErrored(errors.size());
+
+        SQSBatchResult deleteResult = FutureUtil.join(deleted);
+        SQSBatchResult retryResult = FutureUtil.join(retried);
+        queueMetrics.addMessagesDeleted(deleteResult.getSucceeded().size());
+        queueMetrics.addMessagesRetried(retryResult.getSucceeded().size());
+        logFailedAcks("delete", deleteResult);
+        logFailedAcks("retry", retryResult);
     }
 
     private void logFailedMessageResults(List<SQSMessageResult> results) {
@@ -77,10 +463,21 @@ public class MessageDispatcher {
         log.info("{} messages encountered errors during processing: {}", results.size(), results);
     }
 
-    private void deleteMessages(final List<Message> messages, final List<SQSMessageResult> results) {
+    private void logFailedAcks(final String operation, final SQSBatchResult result) {
+        if (result.getFailed().isEmpty()) {
+            return;
+        }
+        List<String> messageIds = result.getFailed().stream()
+                .map(Message::getMessageId)
+                .collect(Collectors.toList());
+        log.warn("Failed to {} {} messages. They become visible again once their visibility timeout expires. messageIds: {}",
+                operation, messageIds.size(), messageIds);
+    }
+
+    private CompletableFuture<SQSBatchResult> deleteMessages(final List<Message> messages, final List<SQSMessageResult> results, final SQSProxy queue) {
         if (results.isEmpty()) {
             // nothing to do
-            return;
+            return CompletableFuture.completedFuture(SQSBatchResult.EMPTY);
         }
 
         Set<String> messageIds = results.stream()
@@ -93,40 +490,77 @@ public class MessageDispatcher {
                 .filter(message -> messageIds.contains(message.getMessageId()))
                 .collect(Collectors.toList());
 
-        sqsProxy.deleteMessages(msgsProcessed);
+        return queue.deleteMessagesAsync(msgsProcessed);
     }
 
-    private void retryMessages(final List<Message> messages, final List<SQSMessageResult> results) {
+    private CompletableFuture<SQSBatchResult> retryMessages(final List<Message> messages, final List<SQSMessageResult> results, final SQSProxy queue) {
         if (results.isEmpty()) {
-            return;
+            return CompletableFuture.completedFuture(SQSBatchResult.EMPTY);
         }
 
         Map<String, Message> messageIdToMessage = messages.stream()
                 .collect(Collectors.toMap(Message::getMessageId, Function.identity()));
 
         List<RetryMessageRequest> retryMessageRequests = results.stream()
-                .map(r -> new RetryMessageRequest(messageIdToMessage.get(r.getMessageId()), getRetryDelay(r)))
+                .map(r -> {
+                    Message message = messageIdToMessage.get(r.getMessageId());
+                    return new RetryMessageRequest(message, getRetryDelay(message, r));
+                })
                 .collect(Collectors.toList());
 
         log.info("Retrying {} messages. retry results: {}", results.size(), results);
 
-        sqsProxy.retryMessages(retryMessageRequests);
+        return queue.retryMessagesAsync(retryMessageRequests);
     }
 
-    private int getRetryDelay(final SQSMessageResult result) {
-        return Optional.ofNullable(result.getRetryDelayInSeconds()).orElse(DEFAULT_RETRY_DELAY_IN_SECONDS);
+    private int getRetryDelay(final Message message, final SQSMessageResult result) {
+        if (result.getRetryDelayInSeconds() != null) {
+            return result.getRetryDelayInSeconds();
+        }
+        return retryBackoff == null ? DEFAULT_RETRY_DELAY_IN_SECONDS : retryBackoff.getDelayInSeconds(message);
     }
 
+    /**
+     * Starts a new polling cycle. The timeout buffer is recalculated from the cycle that just ended before its stats are
+     * discarded.
+     */
     public void reset() {
+        if (stats.hasSamples()) {
+            // the capacity estimate already allows for tail latency, the buffer only has to absorb worse outliers and acking
+            long overrunInMillis = stats.getTailOverrun().toMillis();
+            timeoutBufferInMillis = (int) Math.min(MAX_TIMEOUT_BUFFER_IN_MILLIS, MIN_TIMEOUT_BUFFER_IN_MILLIS + overrunInMillis);
+            log.info("Using timeout buffer of {}ms", timeoutBufferInMillis);
+        }
         stats = new MessageProcessingStats();
     }
 
+    /**
+     * @param cutoff Time by which the current poll's work should be done. Batches are only bisected while the halves can
+     *               still be processed before it.
+     */
+    public void setCutoff(final Instant cutoff) {
+        this.cutoff = cutoff;
+    }
+
+    /**
+     * @return Time to keep free at the end of a poll so the last invocation can finish and ack its messages. Starts at
+     * {@link #MAX_TIMEOUT_BUFFER_IN_MILLIS} and adapts to observed invocation latency after each polling cycle.
+     */
+    public int getTimeoutBufferInMillis() {
+        return timeoutBufferInMillis;
+    }
+
     public int getEstimatedCapacity(Instant cutoff) {
         // special case: if we haven't processed anything yet, just say we can process a lot of messages
         if (!stats.hasSamples()) {
             log.info("No message processing stats yet. Returning estimated capacity of INT_MAX");
             return Integer.MAX_VALUE;
         }
-        return stats.getEstimatedCapacity(Duration.between(Instant.now(clock), cutoff));
+        int estimatedCapacity = stats.getEstimatedCapacity(Duration.between(Instant.now(clock), cutoff));
+        if (dispatchExecutor == null) {
+            return estimatedCapacity;
+        }
+        // invocations run side by side, but messages already in flight use up part of that capacity
+        return Math.max(0, Ints.saturatedCast((long) estimatedCapacity * dispatchExecutor.getLimit() - inFlightMessages.get()));
     }
 }
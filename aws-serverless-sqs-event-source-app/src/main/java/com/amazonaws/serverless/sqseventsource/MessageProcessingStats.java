@@ -1,55 +1,194 @@
 package com.amazonaws.serverless.sqseventsource;
 
 import java.time.Duration;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.function.LongUnaryOperator;
-import java.util.stream.Collectors;
-import java.util.stream.LongStream;
+import java.util.Arrays;
 
 import com.google.common.base.Preconditions;
+import com.google.common.primitives.Ints;
 
+import lombok.AllArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * Helper class for managing message processing timing statistics.
+ * Helper class for managing message processing timing statistics. Safe to record from concurrent invocations.
+ * <p>
+ * Only the most recent batches are kept, in a fixed-size ring buffer with running sums, so memory use does not grow with
+ * how long the poller runs and every operation is bounded by the window size.
+ * <p>
+ * Batch durations are modelled as a fixed per-invocation overhead plus a per-message cost, fitted by least squares over the
+ * window. Once the window holds enough batches, capacity estimates add a high percentile of the model's residuals to every
+ * batch, so they are based on tail latency rather than the mean.
  */
 @Slf4j
 class MessageProcessingStats {
-    private final List<Long> samples = new ArrayList<>();
+    static final int DEFAULT_WINDOW_SIZE = 64;
+    static final double TAIL_PERCENTILE = 0.9;
+    static final int MIN_TAIL_SAMPLES = 10;
 
-    public void record(final Duration processingDuration, final int numMessages) {
+    private final long[] batchDurationsInMillis;
+    private final int[] batchSizes;
+
+    private int nextIndex = 0;
+    private int batchCount = 0;
+    private long windowDurationInMillis = 0;
+    private long windowMessageCount = 0;
+    private double windowMessageCountSquares = 0;
+    private double windowDurationMessageProducts = 0;
+
+    MessageProcessingStats() {
+        this(DEFAULT_WINDOW_SIZE);
+    }
+
+    MessageProcessingStats(final int windowSize) {
+        Preconditions.checkArgument(windowSize > 0, "windowSize must be positive");
+        batchDurationsInMillis = new long[windowSize];
+        batchSizes = new int[windowSize];
+    }
+
+    public synchronized void record(final Duration processingDuration, final int numMessages) {
+        Preconditions.checkArgument(numMessages > 0, "numMessages must be positive");
         long processingTimeInMillis = processingDuration.toMillis();
-        long perMessageAverage = processingTimeInMillis / numMessages;
-        log.info("Processed {} messages in {}ms. perMessageAverage={}ms", numMessages, processingTimeInMillis, perMessageAverage);
-        samples.addAll(
-                LongStream.iterate(perMessageAverage, LongUnaryOperator.identity())
-                        .limit(numMessages)
-                        .boxed()
-                        .collect(Collectors.toList()));
+        log.info("Processed {} messages in {}ms. perMessageAverage={}ms", numMessages, processingTimeInMillis, processingTimeInMillis / numMessages);
+
+        // evict the oldest batch once the window is full
+        long evictedDuration = batchDurationsInMillis[nextIndex];
+        int evictedSize = batchSizes[nextIndex];
+        windowDurationInMillis += processingTimeInMillis - evictedDuration;
+        windowMessageCount += numMessages - evictedSize;
+        windowMessageCountSquares += (double) numMessages * numMessages - (double) evictedSize * evictedSize;
+        windowDurationMessageProducts += (double) processingTimeInMillis * numMessages - (double) evictedDuration * evictedSize;
+        batchDurationsInMillis[nextIndex] = processingTimeInMillis;
+        batchSizes[nextIndex] = numMessages;
+
+        nextIndex = (nextIndex + 1) % batchSizes.length;
+        batchCount = Math.min(batchCount + 1, batchSizes.length);
     }
 
     /**
      * @return <code>true</code> if messages processing stats have been recorded.
      */
-    public boolean hasSamples() {
-        return !samples.isEmpty();
+    public synchronized boolean hasSamples() {
+        return batchCount > 0;
     }
 
     /**
      * Calculates estimated number of messages that can be processed in the given time duration based on previous processing time samples.
+     * Assumes messages are sent in batches as large as the largest recently processed batch.
      *
      * @param duration Time duration to use for estimating capacity.
      * @return The estimated number of messages that can be processed in the given time duration.
      */
-    public int getEstimatedCapacity(Duration duration) {
+    public synchronized int getEstimatedCapacity(Duration duration) {
         Preconditions.checkState(hasSamples(), "Cannot compute estimated capacity without any timing samples recorded.");
-        double perMessageProcessingAverageInMillis = samples.stream()
-                .collect(Collectors.summarizingLong(Long::longValue))
-                .getAverage();
+        Model model = fit();
+        long durationInMillis = duration.toMillis();
+        if (durationInMillis <= 0) {
+            return 0;
+        }
+        if (model.perMessageInMillis <= 0) {
+            return Integer.MAX_VALUE;
+        }
 
-        int estimatedCapacity = (int) (((double) duration.toMillis()) / perMessageProcessingAverageInMillis);
-        log.info("Estimated capacity of {} messages can be processed in {}ms based on samples: {}", estimatedCapacity, duration.toMillis(), samples);
+        int batchSize = getLargestBatchSize();
+        double perBatchOverheadInMillis = model.overheadInMillis + model.tailInMillis;
+        double batchDurationInMillis = perBatchOverheadInMillis + model.perMessageInMillis * batchSize;
+        long fullBatches = (long) (durationInMillis / batchDurationInMillis);
+        double leftoverInMillis = durationInMillis - fullBatches * batchDurationInMillis;
+        long partialBatch = Math.max(0, (long) ((leftoverInMillis - perBatchOverheadInMillis) / model.perMessageInMillis));
+
+        int estimatedCapacity = Ints.saturatedCast(fullBatches * batchSize + Math.min(partialBatch, batchSize));
+        log.info("Estimated capacity of {} messages can be processed in {}ms. overhead={}ms, perMessage={}ms, p{}Residual={}ms over the last {} batches ({} messages)",
+                estimatedCapacity, durationInMillis, model.overheadInMillis, model.perMessageInMillis, (int) (TAIL_PERCENTILE * 100),
+                model.tailInMillis, batchCount, windowMessageCount);
         return estimatedCapacity;
     }
+
+    /**
+     * @return How much longer than the tail estimate the slowest recent batch took. Zero if no stats have been recorded.
+     */
+    public synchronized Duration getTailOverrun() {
+        if (!hasSamples()) {
+            return Duration.ZERO;
+        }
+        Model model = fit();
+        return Duration.ofMillis((long) Math.max(0, model.maxResidualInMillis - model.tailInMillis));
+    }
+
+    /**
+     * Calculates how long a batch of the given size is expected to take based on previous processing time samples, without
+     * the tail latency allowance. Batches smaller than any recent one are expected to take as long as the smallest recent
+     * batch, since the samples do not tell how much of that batch's time was overhead.
+     *
+     * @param numMessages Number of messages in the batch.
+     * @return The expected processing time. Zero if no stats have been recorded.
+     */
+    public synchronized Duration getExpectedDuration(final int numMessages) {
+        if (!hasSamples()) {
+            return Duration.ZERO;
+        }
+        Model model = fit();
+        int batchSize = Math.max(numMessages, getSmallestBatchSize());
+        return Duration.ofMillis((long) (model.overheadInMillis + model.perMessageInMillis * batchSize));
+    }
+
+    private int getLargestBatchSize() {
+        int largest = 0;
+        for (int i = 0; i < batchCount; i++) {
+            largest = Math.max(largest, batchSizes[i]);
+        }
+        return largest;
+    }
+
+    private int getSmallestBatchSize() {
+        int smallest = Integer.MAX_VALUE;
+        for (int i = 0; i < batchCount; i++) {
+            smallest = Math.min(smallest, batchSizes[i]);
+        }
+        return smallest;
+    }
+
+    private Model fit() {
+        double meanSize = (double) windowMessageCount / batchCount;
+        double meanDuration = (double) windowDurationInMillis / batchCount;
+        double sizeVariance = windowMessageCountSquares / batchCount - meanSize * meanSize;
+
+        double overhead = 0;
+        double perMessage = (double) windowDurationInMillis / windowMessageCount;
+        if (sizeVariance > 1e-9) {
+            double slope = (windowDurationMessageProducts / batchCount - meanSize * meanDuration) / sizeVariance;
+            double intercept = meanDuration - slope * meanSize;
+            // noisy samples can produce a fit that makes no physical sense, fall back to a pure per-message cost then
+            if (slope > 0 && intercept >= 0) {
+                overhead = intercept;
+                perMessage = slope;
+            }
+        }
+
+        double[] residuals = new double[batchCount];
+        double maxResidual = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < batchCount; i++) {
+            residuals[i] = batchDurationsInMillis[i] - (overhead + perMessage * batchSizes[i]);
+            maxResidual = Math.max(maxResidual, residuals[i]);
+        }
+        // nearest-rank percentile, which is just the slowest batch over a few samples, so estimate from the fit alone until then
+        double tail = 0;
+        if (batchCount >= MIN_TAIL_SAMPLES) {
+            Arrays.sort(residuals);
+            int tailIndex = (int) Math.ceil(TAIL_PERCENTILE * batchCount) - 1;
+            tail = Math.max(0, residuals[tailIndex]);
+        }
+
+        return new Model(overhead, perMessage, tail, maxResidual);
+    }
+
+    /**
+     * Fitted processing time model: <code>overhead + perMessage * batchSize</code>, plus residual statistics.
+     */
+    @AllArgsConstructor
+    private static final class Model {
+        private final double overheadInMillis;
+        private final double perMessageInMillis;
+        private final double tailInMillis;
+        private final double maxResidualInMillis;
+    }
 }
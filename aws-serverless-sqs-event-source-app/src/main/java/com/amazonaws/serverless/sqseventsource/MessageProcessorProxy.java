@@ -1,14 +1,24 @@
 package com.amazonaws.serverless.sqseventsource;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+import com.amazonaws.serverless.sqseventsource.messageprocessor.JsonCodec;
 import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessorRequest;
 import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessorResponse;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.WireFormat;
 import com.amazonaws.services.lambda.AWSLambda;
 import com.amazonaws.services.lambda.model.InvocationType;
 import com.amazonaws.services.lambda.model.InvokeRequest;
 import com.amazonaws.services.lambda.model.InvokeResult;
+import com.amazonaws.services.lambda.model.TooManyRequestsException;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
+import com.google.common.base.Charsets;
 
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
@@ -16,32 +26,139 @@ import lombok.extern.slf4j.Slf4j;
 
 /**
  * Proxy for interacting with the message processor lambda function.
+ * <p>
+ * Requests are encoded straight into a per-thread buffer that is reused across invocations, and responses are parsed straight
+ * from the result payload, so no intermediate JSON strings are built. A buffer that a large request grew beyond
+ * {@link #MAX_RETAINED_BUFFER_BYTES} is dropped once the invocation has returned, so rare large batches do not pin memory.
+ * <p>
+ * Batches are sent in the original wire format until the processor's responses show it supports the compact format, see
+ * {@link WireFormat}.
+ * <p>
+ * Payloads are read and written with a {@link JsonCodec}, {@link GsonCodec} by default.
+ * <p>
+ * Throttled invocations surface as {@link MessageProcessorThrottledException}, since their batch was never processed and can be
+ * sent again.
  */
 @Slf4j
 @RequiredArgsConstructor
 public class MessageProcessorProxy {
-    private static final Gson GSON = new GsonBuilder().disableHtmlEscaping().create();
+    static final int INITIAL_BUFFER_BYTES = 64 * 1024;
+    static final int MAX_RETAINED_BUFFER_BYTES = 256 * 1024;
+
+    private static final ThreadLocal<PayloadOutputStream> PAYLOAD_BUFFER = ThreadLocal.withInitial(PayloadOutputStream::new);
 
     @NonNull
     private final String messageProcessorFunctionName;
     @NonNull
     private final AWSLambda lambda;
+    /**
+     * If <code>true</code>, compact requests are compressed whenever that makes them smaller.
+     */
+    private final boolean compressionEnabled;
+    @NonNull
+    private final JsonCodec codec;
+
+    private volatile int processorWireFormatVersion = WireFormat.LEGACY_VERSION;
+
+    public MessageProcessorProxy(final String messageProcessorFunctionName, final AWSLambda lambda) {
+        this(messageProcessorFunctionName, lambda, false);
+    }
+
+    public MessageProcessorProxy(final String messageProcessorFunctionName, final AWSLambda lambda, final boolean compressionEnabled) {
+        this(messageProcessorFunctionName, lambda, compressionEnabled, GsonCodec.INSTANCE);
+    }
 
-    public SQSMessageProcessorResponse invoke(final SQSMessageProcessorRequest request) throws MessageProcessorException {
+    public SQSMessageProcessorResponse invoke(final SQSMessageProcessorRequest request)
+            throws MessageProcessorException, MessageProcessorThrottledException {
         log.info("Invoking message processor lambda to process {} messages", request.getMessages().size());
-        String requestPayload = GSON.toJson(request);
 
+        // the buffer is only reused by this thread once the synchronous invoke has returned
+        ByteBuffer payload = processorWireFormatVersion >= WireFormat.COMPACT_VERSION
+                ? encode(codec, CompactRequestEncoder.encode(request.getMessages(), compressionEnabled, codec))
+                : encode(codec, request);
         InvokeRequest invokeRequest = new InvokeRequest()
                 .withFunctionName(messageProcessorFunctionName)
                 .withInvocationType(InvocationType.RequestResponse)
-                .withPayload(requestPayload);
+                .withPayload(payload);
 
-        InvokeResult result = lambda.invoke(invokeRequest);
+        InvokeResult result;
+        try {
+            result = lambda.invoke(invokeRequest);
+        } catch (TooManyRequestsException e) {
+            throw new MessageProcessorThrottledException(e);
+        } finally {
+            releaseOversizedBuffer();
+        }
 
         if (result.getFunctionError() != null) {
             throw new MessageProcessorException(result);
         }
 
-        return GSON.fromJson(LambdaUtil.getPayloadAsString(result), SQSMessageProcessorResponse.class);
+        Reader resultPayload = LambdaUtil.getPayloadAsReader(result);
+        if (resultPayload == null) {
+            return null;
+        }
+        SQSMessageProcessorResponse response;
+        try {
+            response = codec.read(resultPayload, SQSMessageProcessorResponse.class);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read message processor response", e);
+        }
+        negotiateWireFormat(response);
+        return response;
+    }
+
+    private void negotiateWireFormat(final SQSMessageProcessorResponse response) {
+        if (response == null || response.getWireFormatVersion() == null) {
+            return;
+        }
+        int version = Math.min(response.getWireFormatVersion(), WireFormat.SUPPORTED_VERSION);
+        if (version > processorWireFormatVersion) {
+            log.info("Message processor supports wire format version {}. Switching from version {}", version, processorWireFormatVersion);
+            processorWireFormatVersion = version;
+        }
+    }
+
+    /**
+     * Encodes the request into this thread's payload buffer.
+     *
+     * @return A view of the encoded request, valid until the next call from the same thread.
+     */
+    static ByteBuffer encode(final JsonCodec codec, final SQSMessageProcessorRequest request) {
+        PayloadOutputStream out = PAYLOAD_BUFFER.get();
+        out.reset();
+        try (Writer writer = new OutputStreamWriter(out, Charsets.UTF_8)) {
+            codec.write(request, writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteBuffer();
+    }
+
+    /**
+     * Drops this thread's payload buffer if it grew beyond {@link #MAX_RETAINED_BUFFER_BYTES}, so the next request starts
+     * with a buffer of the initial size again.
+     */
+    private static void releaseOversizedBuffer() {
+        if (PAYLOAD_BUFFER.get().capacity() > MAX_RETAINED_BUFFER_BYTES) {
+            PAYLOAD_BUFFER.remove();
+        }
+    }
+
+    /**
+     * Byte stream whose contents can be viewed as a buffer without copying.
+     */
+    private static final class PayloadOutputStream extends ByteArrayOutputStream {
+        PayloadOutputStream() {
+            super(INITIAL_BUFFER_BYTES);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+
+        ByteBuffer toByteBuffer() {
+            return ByteBuffer.wrap(buf, 0, count);
+        }
     }
 }
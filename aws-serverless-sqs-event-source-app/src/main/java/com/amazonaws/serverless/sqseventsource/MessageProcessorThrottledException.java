@@ -0,0 +1,11 @@
+package com.amazonaws.serverless.sqseventsource;
+
+/**
+ * Indicates the MessageProcessor lambda function was throttled and did not process a batch of messages, so the batch can
+ * safely be sent again.
+ */
+public class MessageProcessorThrottledException extends Exception {
+    public MessageProcessorThrottledException(Throwable cause) {
+        super("MessageProcessor function was throttled", cause);
+    }
+}
@@ -0,0 +1,187 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+import com.amazonaws.services.sqs.model.Message;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import lombok.AccessLevel;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Polls several SQS queues in one poll, each with its own message processor, and shares the poll's time between them by
+ * deficit round robin.
+ * <p>
+ * Every round, each queue is credited its weight times the quantum in messages and receives until the credit is spent, its
+ * dispatcher has no capacity left or the queue comes back empty. Receives never ask for more than the remaining credit, so
+ * no credit is left over for the next round. A queue that comes back empty, or has no capacity left before the cutoff, is
+ * skipped for the rest of the poll, so idle queues cost a single receive. The poll returns once every queue has been
+ * skipped.
+ * <p>
+ * Unlike {@link SQSPoller}, receives are neither pipelined nor long-polled, since either would hold up the other queues.
+ * Each queue has its own metrics, and all of them are flushed once all of the poll's work has completed.
+ */
+@Slf4j
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class MultiQueuePoller {
+    @NonNull
+    private final List<Lane> lanes;
+    /**
+     * Messages a queue of weight 1 is credited each round.
+     */
+    private final int quantum;
+    @NonNull
+    private final Clock clock;
+
+    /**
+     * @param lanes Queues to poll.
+     * @param quantum Messages a queue of weight 1 is credited each round, e.g. the target batch size.
+     */
+    public MultiQueuePoller(final List<Lane> lanes, final int quantum) {
+        this(ImmutableList.copyOf(lanes), quantum, Clock.systemUTC());
+        Preconditions.checkArgument(!lanes.isEmpty(), "lanes cannot be empty");
+        Preconditions.checkArgument(quantum > 0, "quantum must be positive");
+    }
+
+    public void poll(final int remainingTimeInMillis) {
+        int timeoutBufferInMillis = 0;
+        for (Lane lane : lanes) {
+            lane.getMessageDispatcher().reset();
+            timeoutBufferInMillis = Math.max(timeoutBufferInMillis, lane.getMessageDispatcher().getTimeoutBufferInMillis());
+        }
+        Instant start = Instant.now(clock);
+        Instant cutoff = start
+                .plusMillis(remainingTimeInMillis)
+                .minusMillis(timeoutBufferInMillis);
+        lanes.forEach(lane -> lane.getMessageDispatcher().setCutoff(cutoff));
+        Throwable pollFailure = null;
+        try {
+            pollRoundRobin(cutoff);
+        } catch (RuntimeException | Error e) {
+            pollFailure = e;
+            throw e;
+        } finally {
+            awaitInFlight(pollFailure);
+            Instant end = Instant.now(clock);
+            Duration timeLeft = Duration.between(end, start.plusMillis(remainingTimeInMillis));
+            for (Lane lane : lanes) {
+                lane.getMetrics().recordTimeLeftAtExit(timeLeft);
+                lane.getMetrics().flush(end);
+            }
+        }
+    }
+
+    private void pollRoundRobin(final Instant cutoff) {
+        boolean[] skipped = new boolean[lanes.size()];
+        int remainingLanes = lanes.size();
+        while (remainingLanes > 0) {
+            for (int i = 0; i < lanes.size(); i++) {
+                if (skipped[i]) {
+                    continue;
+                }
+                Lane lane = lanes.get(i);
+                if (!pollLane(lane, quantum * lane.getWeight(), cutoff)) {
+                    skipped[i] = true;
+                    remainingLanes--;
+                }
+            }
+        }
+    }
+
+    /**
+     * Receives from a queue and dispatches what was received until its credit is spent.
+     *
+     * @return <code>false</code> if the queue should be skipped for the rest of the poll.
+     */
+    private boolean pollLane(final Lane lane, final int credit, final Instant cutoff) {
+        MessageDispatcher messageDispatcher = lane.getMessageDispatcher();
+        int remainingCredit = credit;
+        while (remainingCredit > 0) {
+            int estimatedCapacity = messageDispatcher.getEstimatedCapacity(cutoff);
+            if (estimatedCapacity <= 0) {
+                log.info("No capacity left for queue {} before the cutoff", lane.getName());
+                return false;
+            }
+            lane.getMetrics().recordEstimatedCapacity(estimatedCapacity);
+
+            List<Message> toProcess = lane.getBatchAccumulator().receive(Math.min(remainingCredit, estimatedCapacity));
+            if (toProcess.isEmpty()) {
+                log.info("No messages received from queue {}. Skipping it until next polling cycle.", lane.getName());
+                return false;
+            }
+
+            remainingCredit -= toProcess.size();
+            messageDispatcher.dispatch(toProcess);
+        }
+        return true;
+    }
+
+    /**
+     * Waits for every queue's concurrently dispatched batches. If the poll failed itself, their failures are added to its
+     * failure as suppressed, rather than masking it.
+     */
+    private void awaitInFlight(final Throwable pollFailure) {
+        RuntimeException failure = null;
+        for (Lane lane : lanes) {
+            try {
+                lane.getMessageDispatcher().awaitInFlight();
+            } catch (RuntimeException e) {
+                // every queue's in-flight work is awaited before rethrowing
+                if (pollFailure != null) {
+                    pollFailure.addSuppressed(e);
+                } else if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * A queue polled by a {@link MultiQueuePoller}.
+     */
+    @Value
+    public static class Lane {
+        /**
+         * Name of the queue, for logging.
+         */
+        private final String name;
+        /**
+         * Share of the poll relative to the other queues.
+         */
+        private final int weight;
+        private final BatchAccumulator batchAccumulator;
+        /**
+         * Dispatches the queue's messages to its message processor.
+         */
+        private final MessageDispatcher messageDispatcher;
+        /**
+         * Metrics of the queue, shared with its {@link SQSProxy} and dispatcher.
+         */
+        private final PollMetrics metrics;
+
+        public Lane(final String name, final int weight, final BatchAccumulator batchAccumulator, final MessageDispatcher messageDispatcher) {
+            this(name, weight, batchAccumulator, messageDispatcher, PollMetrics.disabled());
+        }
+
+        public Lane(@NonNull final String name, final int weight, @NonNull final BatchAccumulator batchAccumulator,
+                    @NonNull final MessageDispatcher messageDispatcher, @NonNull final PollMetrics metrics) {
+            Preconditions.checkArgument(weight > 0, "weight must be positive");
+            this.name = name;
+            this.weight = weight;
+            this.batchAccumulator = batchAccumulator;
+            this.messageDispatcher = messageDispatcher;
+            this.metrics = metrics;
+        }
+    }
+}
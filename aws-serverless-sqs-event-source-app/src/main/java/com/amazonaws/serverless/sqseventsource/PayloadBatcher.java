@@ -0,0 +1,144 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.amazonaws.serverless.sqseventsource.messageprocessor.JsonCodec;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessorRequest;
+import com.amazonaws.services.sqs.model.Message;
+
+import com.google.common.base.Preconditions;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Splits batches of messages so that the request payload of each message processor invocation stays within a byte budget.
+ * Message sizes are measured as they are encoded, without building the payload.
+ */
+@Slf4j
+public class PayloadBatcher {
+    /**
+     * Synchronous invoke request payloads are limited to 6MB. Leaves some room for encoding differences.
+     */
+    public static final int DEFAULT_MAX_PAYLOAD_BYTES = 6_000_000;
+
+    @Getter
+    private final int maxPayloadBytes;
+    private final JsonCodec codec;
+    private final int envelopeBytes;
+
+    public PayloadBatcher() {
+        this(DEFAULT_MAX_PAYLOAD_BYTES);
+    }
+
+    public PayloadBatcher(final int maxPayloadBytes) {
+        this(maxPayloadBytes, GsonCodec.INSTANCE);
+    }
+
+    /**
+     * @param maxPayloadBytes Byte budget of each invocation.
+     * @param codec Codec the message processor proxy encodes requests with.
+     */
+    public PayloadBatcher(final int maxPayloadBytes, final JsonCodec codec) {
+        Preconditions.checkArgument(maxPayloadBytes > 0, "maxPayloadBytes must be positive");
+        this.maxPayloadBytes = maxPayloadBytes;
+        this.codec = Preconditions.checkNotNull(codec, "codec");
+        this.envelopeBytes = encodedSize(new SQSMessageProcessorRequest(Collections.emptyList()));
+    }
+
+    /**
+     * Packs messages, in order, into as few batches as fit the byte budget. A message that does not fit the budget on its own
+     * is sent in a batch by itself.
+     *
+     * @param messages Messages to split.
+     * @return Batches to invoke the message processor with.
+     */
+    public List<List<Message>> split(final List<Message> messages) {
+        List<List<Message>> batches = new ArrayList<>();
+        List<Message> batch = new ArrayList<>();
+        long batchBytes = envelopeBytes;
+        for (Message message : messages) {
+            // messages after the first are preceded by a comma
+            int messageBytes = encodedSize(message) + (batch.isEmpty() ? 0 : 1);
+            if (!batch.isEmpty() && batchBytes + messageBytes > maxPayloadBytes) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchBytes = envelopeBytes;
+                messageBytes -= 1;
+            }
+            if (batchBytes + messageBytes > maxPayloadBytes) {
+                log.warn("Message {} is {} bytes, larger than the payload limit of {} bytes on its own", message.getMessageId(),
+                        messageBytes, maxPayloadBytes);
+            }
+            batch.add(message);
+            batchBytes += messageBytes;
+        }
+        if (!batch.isEmpty()) {
+            batches.add(batch);
+        }
+
+        if (batches.size() > 1) {
+            log.info("Split {} messages into {} batches to stay within {} bytes per invocation", messages.size(), batches.size(),
+                    maxPayloadBytes);
+        }
+        return batches;
+    }
+
+    private int encodedSize(final Object value) {
+        Utf8CountingWriter writer = new Utf8CountingWriter();
+        try {
+            codec.write(value, writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return writer.getByteCount();
+    }
+
+    /**
+     * Discards written characters, counting how many bytes they take up in UTF-8.
+     */
+    private static final class Utf8CountingWriter extends Writer {
+        @Getter
+        private int byteCount = 0;
+
+        @Override
+        public void write(final char[] cbuf, final int off, final int len) {
+            for (int i = off; i < off + len; i++) {
+                write(cbuf[i]);
+            }
+        }
+
+        @Override
+        public void write(final String str, final int off, final int len) {
+            for (int i = off; i < off + len; i++) {
+                write(str.charAt(i));
+            }
+        }
+
+        @Override
+        public void write(final int c) {
+            char ch = (char) c;
+            if (ch < 0x80) {
+                byteCount += 1;
+            } else if (ch < 0x800 || Character.isSurrogate(ch)) {
+                // each half of a surrogate pair counts for two of the pair's four bytes
+                byteCount += 2;
+            } else {
+                byteCount += 3;
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
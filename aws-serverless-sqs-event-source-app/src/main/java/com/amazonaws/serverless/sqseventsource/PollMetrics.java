@@ -0,0 +1,240 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import lombok.AccessLevel;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Aggregates the metrics of a single poll and emits them once the poll is done, as one log line in CloudWatch Embedded Metric
+ * Format. CloudWatch Logs turns the line into metrics, so nothing is sent to CloudWatch from the poller itself.
+ * <p>
+ * Recording is cheap and thread-safe: counters are summed, and each distribution keeps a uniform sample of at most
+ * {@value #MAX_VALUES_PER_METRIC} values, the most a single metric may carry in one log line.
+ * <p>
+ * Metric lines are written to the {@value #LOGGER_NAME} logger, which the log4j2 configuration writes out without a prefix
+ * as the format requires.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE)
+public class PollMetrics {
+    static final String LOGGER_NAME = "EmbeddedMetrics";
+    static final String NAMESPACE = "AWSServerlessSQSEventSource";
+    static final int MAX_VALUES_PER_METRIC = 100;
+
+    private static final Logger METRICS_LOG = LoggerFactory.getLogger(LOGGER_NAME);
+
+    private static final String COUNT = "Count";
+    private static final String MILLISECONDS = "Milliseconds";
+
+    /**
+     * Dimensions every metric is reported with. If <code>null</code>, metrics are aggregated but never emitted.
+     */
+    private final Map<String, String> dimensions;
+
+    private final LongAdder messagesReceived = new LongAdder();
+    private final LongAdder messagesDeleted = new LongAdder();
+    private final LongAdder messagesRetried = new LongAdder();
+    private final LongAdder messagesErrored = new LongAdder();
+    private final Samples batchSize = new Samples();
+    private final Samples processorInvokeLatency = new Samples();
+    private final Samples sqsCallLatency = new Samples();
+    private final Samples estimatedCapacity = new Samples();
+    private final Samples timeLeftAtExit = new Samples();
+
+    /**
+     * @return Metrics that are aggregated but never emitted.
+     */
+    public static PollMetrics disabled() {
+        return new PollMetrics(null);
+    }
+
+    /**
+     * @param dimensions Dimensions to report every metric with, e.g. the queue name.
+     * @return Metrics emitted in Embedded Metric Format.
+     */
+    public static PollMetrics embeddedMetricFormat(@NonNull final Map<String, String> dimensions) {
+        return new PollMetrics(Collections.unmodifiableMap(new LinkedHashMap<>(dimensions)));
+    }
+
+    public void addMessagesReceived(final int count) {
+        messagesReceived.add(count);
+    }
+
+    public void addMessagesDeleted(final int count) {
+        messagesDeleted.add(count);
+    }
+
+    public void addMessagesRetried(final int count) {
+        messagesRetried.add(count);
+    }
+
+    /**
+     * @param count Number of messages the processor reported errors for or failed to process.
+     */
+    public void addMessagesErrored(final int count) {
+        messagesErrored.add(count);
+    }
+
+    public void recordBatchSize(final int size) {
+        batchSize.add(size);
+    }
+
+    public void recordProcessorInvokeLatency(final Duration latency) {
+        processorInvokeLatency.add(latency.toMillis());
+    }
+
+    public void recordSQSCallLatency(final Duration latency) {
+        sqsCallLatency.add(latency.toMillis());
+    }
+
+    public void recordEstimatedCapacity(final int capacity) {
+        // no estimate yet, the value says nothing about throughput
+        if (capacity != Integer.MAX_VALUE) {
+            estimatedCapacity.add(capacity);
+        }
+    }
+
+    public void recordTimeLeftAtExit(final Duration timeLeft) {
+        timeLeftAtExit.add(timeLeft.toMillis());
+    }
+
+    /**
+     * Emits the metrics aggregated since the last flush and starts aggregating afresh. Must not run concurrently with
+     * recording, e.g. call it once all of a poll's work has completed.
+     *
+     * @param timestamp Time to report the metrics at.
+     * @return The emitted log line, <code>null</code> if metrics are disabled.
+     */
+    public String flush(final Instant timestamp) {
+        JsonObject metricsLine = dimensions == null ? null : toEmbeddedMetricFormat(timestamp);
+        reset();
+        if (metricsLine == null) {
+            return null;
+        }
+        String line = metricsLine.toString();
+        METRICS_LOG.info(line);
+        return line;
+    }
+
+    private JsonObject toEmbeddedMetricFormat(final Instant timestamp) {
+        Map<String, Number[]> values = new LinkedHashMap<>();
+        Map<String, String> units = new LinkedHashMap<>();
+        putCount("MessagesReceived", messagesReceived, values, units);
+        putCount("MessagesDeleted", messagesDeleted, values, units);
+        putCount("MessagesRetried", messagesRetried, values, units);
+        putCount("MessagesErrored", messagesErrored, values, units);
+        putSamples("BatchSize", COUNT, batchSize, values, units);
+        putSamples("ProcessorInvokeLatency", MILLISECONDS, processorInvokeLatency, values, units);
+        putSamples("SQSCallLatency", MILLISECONDS, sqsCallLatency, values, units);
+        putSamples("EstimatedCapacity", COUNT, estimatedCapacity, values, units);
+        putSamples("TimeLeftAtExit", MILLISECONDS, timeLeftAtExit, values, units);
+
+        JsonArray dimensionSet = new JsonArray();
+        dimensions.keySet().forEach(dimensionSet::add);
+        JsonArray dimensionSets = new JsonArray();
+        dimensionSets.add(dimensionSet);
+
+        JsonArray metricDefinitions = new JsonArray();
+        units.forEach((name, unit) -> {
+            JsonObject definition = new JsonObject();
+            definition.addProperty("Name", name);
+            definition.addProperty("Unit", unit);
+            metricDefinitions.add(definition);
+        });
+
+        JsonObject directive = new JsonObject();
+        directive.addProperty("Namespace", NAMESPACE);
+        directive.add("Dimensions", dimensionSets);
+        directive.add("Metrics", metricDefinitions);
+        JsonArray directives = new JsonArray();
+        directives.add(directive);
+
+        JsonObject metadata = new JsonObject();
+        metadata.addProperty("Timestamp", timestamp.toEpochMilli());
+        metadata.add("CloudWatchMetrics", directives);
+
+        JsonObject line = new JsonObject();
+        line.add("_aws", metadata);
+        dimensions.forEach(line::addProperty);
+        values.forEach((name, metricValues) -> {
+            if (metricValues.length == 1) {
+                line.addProperty(name, metricValues[0]);
+                return;
+            }
+            JsonArray array = new JsonArray();
+            Arrays.stream(metricValues).forEach(array::add);
+            line.add(name, array);
+        });
+        return line;
+    }
+
+    private static void putCount(final String name, final LongAdder counter, final Map<String, Number[]> values,
+                                 final Map<String, String> units) {
+        values.put(name, new Number[] {counter.sum()});
+        units.put(name, COUNT);
+    }
+
+    private static void putSamples(final String name, final String unit, final Samples samples, final Map<String, Number[]> values,
+                                   final Map<String, String> units) {
+        long[] sampled = samples.values();
+        if (sampled.length == 0) {
+            return;
+        }
+        values.put(name, Arrays.stream(sampled).boxed().toArray(Number[]::new));
+        units.put(name, unit);
+    }
+
+    private void reset() {
+        messagesReceived.reset();
+        messagesDeleted.reset();
+        messagesRetried.reset();
+        messagesErrored.reset();
+        batchSize.reset();
+        processorInvokeLatency.reset();
+        sqsCallLatency.reset();
+        estimatedCapacity.reset();
+        timeLeftAtExit.reset();
+    }
+
+    /**
+     * Uniform sample of at most {@value #MAX_VALUES_PER_METRIC} of the values added, by reservoir sampling.
+     */
+    private static final class Samples {
+        private final long[] reservoir = new long[MAX_VALUES_PER_METRIC];
+        private long count = 0;
+
+        synchronized void add(final long value) {
+            if (count < reservoir.length) {
+                reservoir[(int) count] = value;
+            } else {
+                long index = ThreadLocalRandom.current().nextLong(count + 1);
+                if (index < reservoir.length) {
+                    reservoir[(int) index] = value;
+                }
+            }
+            count++;
+        }
+
+        synchronized long[] values() {
+            return Arrays.copyOf(reservoir, (int) Math.min(count, reservoir.length));
+        }
+
+        synchronized void reset() {
+            count = 0;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+import com.amazonaws.services.sqs.model.Message;
+
+import com.google.common.base.Preconditions;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Single-slot buffer that receives the next batch of messages in the background while the current batch is being dispatched.
+ */
+@Slf4j
+@RequiredArgsConstructor
+class PrefetchBuffer {
+    @NonNull
+    private final SQSProxy sqsProxy;
+    @NonNull
+    private final BatchAccumulator batchAccumulator;
+
+    private CompletableFuture<List<Message>> pending;
+
+    /**
+     * Starts receiving up to the given number of messages in the background.
+     *
+     * @param limit Maximum number of messages to prefetch. Nothing is prefetched if this is not positive.
+     */
+    public void prefetch(final int limit) {
+        Preconditions.checkState(pending == null, "A prefetch is already in flight");
+        if (limit <= 0) {
+            return;
+        }
+        pending = batchAccumulator.receiveAsync(limit);
+    }
+
+    /**
+     * Returns the prefetched batch if there is one, otherwise receives a batch synchronously. Messages beyond the given limit
+     * are released back to the queue so they are not held invisible while they cannot be dispatched.
+     *
+     * @param limit Maximum number of messages to return.
+     * @return Messages to dispatch.
+     */
+    public List<Message> take(final int limit) {
+        List<Message> messages = pending == null ? batchAccumulator.receive(limit) : awaitPending();
+        if (messages.size() <= limit) {
+            return messages;
+        }
+        release(messages.subList(limit, messages.size()));
+        return new ArrayList<>(messages.subList(0, limit));
+    }
+
+    /**
+     * Releases any prefetched messages back to the queue.
+     */
+    public void release() {
+        if (pending == null) {
+            return;
+        }
+        release(awaitPending());
+    }
+
+    private void release(final List<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        log.info("Releasing {} prefetched messages back to the queue", messages.size());
+        sqsProxy.retryMessages(messages.stream()
+                .map(m -> new RetryMessageRequest(m, 0))
+                .collect(Collectors.toList()));
+    }
+
+    private List<Message> awaitPending() {
+        try {
+            return FutureUtil.join(pending);
+        } finally {
+            pending = null;
+        }
+    }
+}
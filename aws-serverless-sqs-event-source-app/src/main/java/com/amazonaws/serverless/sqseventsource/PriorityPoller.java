@@ -0,0 +1,185 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import com.amazonaws.services.sqs.model.Message;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import lombok.AccessLevel;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Polls queues of different priority that share one message processor, and so one {@link MessageDispatcher} and its
+ * capacity estimate.
+ * <p>
+ * Before each batch, the tiers are tried in order of priority, so a lower tier is only received from while every higher
+ * tier is empty and urgent messages overtake bulk traffic as soon as they arrive. To keep lower tiers from starving while
+ * higher tiers are busy, a tier that has received less than its guaranteed minimum share of the messages received so far in
+ * the poll is tried first. The poll returns once every tier comes back empty or there is no capacity left before the cutoff.
+ * <p>
+ * Unlike {@link SQSPoller}, receives are neither pipelined nor long-polled, since either would delay noticing new messages
+ * in a higher tier.
+ * <p>
+ * Each tier's queue metrics and message outcomes are recorded in the metrics of its {@link SQSProxy}. The metrics of the
+ * shared message processor, e.g. its batch sizes and capacity, are recorded in the poller's metrics. All of them are
+ * flushed once all of the poll's work has completed.
+ */
+@Slf4j
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class PriorityPoller {
+    /**
+     * Tiers in order of priority, highest first.
+     */
+    @NonNull
+    private final List<Tier> tiers;
+    @NonNull
+    private final MessageDispatcher messageDispatcher;
+    @NonNull
+    private final PollMetrics metrics;
+    @NonNull
+    private final Clock clock;
+
+    /**
+     * @param tiers Tiers in order of priority, highest first. The guaranteed share of the first tier is ignored.
+     * @param messageDispatcher Dispatcher of the message processor all tiers share.
+     * @param metrics Metrics of the shared message processor, usually also those of the first tier.
+     */
+    public PriorityPoller(final List<Tier> tiers, final MessageDispatcher messageDispatcher, final PollMetrics metrics) {
+        this(ImmutableList.copyOf(tiers), messageDispatcher, metrics, Clock.systemUTC());
+        Preconditions.checkArgument(!tiers.isEmpty(), "tiers cannot be empty");
+    }
+
+    public void poll(final int remainingTimeInMillis) {
+        messageDispatcher.reset();
+        Instant start = Instant.now(clock);
+        Instant cutoff = start
+                .plusMillis(remainingTimeInMillis)
+                .minusMillis(messageDispatcher.getTimeoutBufferInMillis());
+        messageDispatcher.setCutoff(cutoff);
+        Throwable pollFailure = null;
+        try {
+            pollByPriority(cutoff);
+        } catch (RuntimeException | Error e) {
+            pollFailure = e;
+            throw e;
+        } finally {
+            awaitInFlight(pollFailure);
+            Instant end = Instant.now(clock);
+            metrics.recordTimeLeftAtExit(Duration.between(end, start.plusMillis(remainingTimeInMillis)));
+            flushMetrics(end);
+        }
+    }
+
+    /**
+     * Waits for concurrently dispatched batches. If they failed too, the poll's own failure is rethrown with theirs
+     * suppressed, rather than masked by it.
+     */
+    private void awaitInFlight(final Throwable pollFailure) {
+        try {
+            messageDispatcher.awaitInFlight();
+        } catch (RuntimeException e) {
+            if (pollFailure == null) {
+                throw e;
+            }
+            pollFailure.addSuppressed(e);
+        }
+    }
+
+    private void flushMetrics(final Instant timestamp) {
+        // by identity, tiers may share their metrics with the poller
+        Set<PollMetrics> allMetrics = Collections.newSetFromMap(new IdentityHashMap<>());
+        allMetrics.add(metrics);
+        tiers.forEach(tier -> allMetrics.add(tier.getSqsProxy().getMetrics()));
+        allMetrics.forEach(tierMetrics -> tierMetrics.flush(timestamp));
+    }
+
+    private void pollByPriority(final Instant cutoff) {
+        int[] received = new int[tiers.size()];
+        // tiers that came back empty no longer claim their guaranteed share, they are still tried in order of priority
+        boolean[] drained = new boolean[tiers.size()];
+        int estimatedCapacity;
+        while ((estimatedCapacity = messageDispatcher.getEstimatedCapacity(cutoff)) > 0) {
+            metrics.recordEstimatedCapacity(estimatedCapacity);
+            int starved = findStarvedTier(received, drained);
+            int served = starved;
+            List<Message> toProcess = starved >= 0 ? receive(starved, estimatedCapacity, drained) : Collections.emptyList();
+            for (int i = 0; i < tiers.size() && toProcess.isEmpty(); i++) {
+                if (i != starved) {
+                    served = i;
+                    toProcess = receive(i, estimatedCapacity, drained);
+                }
+            }
+
+            if (toProcess.isEmpty()) {
+                log.info("No messages received from any tier. Returning until next polling cycle to save cost.");
+                return;
+            }
+
+            Tier tier = tiers.get(served);
+            log.info("Received {} messages from tier {}{}", toProcess.size(), tier.getName(),
+                    served == starved ? " to keep its guaranteed share" : "");
+            received[served] += toProcess.size();
+            messageDispatcher.dispatch(toProcess, tier.getSqsProxy());
+        }
+    }
+
+    /**
+     * @return Index of the highest priority tier below the first that has received less than its guaranteed share, or -1.
+     */
+    private int findStarvedTier(final int[] received, final boolean[] drained) {
+        long total = 0;
+        for (int count : received) {
+            total += count;
+        }
+        for (int i = 1; i < tiers.size(); i++) {
+            if (!drained[i] && received[i] < tiers.get(i).getMinShare() * total) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private List<Message> receive(final int tier, final int limit, final boolean[] drained) {
+        List<Message> messages = tiers.get(tier).getBatchAccumulator().receive(limit);
+        drained[tier] = messages.isEmpty();
+        return messages;
+    }
+
+    /**
+     * A queue polled by a {@link PriorityPoller}.
+     */
+    @Value
+    public static class Tier {
+        /**
+         * Name of the queue, for logging.
+         */
+        private final String name;
+        private final SQSProxy sqsProxy;
+        private final BatchAccumulator batchAccumulator;
+        /**
+         * Fraction of the messages received in a poll that are taken from this tier while it has messages, even if a higher
+         * tier has messages too.
+         */
+        private final double minShare;
+
+        public Tier(@NonNull final String name, @NonNull final SQSProxy sqsProxy, @NonNull final BatchAccumulator batchAccumulator,
+                    final double minShare) {
+            Preconditions.checkArgument(minShare >= 0 && minShare < 1, "minShare must be at least 0 and less than 1");
+            this.name = name;
+            this.sqsProxy = sqsProxy;
+            this.batchAccumulator = batchAccumulator;
+            this.minShare = minShare;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.util.Random;
+
+import com.amazonaws.services.sqs.model.Message;
+
+import com.google.common.base.Preconditions;
+import com.google.common.primitives.Ints;
+
+import lombok.AccessLevel;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Exponential backoff with jitter for retried messages, driven by how often SQS has delivered a message. The n-th delivery is
+ * retried after between half and all of <code>baseDelay * 2^(n - 1)</code>, capped at the maximum delay, so messages that keep
+ * failing, e.g. during a downstream outage, are retried less and less often and spread out instead of in lockstep.
+ */
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class RetryBackoff {
+    /**
+     * Longest visibility timeout SQS accepts.
+     */
+    static final int SQS_MAX_VISIBILITY_TIMEOUT_IN_SECONDS = 43200;
+    static final String RECEIVE_COUNT_ATTRIBUTE = "ApproximateReceiveCount";
+
+    private final int baseDelayInSeconds;
+    private final int maxDelayInSeconds;
+    @NonNull
+    private final Random random;
+
+    /**
+     * @param baseDelayInSeconds Delay before retrying a message delivered once.
+     * @param maxDelayInSeconds Longest delay, at most the SQS maximum visibility timeout of 12 hours.
+     */
+    public RetryBackoff(final int baseDelayInSeconds, final int maxDelayInSeconds) {
+        this(baseDelayInSeconds, Math.min(maxDelayInSeconds, SQS_MAX_VISIBILITY_TIMEOUT_IN_SECONDS), new Random());
+        Preconditions.checkArgument(baseDelayInSeconds > 0, "baseDelayInSeconds must be positive");
+        Preconditions.checkArgument(maxDelayInSeconds >= baseDelayInSeconds, "maxDelayInSeconds must be at least baseDelayInSeconds");
+    }
+
+    /**
+     * Backs off from the delay {@link MessageDispatcher} retries with when neither the processor nor a backoff gives one.
+     *
+     * @param maxDelayInSeconds Longest delay, at most the SQS maximum visibility timeout of 12 hours.
+     */
+    public RetryBackoff(final int maxDelayInSeconds) {
+        this(MessageDispatcher.DEFAULT_RETRY_DELAY_IN_SECONDS, maxDelayInSeconds);
+    }
+
+    /**
+     * @param message Message to retry, received with its {@value #RECEIVE_COUNT_ATTRIBUTE} attribute. Messages without it are
+     *                treated as delivered once.
+     * @return Seconds to wait before the message is delivered again.
+     */
+    public int getDelayInSeconds(final Message message) {
+        int receiveCount = getReceiveCount(message);
+        // 2^30 seconds is beyond any cap, so larger shifts are not needed
+        long exponentialDelay = (long) baseDelayInSeconds << Math.min(receiveCount - 1, 30);
+        int cap = Ints.saturatedCast(Math.min(exponentialDelay, maxDelayInSeconds));
+        return cap - random.nextInt(cap / 2 + 1);
+    }
+
+    private static int getReceiveCount(final Message message) {
+        String receiveCount = message.getAttributes() == null ? null : message.getAttributes().get(RECEIVE_COUNT_ATTRIBUTE);
+        if (receiveCount == null) {
+            return 1;
+        }
+        try {
+            return Math.max(1, Integer.parseInt(receiveCount));
+        } catch (NumberFormatException e) {
+            return 1;
+        }
+    }
+}
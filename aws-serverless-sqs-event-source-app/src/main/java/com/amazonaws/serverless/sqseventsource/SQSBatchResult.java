@@ -0,0 +1,37 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.amazonaws.services.sqs.model.Message;
+
+import com.google.common.collect.ImmutableList;
+
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * Per-message outcome of a batched SQS operation such as deleting messages or changing their visibility.
+ */
+@Value
+public class SQSBatchResult {
+    public static final SQSBatchResult EMPTY = new SQSBatchResult(Collections.emptyList(), Collections.emptyList());
+
+    /**
+     * Messages the operation succeeded for.
+     */
+    @NonNull
+    private final List<Message> succeeded;
+
+    /**
+     * Messages the operation failed for, after retrying any server-side failures.
+     */
+    @NonNull
+    private final List<Message> failed;
+
+    public SQSBatchResult merge(final SQSBatchResult other) {
+        return new SQSBatchResult(
+                ImmutableList.<Message>builder().addAll(succeeded).addAll(other.succeeded).build(),
+                ImmutableList.<Message>builder().addAll(failed).addAll(other.failed).build());
+    }
+}
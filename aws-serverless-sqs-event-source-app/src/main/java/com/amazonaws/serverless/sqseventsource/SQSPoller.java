@@ -1,43 +1,129 @@
 package com.amazonaws.serverless.sqseventsource;
 
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Collections;
 import java.util.List;
 
 import com.amazonaws.services.sqs.model.Message;
 
 import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 /**
- * Polls an SQS queue and delegates messages processing to a user-defined lambda function.
+ * Polls an SQS queue and delegates messages processing to a user-defined lambda function. The poll's metrics are flushed
+ * once all of its work has completed.
  */
 @Slf4j
 @RequiredArgsConstructor(access = AccessLevel.PACKAGE)
 public class SQSPoller {
-    static final int TIMEOUT_BUFFER_IN_MILLIS = 5000;
-
     @NonNull
     private final SQSProxy sqsProxy;
     @NonNull
     private final MessageDispatcher messageDispatcher;
     @NonNull
     private final Clock clock;
+    /**
+     * If <code>true</code>, the next batch is received while the current batch is dispatched. Otherwise receives and
+     * dispatches run serially.
+     */
+    private final boolean pipelined;
+    /**
+     * Total time a single poll may spend long-polling an empty queue before returning. If zero, polling returns as soon as
+     * a receive comes back empty.
+     */
+    @NonNull
+    private final Duration maxIdleTime;
+    @NonNull
+    private final BatchAccumulator batchAccumulator;
+    @NonNull
+    private final PollMetrics metrics;
 
     public SQSPoller(final SQSProxy sqsProxy, final MessageDispatcher messageDispatcher) {
         this(sqsProxy, messageDispatcher, Clock.systemUTC());
     }
 
+    public SQSPoller(final SQSProxy sqsProxy, final MessageDispatcher messageDispatcher, final boolean pipelined, final Duration maxIdleTime,
+                     final BatchAccumulator batchAccumulator) {
+        this(sqsProxy, messageDispatcher, Clock.systemUTC(), pipelined, maxIdleTime, batchAccumulator);
+    }
+
+    public SQSPoller(final SQSProxy sqsProxy, final MessageDispatcher messageDispatcher, final boolean pipelined, final Duration maxIdleTime,
+                     final BatchAccumulator batchAccumulator, final PollMetrics metrics) {
+        this(sqsProxy, messageDispatcher, Clock.systemUTC(), pipelined, maxIdleTime, batchAccumulator, metrics);
+    }
+
+    SQSPoller(final SQSProxy sqsProxy, final MessageDispatcher messageDispatcher, final Clock clock) {
+        this(sqsProxy, messageDispatcher, clock, false);
+    }
+
+    SQSPoller(final SQSProxy sqsProxy, final MessageDispatcher messageDispatcher, final Clock clock, final boolean pipelined) {
+        this(sqsProxy, messageDispatcher, clock, pipelined, Duration.ZERO);
+    }
+
+    SQSPoller(final SQSProxy sqsProxy, final MessageDispatcher messageDispatcher, final Clock clock, final boolean pipelined, final Duration maxIdleTime) {
+        this(sqsProxy, messageDispatcher, clock, pipelined, maxIdleTime, BatchAccumulator.singleReceive(sqsProxy));
+    }
+
+    SQSPoller(final SQSProxy sqsProxy, final MessageDispatcher messageDispatcher, final Clock clock, final boolean pipelined, final Duration maxIdleTime,
+              final BatchAccumulator batchAccumulator) {
+        this(sqsProxy, messageDispatcher, clock, pipelined, maxIdleTime, batchAccumulator, PollMetrics.disabled());
+    }
+
     public void poll(final int remainingTimeInMillis) {
-        Instant cutoff = Instant.now(clock)
-                .plusMillis(remainingTimeInMillis)
-                .minusMillis(TIMEOUT_BUFFER_IN_MILLIS);
         messageDispatcher.reset();
+        Instant start = Instant.now(clock);
+        Instant cutoff = start
+                .plusMillis(remainingTimeInMillis)
+                .minusMillis(messageDispatcher.getTimeoutBufferInMillis());
+        messageDispatcher.setCutoff(cutoff);
+        Throwable pollFailure = null;
+        try {
+            if (pipelined) {
+                pollPipelined(cutoff);
+            } else {
+                pollSerially(cutoff);
+            }
+        } catch (RuntimeException | Error e) {
+            pollFailure = e;
+            throw e;
+        } finally {
+            awaitInFlight(pollFailure);
+            Instant end = Instant.now(clock);
+            metrics.recordTimeLeftAtExit(Duration.between(end, start.plusMillis(remainingTimeInMillis)));
+            metrics.flush(end);
+        }
+    }
+
+    /**
+     * Waits for concurrently dispatched batches. If they failed too, the poll's own failure is rethrown with theirs
+     * suppressed, rather than masked by it.
+     */
+    private void awaitInFlight(final Throwable pollFailure) {
+        try {
+            messageDispatcher.awaitInFlight();
+        } catch (RuntimeException e) {
+            if (pollFailure == null) {
+                throw e;
+            }
+            pollFailure.addSuppressed(e);
+        }
+    }
+
+    private void pollSerially(final Instant cutoff) {
+        IdleBudget idleBudget = new IdleBudget(maxIdleTime);
         int estimatedCapacity;
         while ((estimatedCapacity = messageDispatcher.getEstimatedCapacity(cutoff)) > 0) {
-            List<Message> toProcess = sqsProxy.receiveMessages(estimatedCapacity);
+            metrics.recordEstimatedCapacity(estimatedCapacity);
+            List<Message> toProcess = batchAccumulator.receive(estimatedCapacity);
+            if (toProcess.isEmpty()) {
+                toProcess = longPoll(cutoff, idleBudget);
+            }
 
             if (toProcess.isEmpty()) {
                 log.info("No messages received from queue. Returning until next polling cycle to save cost.");
@@ -47,4 +133,73 @@ public class SQSPoller {
             messageDispatcher.dispatch(toProcess);
         }
     }
+
+    private void pollPipelined(final Instant cutoff) {
+        PrefetchBuffer prefetchBuffer = new PrefetchBuffer(sqsProxy, batchAccumulator);
+        IdleBudget idleBudget = new IdleBudget(maxIdleTime);
+        try {
+            int estimatedCapacity;
+            while ((estimatedCapacity = messageDispatcher.getEstimatedCapacity(cutoff)) > 0) {
+                metrics.recordEstimatedCapacity(estimatedCapacity);
+                List<Message> toProcess = prefetchBuffer.take(estimatedCapacity);
+                if (toProcess.isEmpty()) {
+                    toProcess = longPoll(cutoff, idleBudget);
+                }
+
+                if (toProcess.isEmpty()) {
+                    log.info("No messages received from queue. Returning until next polling cycle to save cost.");
+                    return;
+                }
+
+                // only prefetch what is estimated to still fit before the cutoff once the current batch is processed
+                prefetchBuffer.prefetch(estimatedCapacity - toProcess.size());
+                messageDispatcher.dispatch(toProcess);
+            }
+        } finally {
+            prefetchBuffer.release();
+        }
+    }
+
+    /**
+     * Keeps long-polling an empty queue until messages arrive, the idle budget is spent, or waiting any longer would leave no
+     * time to process what is received before the cutoff.
+     */
+    private List<Message> longPoll(final Instant cutoff, final IdleBudget idleBudget) {
+        while (true) {
+            long secondsUntilCutoff = Duration.between(Instant.now(clock), cutoff).getSeconds();
+            int waitTimeInSeconds = (int) Math.min(SQSProxy.SQS_MAX_WAIT_TIME_IN_SECONDS,
+                    Math.min(secondsUntilCutoff, idleBudget.getRemaining().getSeconds()));
+            if (waitTimeInSeconds <= 0) {
+                return Collections.emptyList();
+            }
+
+            // only receive what can still be processed if the messages arrive at the end of the wait
+            int estimatedCapacity = messageDispatcher.getEstimatedCapacity(cutoff.minusSeconds(waitTimeInSeconds));
+            if (estimatedCapacity <= 0) {
+                return Collections.emptyList();
+            }
+
+            Instant start = Instant.now(clock);
+            List<Message> messages = sqsProxy.receiveMessages(estimatedCapacity, waitTimeInSeconds);
+            if (!messages.isEmpty()) {
+                return messages;
+            }
+
+            Duration waited = Duration.between(start, Instant.now(clock));
+            idleBudget.spend(waited.compareTo(Duration.ofSeconds(waitTimeInSeconds)) > 0 ? waited : Duration.ofSeconds(waitTimeInSeconds));
+        }
+    }
+
+    /**
+     * Tracks how much idle long-polling time is left in a single poll.
+     */
+    @AllArgsConstructor
+    private static final class IdleBudget {
+        @Getter
+        private Duration remaining;
+
+        void spend(final Duration idleTime) {
+            remaining = remaining.minus(idleTime);
+        }
+    }
 }
@@ -1,53 +1,257 @@
 package com.amazonaws.serverless.sqseventsource;
 
+import static com.amazonaws.serverless.sqseventsource.FutureUtil.completing;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
-import com.amazonaws.services.sqs.AmazonSQS;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.MessageGroups;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
 import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
 import com.amazonaws.services.sqs.model.Message;
 import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
 import com.amazonaws.services.sqs.model.ReceiveMessageResult;
 
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lombok.AccessLevel;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
 
 /**
- * Convenience proxy for interactions with the SQS queue.
+ * Convenience proxy for interactions with the SQS queue. Each operation has a blocking form and a non-blocking
+ * <code>*Async</code> form whose future is completed by the async SQS client.
+ * <p>
+ * Deletes and visibility changes are sent in batches of at most 10 entries, concurrently. Entries that fail with a
+ * server-side error are retried with exponential backoff, and the per-message outcome is returned as an {@link SQSBatchResult}.
+ * <p>
+ * Receives return each message's approximate receive count. For FIFO queues, receives also return each message's group id
+ * and carry a receive request attempt id, so SDK retries of a receive that failed in transit return the same messages
+ * instead of locking their groups.
  */
-@RequiredArgsConstructor
+@Slf4j
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
 public class SQSProxy {
     private static final Integer SQS_MAX_NUMBER_OF_MESSAGES_LIMIT = 10;
+    static final int SQS_MAX_WAIT_TIME_IN_SECONDS = 20;
+    static final int SQS_MAX_BATCH_SIZE = 10;
+    static final int MAX_BATCH_ATTEMPTS = 3;
+    static final long BATCH_RETRY_BASE_DELAY_IN_MILLIS = 100;
+    static final String FIFO_QUEUE_SUFFIX = ".fifo";
+
+    private static final ScheduledExecutorService DEFAULT_RETRY_SCHEDULER = Executors.newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                    .setNameFormat("sqs-batch-retry-%d")
+                    .setDaemon(true)
+                    .build());
 
     @NonNull
-    private final AmazonSQS sqs;
+    private final AmazonSQSAsync sqs;
     @NonNull
     private final String queueUrl;
+    @NonNull
+    private final ScheduledExecutorService retryScheduler;
+    @NonNull
+    private final PollMetrics metrics;
+
+    public SQSProxy(final AmazonSQSAsync sqs, final String queueUrl) {
+        this(sqs, queueUrl, PollMetrics.disabled());
+    }
+
+    public SQSProxy(final AmazonSQSAsync sqs, final String queueUrl, final PollMetrics metrics) {
+        this(sqs, queueUrl, DEFAULT_RETRY_SCHEDULER, metrics);
+    }
+
+    SQSProxy(final AmazonSQSAsync sqs, final String queueUrl, final ScheduledExecutorService retryScheduler) {
+        this(sqs, queueUrl, retryScheduler, PollMetrics.disabled());
+    }
+
+    /**
+     * @return Metrics of the queue, which also count the outcomes of its messages.
+     */
+    public PollMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * @return <code>true</code> if the queue is a FIFO queue.
+     */
+    public boolean isFifo() {
+        return queueUrl.endsWith(FIFO_QUEUE_SUFFIX);
+    }
 
     public List<Message> receiveMessages(int limit) {
-        ReceiveMessageResult receiveMessageResult = sqs.receiveMessage(new ReceiveMessageRequest()
-                .withQueueUrl(queueUrl)
-                .withMaxNumberOfMessages(Math.min(limit, SQS_MAX_NUMBER_OF_MESSAGES_LIMIT)));
+        long start = System.nanoTime();
+        ReceiveMessageResult receiveMessageResult = sqs.receiveMessage(newReceiveMessageRequest(limit));
+        return recordReceive(start, receiveMessageResult.getMessages());
+    }
+
+    /**
+     * Long-polls the queue for messages.
+     *
+     * @param limit           Maximum number of messages to receive.
+     * @param waitTimeSeconds How long to wait for messages to arrive if the queue is empty. Capped at the SQS maximum of 20 seconds.
+     * @return Received messages, empty if none arrived within the wait time.
+     */
+    public List<Message> receiveMessages(final int limit, final int waitTimeSeconds) {
+        // long polls are not timed, their latency is mostly waiting for messages
+        ReceiveMessageResult receiveMessageResult = sqs.receiveMessage(newReceiveMessageRequest(limit)
+                .withWaitTimeSeconds(Math.min(waitTimeSeconds, SQS_MAX_WAIT_TIME_IN_SECONDS)));
+        metrics.addMessagesReceived(receiveMessageResult.getMessages().size());
         return receiveMessageResult.getMessages();
     }
 
-    public void deleteMessages(final List<Message> messages) {
-        // TODO: change to DeleteMessageBatch once policy template is updated
-        messages.forEach(m -> sqs.deleteMessage(queueUrl, m.getReceiptHandle()));
+    public CompletableFuture<List<Message>> receiveMessagesAsync(final int limit) {
+        long start = System.nanoTime();
+        CompletableFuture<ReceiveMessageResult> future = new CompletableFuture<>();
+        sqs.receiveMessageAsync(newReceiveMessageRequest(limit), completing(future));
+        return future.thenApply(result -> recordReceive(start, result.getMessages()));
     }
 
-    public void retryMessages(final List<RetryMessageRequest> retryRequests) {
-        List<ChangeMessageVisibilityBatchRequestEntry> entries =
-                retryRequests.stream()
-                        .map(this::toChangeMessageVisibilityEntry)
-                        .collect(Collectors.toList());
+    public SQSBatchResult deleteMessages(final List<Message> messages) {
+        return FutureUtil.join(deleteMessagesAsync(messages));
+    }
+
+    public CompletableFuture<SQSBatchResult> deleteMessagesAsync(final List<Message> messages) {
+        return sendInBatches(messages, Function.identity(), this::deleteMessageBatch);
+    }
+
+    public SQSBatchResult retryMessages(final List<RetryMessageRequest> retryRequests) {
+        return FutureUtil.join(retryMessagesAsync(retryRequests));
+    }
 
-        sqs.changeMessageVisibilityBatch(queueUrl, entries);
+    public CompletableFuture<SQSBatchResult> retryMessagesAsync(final List<RetryMessageRequest> retryRequests) {
+        return sendInBatches(retryRequests, RetryMessageRequest::getMessage, this::changeMessageVisibilityBatch);
+    }
+
+    private <T> CompletableFuture<SQSBatchResult> sendInBatches(final List<T> items,
+                                                                final Function<T, Message> messageOf,
+                                                                final Function<List<T>, CompletableFuture<List<BatchResultErrorEntry>>> sendBatch) {
+        List<CompletableFuture<SQSBatchResult>> batches = Lists.partition(items, SQS_MAX_BATCH_SIZE).stream()
+                .map(batch -> sendWithRetries(batch, messageOf, sendBatch, 1))
+                .collect(Collectors.toList());
+
+        return CompletableFuture.allOf(batches.toArray(new CompletableFuture[0]))
+                .thenApply(v -> batches.stream()
+                        .map(CompletableFuture::join)
+                        .reduce(SQSBatchResult.EMPTY, SQSBatchResult::merge));
+    }
+
+    private <T> CompletableFuture<SQSBatchResult> sendWithRetries(final List<T> batch,
+                                                                  final Function<T, Message> messageOf,
+                                                                  final Function<List<T>, CompletableFuture<List<BatchResultErrorEntry>>> sendBatch,
+                                                                  final int attempt) {
+        return sendBatch.apply(batch).thenCompose(errors -> {
+            // batch entry ids are the indexes of the items within the batch
+            Set<Integer> failedIndexes = new HashSet<>();
+            List<T> retryable = new ArrayList<>();
+            List<Message> failed = new ArrayList<>();
+            for (BatchResultErrorEntry error : errors) {
+                int index = Integer.parseInt(error.getId());
+                failedIndexes.add(index);
+                T item = batch.get(index);
+                if (!Boolean.TRUE.equals(error.getSenderFault()) && attempt < MAX_BATCH_ATTEMPTS) {
+                    retryable.add(item);
+                } else {
+                    log.warn("SQS batch entry for message {} failed on attempt {}. code={}, message={}",
+                            messageOf.apply(item).getMessageId(), attempt, error.getCode(), error.getMessage());
+                    failed.add(messageOf.apply(item));
+                }
+            }
+
+            List<Message> succeeded = IntStream.range(0, batch.size())
+                    .filter(i -> !failedIndexes.contains(i))
+                    .mapToObj(i -> messageOf.apply(batch.get(i)))
+                    .collect(Collectors.toList());
+            SQSBatchResult result = new SQSBatchResult(succeeded, failed);
+
+            if (retryable.isEmpty()) {
+                return CompletableFuture.completedFuture(result);
+            }
+            long delayInMillis = BATCH_RETRY_BASE_DELAY_IN_MILLIS << (attempt - 1);
+            log.info("Retrying {} failed SQS batch entries in {}ms", retryable.size(), delayInMillis);
+            return delay(delayInMillis)
+                    .thenCompose(v -> sendWithRetries(retryable, messageOf, sendBatch, attempt + 1))
+                    .thenApply(result::merge);
+        });
+    }
+
+    private List<Message> recordReceive(final long startNanos, final List<Message> messages) {
+        metrics.recordSQSCallLatency(Duration.ofNanos(System.nanoTime() - startNanos));
+        metrics.addMessagesReceived(messages.size());
+        return messages;
+    }
+
+    private <T> CompletableFuture<T> timed(final CompletableFuture<T> future, final long startNanos) {
+        return future.whenComplete((result, e) -> metrics.recordSQSCallLatency(Duration.ofNanos(System.nanoTime() - startNanos)));
+    }
+
+    private CompletableFuture<Void> delay(final long delayInMillis) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        retryScheduler.schedule(() -> {
+            future.complete(null);
+        }, delayInMillis, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    private CompletableFuture<List<BatchResultErrorEntry>> deleteMessageBatch(final List<Message> messages) {
+        List<DeleteMessageBatchRequestEntry> entries = IntStream.range(0, messages.size())
+                .mapToObj(i -> new DeleteMessageBatchRequestEntry(String.valueOf(i), messages.get(i).getReceiptHandle()))
+                .collect(Collectors.toList());
+
+        long start = System.nanoTime();
+        CompletableFuture<DeleteMessageBatchResult> future = new CompletableFuture<>();
+        sqs.deleteMessageBatchAsync(new DeleteMessageBatchRequest(queueUrl, entries), completing(future));
+        return timed(future, start).thenApply(DeleteMessageBatchResult::getFailed);
+    }
+
+    private CompletableFuture<List<BatchResultErrorEntry>> changeMessageVisibilityBatch(final List<RetryMessageRequest> retryRequests) {
+        List<ChangeMessageVisibilityBatchRequestEntry> entries = IntStream.range(0, retryRequests.size())
+                .mapToObj(i -> toChangeMessageVisibilityEntry(String.valueOf(i), retryRequests.get(i)))
+                .collect(Collectors.toList());
+
+        long start = System.nanoTime();
+        CompletableFuture<ChangeMessageVisibilityBatchResult> future = new CompletableFuture<>();
+        sqs.changeMessageVisibilityBatchAsync(new ChangeMessageVisibilityBatchRequest(queueUrl, entries), completing(future));
+        return timed(future, start).thenApply(ChangeMessageVisibilityBatchResult::getFailed);
+    }
+
+    private ReceiveMessageRequest newReceiveMessageRequest(final int limit) {
+        ReceiveMessageRequest request = new ReceiveMessageRequest()
+                .withQueueUrl(queueUrl)
+                .withMaxNumberOfMessages(Math.min(limit, SQS_MAX_NUMBER_OF_MESSAGES_LIMIT))
+                // drives the backoff of retried messages
+                .withAttributeNames(RetryBackoff.RECEIVE_COUNT_ATTRIBUTE);
+        if (isFifo()) {
+            // the SDK sends the same request object on retries, so they share the attempt id
+            request.withAttributeNames(MessageGroups.MESSAGE_GROUP_ID_ATTRIBUTE)
+                    .withReceiveRequestAttemptId(UUID.randomUUID().toString());
+        }
+        return request;
     }
 
-    private ChangeMessageVisibilityBatchRequestEntry toChangeMessageVisibilityEntry(final RetryMessageRequest retryRequest) {
+    private ChangeMessageVisibilityBatchRequestEntry toChangeMessageVisibilityEntry(final String id, final RetryMessageRequest retryRequest) {
         return new ChangeMessageVisibilityBatchRequestEntry()
-                .withId(retryRequest.getMessage().getMessageId())
+                .withId(id)
                 .withReceiptHandle(retryRequest.getMessage().getReceiptHandle())
                 .withVisibilityTimeout(retryRequest.getRetryDelayInSeconds());
     }
@@ -0,0 +1,149 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.amazonaws.services.sqs.model.Message;
+
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lombok.AccessLevel;
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Keeps messages invisible while they are being processed, so a batch that takes longer than the queue's visibility timeout
+ * is not received and processed a second time.
+ * <p>
+ * Every half visibility timeout, the visibility of messages that have not been released yet is extended by another full
+ * visibility timeout, in batches of up to 10 messages. The first extension is due half a visibility timeout after the
+ * messages were handed over, so messages should not wait longer than that between being received and being handed over.
+ */
+@Slf4j
+@RequiredArgsConstructor(access = AccessLevel.PACKAGE)
+public class VisibilityHeartbeat {
+    private static final ScheduledExecutorService DEFAULT_SCHEDULER = Executors.newScheduledThreadPool(2,
+            new ThreadFactoryBuilder()
+                    .setNameFormat("visibility-heartbeat-%d")
+                    .setDaemon(true)
+                    .build());
+
+    @NonNull
+    private final SQSProxy sqsProxy;
+    @NonNull
+    private final ScheduledExecutorService scheduler;
+    private final int visibilityTimeoutInSeconds;
+
+    /**
+     * @param sqsProxy Proxy of the queue messages are received from.
+     * @param visibilityTimeoutInSeconds The queue's visibility timeout.
+     */
+    public VisibilityHeartbeat(final SQSProxy sqsProxy, final int visibilityTimeoutInSeconds) {
+        this(sqsProxy, DEFAULT_SCHEDULER, visibilityTimeoutInSeconds);
+        Preconditions.checkArgument(visibilityTimeoutInSeconds > 1, "visibilityTimeoutInSeconds must be greater than 1");
+    }
+
+    /**
+     * Starts extending the visibility of the given messages until they are released.
+     *
+     * @param messages Messages about to be processed.
+     * @return Handle to release the messages with.
+     */
+    public Extension start(final List<Message> messages) {
+        return start(messages, sqsProxy);
+    }
+
+    /**
+     * Starts extending the visibility of the given messages until they are released.
+     *
+     * @param messages Messages about to be processed.
+     * @param queue Proxy of the queue the messages were received from, which must have the same visibility timeout.
+     * @return Handle to release the messages with.
+     */
+    public Extension start(final List<Message> messages, @NonNull final SQSProxy queue) {
+        Extension extension = new Extension(messages, queue);
+        long periodInMillis = TimeUnit.SECONDS.toMillis(visibilityTimeoutInSeconds) / 2;
+        extension.schedule(scheduler.scheduleAtFixedRate(extension::extend, periodInMillis, periodInMillis, TimeUnit.MILLISECONDS));
+        return extension;
+    }
+
+    /**
+     * Visibility extension of a set of messages. Once all messages are released, no further extensions are sent.
+     */
+    public final class Extension {
+        /**
+         * Messages still being processed.
+         */
+        private final List<Message> pending;
+        private final SQSProxy queue;
+        private ScheduledFuture<?> future;
+
+        private Extension(final List<Message> messages, final SQSProxy queue) {
+            this.pending = new ArrayList<>(messages);
+            this.queue = queue;
+        }
+
+        private synchronized void schedule(final ScheduledFuture<?> future) {
+            this.future = future;
+            if (pending.isEmpty()) {
+                future.cancel(false);
+            }
+        }
+
+        /**
+         * Stops extending the visibility of the given messages. If an extension is being sent, waits for it to complete, so
+         * a visibility change made after this returns, like a retry, is not overridden.
+         *
+         * @param messages Messages that are done processing.
+         */
+        public synchronized void release(final Collection<Message> messages) {
+            Set<Message> released = Collections.newSetFromMap(new IdentityHashMap<>());
+            released.addAll(messages);
+            pending.removeIf(released::contains);
+            if (pending.isEmpty() && future != null) {
+                future.cancel(false);
+            }
+        }
+
+        /**
+         * Stops extending the visibility of all messages.
+         */
+        public synchronized void releaseAll() {
+            release(new ArrayList<>(pending));
+        }
+
+        private synchronized void extend() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<RetryMessageRequest> requests = pending.stream()
+                    .map(message -> new RetryMessageRequest(message, visibilityTimeoutInSeconds))
+                    .collect(Collectors.toList());
+            try {
+                SQSBatchResult result = queue.retryMessages(requests);
+                log.info("Extended visibility of {} messages still being processed by {}s", result.getSucceeded().size(),
+                        visibilityTimeoutInSeconds);
+                if (!result.getFailed().isEmpty()) {
+                    // most likely their receipt handles are no longer valid, e.g. because the messages became visible already
+                    log.warn("Failed to extend visibility of {} messages, giving up on them. messageIds: {}", result.getFailed().size(),
+                            result.getFailed().stream().map(Message::getMessageId).collect(Collectors.toList()));
+                    release(result.getFailed());
+                }
+            } catch (RuntimeException e) {
+                // an exception would cancel further extensions, try again on the next beat instead
+                log.warn("Failed to extend visibility of {} messages", requests.size(), e);
+            }
+        }
+    }
+}
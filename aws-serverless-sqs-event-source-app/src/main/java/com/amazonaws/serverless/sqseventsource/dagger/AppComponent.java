@@ -2,6 +2,8 @@ package com.amazonaws.serverless.sqseventsource.dagger;
 
 import javax.inject.Singleton;
 
+import com.amazonaws.serverless.sqseventsource.MultiQueuePoller;
+import com.amazonaws.serverless.sqseventsource.PriorityPoller;
 import com.amazonaws.serverless.sqseventsource.SQSPoller;
 
 import dagger.Component;
@@ -13,4 +15,8 @@ import dagger.Component;
 @Component(modules = AppModule.class)
 public interface AppComponent {
     SQSPoller getSQSPoller();
+
+    MultiQueuePoller getMultiQueuePoller();
+
+    PriorityPoller getPriorityPoller();
 }
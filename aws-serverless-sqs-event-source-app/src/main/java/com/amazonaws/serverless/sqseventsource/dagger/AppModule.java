@@ -1,16 +1,36 @@
 package com.amazonaws.serverless.sqseventsource.dagger;
 
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+
 import javax.inject.Singleton;
 
+import com.amazonaws.serverless.sqseventsource.BatchAccumulator;
+import com.amazonaws.serverless.sqseventsource.BoundedExecutor;
+import com.amazonaws.serverless.sqseventsource.CongestionController;
+import com.amazonaws.serverless.sqseventsource.GsonCodec;
 import com.amazonaws.serverless.sqseventsource.MessageDispatcher;
 import com.amazonaws.serverless.sqseventsource.MessageProcessorProxy;
+import com.amazonaws.serverless.sqseventsource.MultiQueuePoller;
+import com.amazonaws.serverless.sqseventsource.PayloadBatcher;
+import com.amazonaws.serverless.sqseventsource.PollMetrics;
+import com.amazonaws.serverless.sqseventsource.PriorityPoller;
+import com.amazonaws.serverless.sqseventsource.RetryBackoff;
 import com.amazonaws.serverless.sqseventsource.SQSPoller;
 import com.amazonaws.serverless.sqseventsource.SQSProxy;
+import com.amazonaws.serverless.sqseventsource.VisibilityHeartbeat;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.JacksonCodec;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.JsonCodec;
 import com.amazonaws.services.lambda.AWSLambda;
 import com.amazonaws.services.lambda.AWSLambdaClientBuilder;
-import com.amazonaws.services.sqs.AmazonSQS;
-import com.amazonaws.services.sqs.AmazonSQSClientBuilder;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.AmazonSQSAsyncClientBuilder;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import dagger.Module;
 import dagger.Provides;
@@ -22,33 +42,136 @@ import dagger.Provides;
 public class AppModule {
     @Provides
     @Singleton
-    public SQSPoller provideSQSPoller(final SQSProxy sqsProxy, final MessageDispatcher messageDispatcher) {
-        return new SQSPoller(sqsProxy, messageDispatcher);
+    public SQSPoller provideSQSPoller(final SQSProxy sqsProxy, final MessageDispatcher messageDispatcher, final PollMetrics metrics) {
+        return new SQSPoller(sqsProxy, messageDispatcher, Env.isPipelinedReceiveEnabled(),
+                Duration.ofSeconds(Env.getLongPollingIdleBudgetSeconds()), createBatchAccumulator(sqsProxy), metrics);
+    }
+
+    @Provides
+    @Singleton
+    public MultiQueuePoller provideMultiQueuePoller(final AmazonSQSAsync sqs, final AWSLambda lambda, final JsonCodec codec) {
+        List<QueueConfig> queues = new ArrayList<>();
+        queues.add(new QueueConfig(Env.getQueueUrl(), Env.getMessageProcessorFunctionName(), Env.getQueueWeight()));
+        queues.addAll(QueueConfig.parseList(Env.getAdditionalQueues()));
+
+        List<MultiQueuePoller.Lane> lanes = new ArrayList<>(queues.size());
+        for (QueueConfig queue : queues) {
+            PollMetrics metrics = createPollMetrics(queue.getQueueName());
+            SQSProxy sqsProxy = new SQSProxy(sqs, queue.getQueueUrl(), metrics);
+            MessageProcessorProxy messageProcessorProxy = new MessageProcessorProxy(queue.getMessageProcessorFunctionName(), lambda,
+                    Env.isRequestCompressionEnabled(), codec);
+            lanes.add(new MultiQueuePoller.Lane(queue.getQueueName(), queue.getWeight(), createBatchAccumulator(sqsProxy),
+                    createMessageDispatcher(sqsProxy, messageProcessorProxy, codec, metrics), metrics));
+        }
+        return new MultiQueuePoller(lanes, Env.getTargetBatchSize());
+    }
+
+    @Provides
+    @Singleton
+    public PriorityPoller providePriorityPoller(final SQSProxy sqsProxy, final MessageDispatcher messageDispatcher, final AmazonSQSAsync sqs,
+                                                final PollMetrics metrics) {
+        List<PriorityPoller.Tier> tiers = new ArrayList<>();
+        tiers.add(new PriorityPoller.Tier(getQueueName(Env.getQueueUrl()), sqsProxy, createBatchAccumulator(sqsProxy), 0));
+        for (TierConfig tier : TierConfig.parseList(Env.getLowerPriorityQueues())) {
+            SQSProxy tierProxy = new SQSProxy(sqs, tier.getQueueUrl(), createPollMetrics(tier.getQueueName()));
+            tiers.add(new PriorityPoller.Tier(tier.getQueueName(), tierProxy, createBatchAccumulator(tierProxy), tier.getMinSharePercent() / 100.0));
+        }
+        return new PriorityPoller(tiers, messageDispatcher, metrics);
     }
 
     @Provides
     @Singleton
-    public MessageDispatcher providesMessageDispatcher(final SQSProxy sqsProxy, final MessageProcessorProxy messageProcessorProxy) {
-        return new MessageDispatcher(sqsProxy, messageProcessorProxy);
+    public MessageDispatcher providesMessageDispatcher(final SQSProxy sqsProxy, final MessageProcessorProxy messageProcessorProxy,
+                                                       final JsonCodec codec, final PollMetrics metrics) {
+        return createMessageDispatcher(sqsProxy, messageProcessorProxy, codec, metrics);
+    }
+
+    private static String getQueueName(final String queueUrl) {
+        return queueUrl.substring(queueUrl.lastIndexOf('/') + 1);
+    }
+
+    private static BatchAccumulator createBatchAccumulator(final SQSProxy sqsProxy) {
+        return new BatchAccumulator(sqsProxy, Env.getTargetBatchSize(), Duration.ofMillis(Env.getMaxBatchLingerMillis()));
+    }
+
+    private static MessageDispatcher createMessageDispatcher(final SQSProxy sqsProxy, final MessageProcessorProxy messageProcessorProxy,
+                                                             final JsonCodec codec, final PollMetrics metrics) {
+        PayloadBatcher payloadBatcher = new PayloadBatcher(Env.getMaxInvokePayloadBytes(), codec);
+        int visibilityHeartbeatTimeoutSeconds = Env.getVisibilityHeartbeatTimeoutSeconds();
+        VisibilityHeartbeat visibilityHeartbeat = visibilityHeartbeatTimeoutSeconds > 0
+                ? new VisibilityHeartbeat(sqsProxy, visibilityHeartbeatTimeoutSeconds)
+                : null;
+        int retryBackoffMaxDelaySeconds = Env.getRetryBackoffMaxDelaySeconds();
+        RetryBackoff retryBackoff = retryBackoffMaxDelaySeconds > 0
+                ? new RetryBackoff(retryBackoffMaxDelaySeconds)
+                : null;
+        int maxInFlightInvocations = Env.getMaxInFlightInvocations();
+        CongestionController congestionController = Env.isAdaptiveConcurrencyEnabled()
+                ? new CongestionController(maxInFlightInvocations, Env.getTargetBatchSize())
+                : null;
+        BoundedExecutor dispatchExecutor = maxInFlightInvocations > 1
+                ? new BoundedExecutor(Executors.newFixedThreadPool(maxInFlightInvocations, new ThreadFactoryBuilder()
+                        .setNameFormat("message-dispatch-%d")
+                        .setDaemon(true)
+                        .build()), maxInFlightInvocations)
+                : null;
+        return MessageDispatcher.builder()
+                .sqsProxy(sqsProxy)
+                .messageProcessorProxy(messageProcessorProxy)
+                .dispatchExecutor(dispatchExecutor)
+                .payloadBatcher(payloadBatcher)
+                .metrics(metrics)
+                .visibilityHeartbeat(visibilityHeartbeat)
+                .retryBackoff(retryBackoff)
+                .bisectOnFailure(Env.isBisectOnFailureEnabled())
+                .congestionController(congestionController)
+                .build();
     }
 
     @Provides
     @Singleton
-    public AmazonSQS provideAmazonSQS() {
-        return AmazonSQSClientBuilder.standard()
+    public AmazonSQSAsync provideAmazonSQS() {
+        return AmazonSQSAsyncClientBuilder.standard()
                 .build();
     }
 
     @Provides
     @Singleton
-    public SQSProxy provideSQSProxy(final AmazonSQS sqs) {
-        return new SQSProxy(sqs, Env.getQueueUrl());
+    public SQSProxy provideSQSProxy(final AmazonSQSAsync sqs, final PollMetrics metrics) {
+        return new SQSProxy(sqs, Env.getQueueUrl(), metrics);
+    }
+
+    @Provides
+    @Singleton
+    public PollMetrics providePollMetrics() {
+        return createPollMetrics(getQueueName(Env.getQueueUrl()));
+    }
+
+    private static PollMetrics createPollMetrics(final String queueName) {
+        if (!Env.isMetricsEnabled()) {
+            return PollMetrics.disabled();
+        }
+        return PollMetrics.embeddedMetricFormat(ImmutableMap.of("QueueName", queueName));
+    }
+
+    @Provides
+    @Singleton
+    public MessageProcessorProxy provideMessageProcessorProxy(final AWSLambda lambda, final JsonCodec codec) {
+        return new MessageProcessorProxy(Env.getMessageProcessorFunctionName(), lambda, Env.isRequestCompressionEnabled(), codec);
     }
 
     @Provides
     @Singleton
-    public MessageProcessorProxy provideMessageProcessorProxy(final AWSLambda lambda) {
-        return new MessageProcessorProxy(Env.getMessageProcessorFunctionName(), lambda);
+    public JsonCodec provideJsonCodec() {
+        String payloadCodec = Env.getPayloadCodec();
+        switch (payloadCodec) {
+            case "gson":
+                return GsonCodec.INSTANCE;
+            case "jackson":
+                return JacksonCodec.INSTANCE;
+            default:
+                throw new IllegalArgumentException("Unknown payload codec: " + payloadCodec);
+        }
     }
 
     @Provides
@@ -6,6 +6,32 @@ package com.amazonaws.serverless.sqseventsource.dagger;
 public final class Env {
     public static final String QUEUE_URL_KEY = "QUEUE_URL";
     public static final String MESSAGE_PROCESSOR_FUNCTION_NAME_KEY = "MESSAGE_PROCESSOR_FUNCTION_NAME";
+    public static final String PIPELINED_RECEIVE_ENABLED_KEY = "PIPELINED_RECEIVE_ENABLED";
+    public static final String MAX_IN_FLIGHT_INVOCATIONS_KEY = "MAX_IN_FLIGHT_INVOCATIONS";
+    public static final String LONG_POLLING_IDLE_BUDGET_SECONDS_KEY = "LONG_POLLING_IDLE_BUDGET_SECONDS";
+    public static final String TARGET_BATCH_SIZE_KEY = "TARGET_BATCH_SIZE";
+    public static final String MAX_BATCH_LINGER_MILLIS_KEY = "MAX_BATCH_LINGER_MILLIS";
+    public static final String MAX_INVOKE_PAYLOAD_BYTES_KEY = "MAX_INVOKE_PAYLOAD_BYTES";
+    public static final String REQUEST_COMPRESSION_ENABLED_KEY = "REQUEST_COMPRESSION_ENABLED";
+    public static final String PAYLOAD_CODEC_KEY = "PAYLOAD_CODEC";
+    public static final String METRICS_ENABLED_KEY = "METRICS_ENABLED";
+    public static final String VISIBILITY_HEARTBEAT_TIMEOUT_SECONDS_KEY = "VISIBILITY_HEARTBEAT_TIMEOUT_SECONDS";
+    public static final String RETRY_BACKOFF_MAX_DELAY_SECONDS_KEY = "RETRY_BACKOFF_MAX_DELAY_SECONDS";
+    public static final String BISECT_ON_FAILURE_ENABLED_KEY = "BISECT_ON_FAILURE_ENABLED";
+    public static final String ADAPTIVE_CONCURRENCY_ENABLED_KEY = "ADAPTIVE_CONCURRENCY_ENABLED";
+    public static final String QUEUE_WEIGHT_KEY = "QUEUE_WEIGHT";
+    public static final String ADDITIONAL_QUEUES_KEY = "ADDITIONAL_QUEUES";
+    public static final String LOWER_PRIORITY_QUEUES_KEY = "LOWER_PRIORITY_QUEUES";
+
+    private static final int DEFAULT_MAX_IN_FLIGHT_INVOCATIONS = 1;
+    private static final int DEFAULT_LONG_POLLING_IDLE_BUDGET_SECONDS = 0;
+    private static final int DEFAULT_TARGET_BATCH_SIZE = 10;
+    private static final int DEFAULT_MAX_BATCH_LINGER_MILLIS = 500;
+    private static final int DEFAULT_MAX_INVOKE_PAYLOAD_BYTES = 6_000_000;
+    private static final String DEFAULT_PAYLOAD_CODEC = "gson";
+    private static final int DEFAULT_VISIBILITY_HEARTBEAT_TIMEOUT_SECONDS = 0;
+    private static final int DEFAULT_RETRY_BACKOFF_MAX_DELAY_SECONDS = 0;
+    private static final int DEFAULT_QUEUE_WEIGHT = 1;
 
     private Env() {
     }
@@ -17,4 +43,95 @@ public final class Env {
     public static String getMessageProcessorFunctionName() {
         return System.getenv(MESSAGE_PROCESSOR_FUNCTION_NAME_KEY);
     }
+
+    public static boolean isPipelinedReceiveEnabled() {
+        return Boolean.parseBoolean(System.getenv(PIPELINED_RECEIVE_ENABLED_KEY));
+    }
+
+    public static int getMaxInFlightInvocations() {
+        return getInt(MAX_IN_FLIGHT_INVOCATIONS_KEY, DEFAULT_MAX_IN_FLIGHT_INVOCATIONS);
+    }
+
+    public static int getLongPollingIdleBudgetSeconds() {
+        return getInt(LONG_POLLING_IDLE_BUDGET_SECONDS_KEY, DEFAULT_LONG_POLLING_IDLE_BUDGET_SECONDS);
+    }
+
+    public static int getTargetBatchSize() {
+        return getInt(TARGET_BATCH_SIZE_KEY, DEFAULT_TARGET_BATCH_SIZE);
+    }
+
+    public static int getMaxBatchLingerMillis() {
+        return getInt(MAX_BATCH_LINGER_MILLIS_KEY, DEFAULT_MAX_BATCH_LINGER_MILLIS);
+    }
+
+    public static int getMaxInvokePayloadBytes() {
+        return getInt(MAX_INVOKE_PAYLOAD_BYTES_KEY, DEFAULT_MAX_INVOKE_PAYLOAD_BYTES);
+    }
+
+    public static boolean isRequestCompressionEnabled() {
+        return Boolean.parseBoolean(System.getenv(REQUEST_COMPRESSION_ENABLED_KEY));
+    }
+
+    public static String getPayloadCodec() {
+        String value = System.getenv(PAYLOAD_CODEC_KEY);
+        return value == null || value.isEmpty() ? DEFAULT_PAYLOAD_CODEC : value;
+    }
+
+    public static boolean isMetricsEnabled() {
+        return Boolean.parseBoolean(System.getenv(METRICS_ENABLED_KEY));
+    }
+
+    public static int getVisibilityHeartbeatTimeoutSeconds() {
+        return getInt(VISIBILITY_HEARTBEAT_TIMEOUT_SECONDS_KEY, DEFAULT_VISIBILITY_HEARTBEAT_TIMEOUT_SECONDS);
+    }
+
+    public static int getRetryBackoffMaxDelaySeconds() {
+        return getInt(RETRY_BACKOFF_MAX_DELAY_SECONDS_KEY, DEFAULT_RETRY_BACKOFF_MAX_DELAY_SECONDS);
+    }
+
+    public static boolean isBisectOnFailureEnabled() {
+        return Boolean.parseBoolean(System.getenv(BISECT_ON_FAILURE_ENABLED_KEY));
+    }
+
+    public static boolean isAdaptiveConcurrencyEnabled() {
+        return Boolean.parseBoolean(System.getenv(ADAPTIVE_CONCURRENCY_ENABLED_KEY));
+    }
+
+    public static int getQueueWeight() {
+        return getInt(QUEUE_WEIGHT_KEY, DEFAULT_QUEUE_WEIGHT);
+    }
+
+    /**
+     * @return Queues to poll besides the one at {@link #getQueueUrl()}, in the format read by {@link QueueConfig#parseList(String)}.
+     */
+    public static String getAdditionalQueues() {
+        return System.getenv(ADDITIONAL_QUEUES_KEY);
+    }
+
+    /**
+     * @return <code>true</code> if more than one queue is polled.
+     */
+    public static boolean isMultiQueuePollingEnabled() {
+        return !QueueConfig.parseList(getAdditionalQueues()).isEmpty();
+    }
+
+    /**
+     * @return Queues of lower priority than the one at {@link #getQueueUrl()}, in the format read by
+     * {@link TierConfig#parseList(String)}.
+     */
+    public static String getLowerPriorityQueues() {
+        return System.getenv(LOWER_PRIORITY_QUEUES_KEY);
+    }
+
+    /**
+     * @return <code>true</code> if queues of lower priority are polled.
+     */
+    public static boolean isPriorityPollingEnabled() {
+        return !TierConfig.parseList(getLowerPriorityQueues()).isEmpty();
+    }
+
+    private static int getInt(final String key, final int defaultValue) {
+        String value = System.getenv(key);
+        return value == null || value.isEmpty() ? defaultValue : Integer.parseInt(value);
+    }
 }
@@ -0,0 +1,52 @@
+package com.amazonaws.serverless.sqseventsource.dagger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+
+import lombok.Value;
+
+/**
+ * A queue to poll, with the message processor its messages are sent to and its share of each poll.
+ */
+@Value
+public class QueueConfig {
+    private final String queueUrl;
+    private final String messageProcessorFunctionName;
+    private final int weight;
+
+    /**
+     * @return Name of the queue, the last segment of its URL.
+     */
+    public String getQueueName() {
+        return queueUrl.substring(queueUrl.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Parses queues given as <code>queueUrl,messageProcessorFunctionName[,weight]</code> entries separated by semicolons.
+     * The weight defaults to 1.
+     *
+     * @param value Queues to parse. May be <code>null</code> or empty.
+     * @return Parsed queues.
+     * @throws IllegalArgumentException if an entry is malformed.
+     */
+    public static List<QueueConfig> parseList(final String value) {
+        List<QueueConfig> queues = new ArrayList<>();
+        if (value == null) {
+            return queues;
+        }
+        for (String entry : Splitter.on(';').trimResults().omitEmptyStrings().split(value)) {
+            List<String> fields = Splitter.on(',').trimResults().splitToList(entry);
+            Preconditions.checkArgument(fields.size() == 2 || fields.size() == 3,
+                    "Expected queueUrl,messageProcessorFunctionName[,weight] but got: %s", entry);
+            Preconditions.checkArgument(!fields.get(0).isEmpty() && !fields.get(1).isEmpty(),
+                    "Queue URL and message processor function name cannot be empty: %s", entry);
+            int weight = fields.size() == 3 ? Integer.parseInt(fields.get(2)) : 1;
+            Preconditions.checkArgument(weight > 0, "Weight must be positive: %s", entry);
+            queues.add(new QueueConfig(fields.get(0), fields.get(1), weight));
+        }
+        return queues;
+    }
+}
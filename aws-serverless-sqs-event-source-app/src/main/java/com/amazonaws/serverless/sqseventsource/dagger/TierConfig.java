@@ -0,0 +1,57 @@
+package com.amazonaws.serverless.sqseventsource.dagger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Splitter;
+
+import lombok.Value;
+import lombok.experimental.PackagePrivate;
+
+/**
+ * A lower priority queue, with the share of each poll it is guaranteed while it has messages.
+ */
+@Value
+public class TierConfig {
+    @PackagePrivate
+    static final int DEFAULT_MIN_SHARE_PERCENT = 10;
+
+    private final String queueUrl;
+    private final int minSharePercent;
+
+    /**
+     * @return Name of the queue, the last segment of its URL.
+     */
+    public String getQueueName() {
+        return queueUrl.substring(queueUrl.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Parses tiers given as <code>queueUrl[,minSharePercent]</code> entries separated by semicolons, highest priority first.
+     * The minimum share defaults to {@value #DEFAULT_MIN_SHARE_PERCENT} percent. The shares must add up to less than 100 percent,
+     * so the primary queue keeps a share too.
+     *
+     * @param value Tiers to parse. May be <code>null</code> or empty.
+     * @return Parsed tiers.
+     * @throws IllegalArgumentException if an entry is malformed.
+     */
+    public static List<TierConfig> parseList(final String value) {
+        List<TierConfig> tiers = new ArrayList<>();
+        if (value == null) {
+            return tiers;
+        }
+        int totalSharePercent = 0;
+        for (String entry : Splitter.on(';').trimResults().omitEmptyStrings().split(value)) {
+            List<String> fields = Splitter.on(',').trimResults().splitToList(entry);
+            Preconditions.checkArgument(fields.size() <= 2 && !fields.get(0).isEmpty(),
+                    "Expected queueUrl[,minSharePercent] but got: %s", entry);
+            int minSharePercent = fields.size() == 2 ? Integer.parseInt(fields.get(1)) : DEFAULT_MIN_SHARE_PERCENT;
+            Preconditions.checkArgument(minSharePercent >= 0 && minSharePercent < 100, "Minimum share must be from 0 to 99 percent: %s", entry);
+            totalSharePercent += minSharePercent;
+            tiers.add(new TierConfig(fields.get(0), minSharePercent));
+        }
+        Preconditions.checkArgument(totalSharePercent < 100, "Minimum shares must add up to less than 100 percent: %s", value);
+        return tiers;
+    }
+}
@@ -1,26 +1,38 @@
 package com.amazonaws.serverless.sqseventsource.lambda;
 
-import com.amazonaws.serverless.sqseventsource.SQSPoller;
+import java.util.function.IntConsumer;
+
 import com.amazonaws.serverless.sqseventsource.dagger.AppComponent;
 import com.amazonaws.serverless.sqseventsource.dagger.DaggerAppComponent;
+import com.amazonaws.serverless.sqseventsource.dagger.Env;
 import com.amazonaws.services.lambda.runtime.Context;
 import com.amazonaws.services.lambda.runtime.RequestHandler;
 import com.amazonaws.services.lambda.runtime.events.ScheduledEvent;
 
 /**
- * SQS Poller lambda invoked by Cloudwatch events.
+ * SQS Poller lambda invoked by Cloudwatch events. Polls a single queue, several queues with their own message processors if
+ * additional queues are configured, or several queues sharing one message processor if lower priority queues are configured.
  */
 public class SQSPollerHandler implements RequestHandler<ScheduledEvent, Void> {
-    private SQSPoller sqsPoller;
+    private IntConsumer poller;
 
     public SQSPollerHandler() {
         AppComponent component = DaggerAppComponent.create();
-        sqsPoller = component.getSQSPoller();
+        if (Env.isMultiQueuePollingEnabled() && Env.isPriorityPollingEnabled()) {
+            throw new IllegalArgumentException(String.format("%s and %s cannot be combined", Env.ADDITIONAL_QUEUES_KEY, Env.LOWER_PRIORITY_QUEUES_KEY));
+        }
+        if (Env.isMultiQueuePollingEnabled()) {
+            poller = component.getMultiQueuePoller()::poll;
+        } else if (Env.isPriorityPollingEnabled()) {
+            poller = component.getPriorityPoller()::poll;
+        } else {
+            poller = component.getSQSPoller()::poll;
+        }
     }
 
     @Override
     public Void handleRequest(final ScheduledEvent event, final Context context) {
-        sqsPoller.poll(context.getRemainingTimeInMillis());
+        poller.accept(context.getRemainingTimeInMillis());
         return null;
     }
 }
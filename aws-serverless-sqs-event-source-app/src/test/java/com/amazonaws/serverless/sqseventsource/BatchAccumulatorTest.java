@@ -0,0 +1,132 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.amazonaws.services.sqs.model.AmazonSQSException;
+import com.amazonaws.services.sqs.model.Message;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class BatchAccumulatorTest {
+    private static final Instant NOW = Instant.now();
+
+    @Mock
+    private SQSProxy sqsProxy;
+
+    private BatchAccumulator batchAccumulator;
+
+    @Before
+    public void setup() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(sqsProxy.receiveMessagesAsync(anyInt())).thenAnswer(invocation ->
+                CompletableFuture.completedFuture(messages((Integer) invocation.getArguments()[0])));
+        batchAccumulator = new BatchAccumulator(sqsProxy, 25, Duration.ofSeconds(1), Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    public void receive_smallBatchUsesSingleReceive() throws Exception {
+        List<Message> messages = messages(5);
+        when(sqsProxy.receiveMessages(anyInt())).thenReturn(messages);
+
+        assertThat(batchAccumulator.receive(5), is(messages));
+        verify(sqsProxy).receiveMessages(5);
+        verifyNoMoreInteractions(sqsProxy);
+    }
+
+    @Test
+    public void receive_parallelReceivesUpToTarget() throws Exception {
+        assertThat(batchAccumulator.receive(100).size(), is(25));
+        verify(sqsProxy, times(2)).receiveMessagesAsync(10);
+        verify(sqsProxy).receiveMessagesAsync(5);
+        verifyNoMoreInteractions(sqsProxy);
+    }
+
+    @Test
+    public void receive_limitedByCapacity() throws Exception {
+        assertThat(batchAccumulator.receive(12).size(), is(12));
+        verify(sqsProxy).receiveMessagesAsync(10);
+        verify(sqsProxy).receiveMessagesAsync(2);
+        verifyNoMoreInteractions(sqsProxy);
+    }
+
+    @Test
+    public void receive_keepsReceivingWhilePartiallyFilled() throws Exception {
+        when(sqsProxy.receiveMessagesAsync(anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(messages(3)))
+                .thenReturn(CompletableFuture.completedFuture(messages(3)))
+                .thenReturn(CompletableFuture.completedFuture(messages(3)))
+                .thenReturn(CompletableFuture.completedFuture(Collections.emptyList()));
+
+        assertThat(batchAccumulator.receive(25).size(), is(9));
+        // first round asks for 10 + 10 + 5, second round for the 16 still missing, then the queue is empty
+        verify(sqsProxy, times(3)).receiveMessagesAsync(10);
+        verify(sqsProxy).receiveMessagesAsync(5);
+        verify(sqsProxy).receiveMessagesAsync(6);
+    }
+
+    @Test
+    public void receive_stopsAfterLinger() throws Exception {
+        Clock clock = mock(Clock.class);
+        when(clock.instant())
+                .thenReturn(NOW)
+                .thenReturn(NOW.plusSeconds(2));
+        batchAccumulator = new BatchAccumulator(sqsProxy, 25, Duration.ofSeconds(1), clock);
+        when(sqsProxy.receiveMessagesAsync(anyInt())).thenReturn(CompletableFuture.completedFuture(messages(1)));
+
+        assertThat(batchAccumulator.receive(25).size(), is(3));
+        verify(sqsProxy, times(3)).receiveMessagesAsync(anyInt());
+    }
+
+    @Test
+    public void receive_failedReceiveKeepsReceivedMessages() throws Exception {
+        CompletableFuture<List<Message>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new AmazonSQSException("receive failed"));
+        when(sqsProxy.receiveMessagesAsync(anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(messages(10)))
+                .thenReturn(failed)
+                .thenReturn(CompletableFuture.completedFuture(messages(5)));
+
+        // no further round once a receive has failed
+        assertThat(batchAccumulator.receive(25).size(), is(15));
+        verify(sqsProxy, times(3)).receiveMessagesAsync(anyInt());
+    }
+
+    @Test(expected = AmazonSQSException.class)
+    public void receive_failedReceiveWithoutMessages() throws Exception {
+        CompletableFuture<List<Message>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new AmazonSQSException("receive failed"));
+        when(sqsProxy.receiveMessagesAsync(anyInt()))
+                .thenReturn(failed)
+                .thenReturn(CompletableFuture.completedFuture(Collections.emptyList()));
+
+        batchAccumulator.receive(25);
+    }
+
+    private static List<Message> messages(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new Message().withMessageId(String.valueOf(i)))
+                .collect(Collectors.toList());
+    }
+}
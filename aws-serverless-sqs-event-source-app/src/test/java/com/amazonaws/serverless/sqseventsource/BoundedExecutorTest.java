@@ -0,0 +1,98 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class BoundedExecutorTest {
+    private ExecutorService executorService;
+    private BoundedExecutor boundedExecutor;
+
+    @Before
+    public void setup() throws Exception {
+        executorService = Executors.newFixedThreadPool(4);
+        boundedExecutor = new BoundedExecutor(executorService, 2);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        executorService.shutdownNow();
+    }
+
+    @Test
+    public void execute_limitsTasksInFlight() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxObserved = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(10);
+
+        for (int i = 0; i < 10; i++) {
+            boundedExecutor.execute(() -> {
+                maxObserved.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                sleep(5);
+                inFlight.decrementAndGet();
+                done.countDown();
+            });
+        }
+        boundedExecutor.awaitQuiescence();
+
+        assertThat(done.await(0, TimeUnit.MILLISECONDS), is(true));
+        assertThat(maxObserved.get() <= 2, is(true));
+    }
+
+    @Test
+    public void setLimit_limitsTasksInFlight() throws Exception {
+        AtomicInteger inFlight = new AtomicInteger();
+        AtomicInteger maxObserved = new AtomicInteger();
+
+        boundedExecutor.setLimit(1);
+        for (int i = 0; i < 10; i++) {
+            boundedExecutor.execute(() -> {
+                maxObserved.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                sleep(5);
+                inFlight.decrementAndGet();
+            });
+        }
+        boundedExecutor.awaitQuiescence();
+
+        assertThat(maxObserved.get(), is(1));
+    }
+
+    @Test
+    public void setLimit_clampedToMaxInFlight() throws Exception {
+        boundedExecutor.setLimit(10);
+        assertThat(boundedExecutor.getLimit(), is(2));
+
+        boundedExecutor.setLimit(0);
+        assertThat(boundedExecutor.getLimit(), is(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void awaitQuiescence_rethrowsTaskFailure() throws Exception {
+        boundedExecutor.execute(() -> {
+            throw new IllegalArgumentException();
+        });
+        boundedExecutor.awaitQuiescence();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_nonPositiveLimit() throws Exception {
+        new BoundedExecutor(executorService, 0);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class CongestionControllerTest {
+    private static final Instant NOW = Instant.now();
+
+    private Clock clock;
+    private CongestionController controller;
+
+    @Before
+    public void setup() throws Exception {
+        clock = mock(Clock.class);
+        when(clock.instant()).thenReturn(NOW);
+        controller = new CongestionController(8, 100, clock);
+    }
+
+    @Test
+    public void onThrottle_halvesLimits() throws Exception {
+        controller.onThrottle();
+
+        assertThat(controller.getConcurrencyLimit(), is(4));
+        assertThat(controller.getBatchSizeLimit(), is(50));
+    }
+
+    @Test
+    public void onThrottle_decreasesOncePerInterval() throws Exception {
+        controller.onThrottle();
+        controller.onThrottle();
+
+        assertThat(controller.getConcurrencyLimit(), is(4));
+
+        when(clock.instant()).thenReturn(NOW.plus(CongestionController.DECREASE_INTERVAL));
+        controller.onThrottle();
+
+        assertThat(controller.getConcurrencyLimit(), is(2));
+        assertThat(controller.getBatchSizeLimit(), is(25));
+    }
+
+    @Test
+    public void onThrottle_neverBelowOne() throws Exception {
+        controller = new CongestionController(1, 1, clock);
+
+        controller.onThrottle();
+
+        assertThat(controller.getConcurrencyLimit(), is(1));
+        assertThat(controller.getBatchSizeLimit(), is(1));
+    }
+
+    @Test
+    public void onSuccess_increasesAdditively() throws Exception {
+        controller.onThrottle();
+
+        // one message per invocation, one invocation once as many as the limit have succeeded
+        for (int i = 0; i < 3; i++) {
+            controller.onSuccess(Duration.ofMillis(100), Duration.ofMillis(100));
+        }
+        assertThat(controller.getBatchSizeLimit(), is(53));
+        assertThat(controller.getConcurrencyLimit(), is(4));
+
+        controller.onSuccess(Duration.ofMillis(100), Duration.ofMillis(100));
+        assertThat(controller.getBatchSizeLimit(), is(54));
+        assertThat(controller.getConcurrencyLimit(), is(5));
+    }
+
+    @Test
+    public void onSuccess_cappedAtMaximum() throws Exception {
+        for (int i = 0; i < 100; i++) {
+            controller.onSuccess(Duration.ofMillis(100), Duration.ofMillis(100));
+        }
+
+        assertThat(controller.getConcurrencyLimit(), is(8));
+        assertThat(controller.getBatchSizeLimit(), is(100));
+    }
+
+    @Test
+    public void onSuccess_latencySpike() throws Exception {
+        // no expectation yet
+        controller.onSuccess(Duration.ofMillis(1000), Duration.ZERO);
+        controller.onSuccess(Duration.ofMillis(200), Duration.ofMillis(100));
+
+        assertThat(controller.getConcurrencyLimit(), is(8));
+
+        controller.onSuccess(Duration.ofMillis(201), Duration.ofMillis(100));
+
+        assertThat(controller.getConcurrencyLimit(), is(4));
+        assertThat(controller.getBatchSizeLimit(), is(50));
+    }
+
+    @Test
+    public void onSuccess_smallBatchesWithConstantOverhead() throws Exception {
+        MessageProcessingStats stats = new MessageProcessingStats();
+        // 100ms per invocation plus 1ms per message, so small batches take much longer per message
+        for (int batchSize : new int[] {100, 100, 10, 10, 10, 10, 1, 1, 1, 1, 1, 1}) {
+            Duration latency = Duration.ofMillis(100 + batchSize);
+            controller.onSuccess(latency, stats.getExpectedDuration(batchSize));
+            stats.record(latency, batchSize);
+        }
+
+        assertThat(controller.getConcurrencyLimit(), is(8));
+        assertThat(controller.getBatchSizeLimit(), is(100));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_nonPositiveMaxConcurrency() throws Exception {
+        new CongestionController(0, 10);
+    }
+}
@@ -0,0 +1,138 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.amazonaws.serverless.sqseventsource.messageprocessor.JacksonCodec;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessorRequest;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessorResponse;
+import com.amazonaws.services.lambda.AbstractAWSLambda;
+import com.amazonaws.services.lambda.model.InvokeRequest;
+import com.amazonaws.services.lambda.model.InvokeResult;
+import com.amazonaws.services.lambda.model.TooManyRequestsException;
+
+import com.google.common.base.Charsets;
+
+/**
+ * In-memory stand-in for the message processor lambda function. Invocations are routed to an in-process message processor,
+ * e.g. an <code>SQSMessageProcessor</code>, with payloads serialized with Jackson as the Java lambda runtime does.
+ * <p>
+ * Invocations take a configurable simulated latency on top of the processor's own run time. Invocations beyond the
+ * concurrency limit are throttled, and further throttling and function errors can be injected.
+ */
+class FakeAWSLambda extends AbstractAWSLambda {
+    private final Function<SQSMessageProcessorRequest, SQSMessageProcessorResponse> messageProcessor;
+    private final List<Duration> invokeLatencies = new ArrayList<>();
+    private final AtomicInteger invokeCount = new AtomicInteger();
+    private final AtomicInteger throttleCount = new AtomicInteger();
+    private final AtomicInteger errorCount = new AtomicInteger();
+
+    private LatencyDistribution latency = LatencyDistribution.none();
+    private Semaphore concurrency = new Semaphore(Integer.MAX_VALUE);
+    private double throttleRate = 0;
+    private double errorRate = 0;
+
+    FakeAWSLambda(final Function<SQSMessageProcessorRequest, SQSMessageProcessorResponse> messageProcessor) {
+        this.messageProcessor = messageProcessor;
+    }
+
+    FakeAWSLambda withLatency(final LatencyDistribution latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    /**
+     * @param maxConcurrency Number of invocations that may run at once before further invocations are throttled.
+     */
+    FakeAWSLambda withMaxConcurrency(final int maxConcurrency) {
+        this.concurrency = new Semaphore(maxConcurrency);
+        return this;
+    }
+
+    /**
+     * @param throttleRate Fraction of invocations that are throttled regardless of concurrency.
+     */
+    FakeAWSLambda withThrottleRate(final double throttleRate) {
+        this.throttleRate = throttleRate;
+        return this;
+    }
+
+    /**
+     * @param errorRate Fraction of invocations that fail with an unhandled function error.
+     */
+    FakeAWSLambda withErrorRate(final double errorRate) {
+        this.errorRate = errorRate;
+        return this;
+    }
+
+    @Override
+    public InvokeResult invoke(final InvokeRequest request) {
+        invokeCount.incrementAndGet();
+        if (ThreadLocalRandom.current().nextDouble() < throttleRate || !concurrency.tryAcquire()) {
+            throttleCount.incrementAndGet();
+            TooManyRequestsException e = new TooManyRequestsException("Rate Exceeded.");
+            e.setErrorCode("TooManyRequestsException");
+            e.setStatusCode(429);
+            e.setServiceName("AWSLambda");
+            throw e;
+        }
+
+        long start = System.nanoTime();
+        try {
+            latency.sleep(ThreadLocalRandom.current());
+            if (ThreadLocalRandom.current().nextDouble() < errorRate) {
+                errorCount.incrementAndGet();
+                return new InvokeResult()
+                        .withStatusCode(200)
+                        .withFunctionError("Unhandled")
+                        .withPayload(ByteBuffer.wrap("{\"errorMessage\":\"Injected failure\"}".getBytes(Charsets.UTF_8)));
+            }
+
+            SQSMessageProcessorRequest processorRequest = JacksonCodec.INSTANCE.read(LambdaUtil.getPayloadAsReader(
+                    new InvokeResult().withPayload(request.getPayload())), SQSMessageProcessorRequest.class);
+            StringWriter response = new StringWriter();
+            JacksonCodec.INSTANCE.write(messageProcessor.apply(processorRequest), response);
+            return new InvokeResult()
+                    .withStatusCode(200)
+                    .withPayload(ByteBuffer.wrap(response.toString().getBytes(Charsets.UTF_8)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            concurrency.release();
+            Duration invokeLatency = Duration.ofNanos(System.nanoTime() - start);
+            synchronized (invokeLatencies) {
+                invokeLatencies.add(invokeLatency);
+            }
+        }
+    }
+
+    int getInvokeCount() {
+        return invokeCount.get();
+    }
+
+    int getThrottleCount() {
+        return throttleCount.get();
+    }
+
+    int getErrorCount() {
+        return errorCount.get();
+    }
+
+    /**
+     * @return Run time of each invocation that was not throttled, including simulated latency.
+     */
+    List<Duration> getInvokeLatencies() {
+        synchronized (invokeLatencies) {
+            return new ArrayList<>(invokeLatencies);
+        }
+    }
+}
@@ -0,0 +1,370 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import com.amazonaws.AmazonServiceException;
+import com.amazonaws.AmazonWebServiceRequest;
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.services.sqs.AbstractAmazonSQSAsync;
+import com.amazonaws.services.sqs.model.AmazonSQSException;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResultEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+import com.amazonaws.services.sqs.model.SendMessageRequest;
+import com.amazonaws.services.sqs.model.SendMessageResult;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * In-memory stand-in for a standard SQS queue, for exercising the poller offline.
+ * <p>
+ * Models what the poller depends on: received messages stay invisible for the visibility timeout, every receive hands out a
+ * new receipt handle and only the latest one acks the message, receives return at most 10 messages and long polls wait for
+ * messages to arrive. Calls take a configurable simulated latency, and throttling and batch entry failures can be injected.
+ * <p>
+ * Only the operations the poller uses are implemented. Async operations run on an internal thread pool.
+ */
+class FakeAmazonSQS extends AbstractAmazonSQSAsync {
+    static final int MAX_NUMBER_OF_MESSAGES = 10;
+    static final int DEFAULT_VISIBILITY_TIMEOUT_SECONDS = 30;
+
+    private final Clock clock;
+    private final ExecutorService asyncExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+            .setNameFormat("fake-sqs-%d")
+            .setDaemon(true)
+            .build());
+
+    /**
+     * Messages in the order they were sent, keyed by message id.
+     */
+    private final Map<String, QueuedMessage> messages = new LinkedHashMap<>();
+    /**
+     * Messages keyed by their latest receipt handle.
+     */
+    private final Map<String, QueuedMessage> messagesByReceiptHandle = new HashMap<>();
+    private final List<Duration> deleteLatencies = new ArrayList<>();
+
+    private LatencyDistribution latency = LatencyDistribution.none();
+    private int visibilityTimeoutSeconds = DEFAULT_VISIBILITY_TIMEOUT_SECONDS;
+    private double throttleRate = 0;
+    private double batchEntryFailureRate = 0;
+
+    private final AtomicInteger receiveCount = new AtomicInteger();
+    private final AtomicInteger throttleCount = new AtomicInteger();
+    private final AtomicInteger staleDeleteCount = new AtomicInteger();
+
+    FakeAmazonSQS() {
+        this(Clock.systemUTC());
+    }
+
+    FakeAmazonSQS(final Clock clock) {
+        this.clock = clock;
+    }
+
+    FakeAmazonSQS withLatency(final LatencyDistribution latency) {
+        this.latency = latency;
+        return this;
+    }
+
+    FakeAmazonSQS withVisibilityTimeoutSeconds(final int visibilityTimeoutSeconds) {
+        this.visibilityTimeoutSeconds = visibilityTimeoutSeconds;
+        return this;
+    }
+
+    /**
+     * @param throttleRate Fraction of calls that fail with a throttling error.
+     */
+    FakeAmazonSQS withThrottleRate(final double throttleRate) {
+        this.throttleRate = throttleRate;
+        return this;
+    }
+
+    /**
+     * @param batchEntryFailureRate Fraction of delete and visibility change batch entries that fail with a retryable
+     *                              server-side error.
+     */
+    FakeAmazonSQS withBatchEntryFailureRate(final double batchEntryFailureRate) {
+        this.batchEntryFailureRate = batchEntryFailureRate;
+        return this;
+    }
+
+    @Override
+    public SendMessageResult sendMessage(final SendMessageRequest request) {
+        String messageId = UUID.randomUUID().toString();
+        Message message = new Message()
+                .withMessageId(messageId)
+                .withBody(request.getMessageBody())
+                .addAttributesEntry("SentTimestamp", String.valueOf(clock.millis()));
+        synchronized (this) {
+            messages.put(messageId, new QueuedMessage(message, Instant.now(clock)));
+            notifyAll();
+        }
+        return new SendMessageResult().withMessageId(messageId);
+    }
+
+    @Override
+    public SendMessageResult sendMessage(final String queueUrl, final String messageBody) {
+        return sendMessage(new SendMessageRequest(queueUrl, messageBody));
+    }
+
+    @Override
+    public ReceiveMessageResult receiveMessage(final ReceiveMessageRequest request) {
+        call();
+        int maxNumberOfMessages = request.getMaxNumberOfMessages() == null ? 1 : request.getMaxNumberOfMessages();
+        if (maxNumberOfMessages < 1 || maxNumberOfMessages > MAX_NUMBER_OF_MESSAGES) {
+            throw serviceException("InvalidParameterValue", "MaxNumberOfMessages must be between 1 and 10", AmazonServiceException.ErrorType.Client);
+        }
+        receiveCount.incrementAndGet();
+
+        long waitTimeMillis = TimeUnit.SECONDS.toMillis(request.getWaitTimeSeconds() == null ? 0 : request.getWaitTimeSeconds());
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(waitTimeMillis);
+        synchronized (this) {
+            List<Message> received = receiveVisible(maxNumberOfMessages, request.getVisibilityTimeout());
+            long remainingNanos;
+            while (received.isEmpty() && (remainingNanos = deadline - System.nanoTime()) > 0) {
+                // a short wait also picks up messages whose visibility timeout has expired
+                waitForMessages(Math.min(TimeUnit.NANOSECONDS.toMillis(remainingNanos) + 1, 100));
+                received = receiveVisible(maxNumberOfMessages, request.getVisibilityTimeout());
+            }
+            return new ReceiveMessageResult().withMessages(received);
+        }
+    }
+
+    @Override
+    public DeleteMessageBatchResult deleteMessageBatch(final DeleteMessageBatchRequest request) {
+        call();
+        DeleteMessageBatchResult result = new DeleteMessageBatchResult();
+        synchronized (this) {
+            for (DeleteMessageBatchRequestEntry entry : request.getEntries()) {
+                if (injectEntryFailure()) {
+                    result.withFailed(internalError(entry.getId()));
+                    continue;
+                }
+                QueuedMessage queued = messagesByReceiptHandle.remove(entry.getReceiptHandle());
+                if (queued != null) {
+                    messages.remove(queued.message.getMessageId());
+                    deleteLatencies.add(Duration.between(queued.sentAt, Instant.now(clock)));
+                } else {
+                    // like SQS, deleting with an outdated receipt handle succeeds but may leave the message in the queue
+                    staleDeleteCount.incrementAndGet();
+                }
+                result.withSuccessful(new DeleteMessageBatchResultEntry().withId(entry.getId()));
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public ChangeMessageVisibilityBatchResult changeMessageVisibilityBatch(final ChangeMessageVisibilityBatchRequest request) {
+        call();
+        ChangeMessageVisibilityBatchResult result = new ChangeMessageVisibilityBatchResult();
+        synchronized (this) {
+            Instant now = Instant.now(clock);
+            for (ChangeMessageVisibilityBatchRequestEntry entry : request.getEntries()) {
+                if (injectEntryFailure()) {
+                    result.withFailed(internalError(entry.getId()));
+                    continue;
+                }
+                QueuedMessage queued = messagesByReceiptHandle.get(entry.getReceiptHandle());
+                if (queued == null || !queued.visibleAt.isAfter(now)) {
+                    result.withFailed(new BatchResultErrorEntry()
+                            .withId(entry.getId())
+                            .withCode("MessageNotInflight")
+                            .withMessage("Message is not in flight")
+                            .withSenderFault(true));
+                    continue;
+                }
+                queued.visibleAt = now.plusSeconds(entry.getVisibilityTimeout());
+                result.withSuccessful(new ChangeMessageVisibilityBatchResultEntry().withId(entry.getId()));
+            }
+            notifyAll();
+        }
+        return result;
+    }
+
+    @Override
+    public Future<ReceiveMessageResult> receiveMessageAsync(final ReceiveMessageRequest request,
+                                                            final AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult> asyncHandler) {
+        return submit(request, asyncHandler, this::receiveMessage);
+    }
+
+    @Override
+    public Future<DeleteMessageBatchResult> deleteMessageBatchAsync(final DeleteMessageBatchRequest request,
+                                                                    final AsyncHandler<DeleteMessageBatchRequest, DeleteMessageBatchResult> asyncHandler) {
+        return submit(request, asyncHandler, this::deleteMessageBatch);
+    }
+
+    @Override
+    public Future<ChangeMessageVisibilityBatchResult> changeMessageVisibilityBatchAsync(
+            final ChangeMessageVisibilityBatchRequest request,
+            final AsyncHandler<ChangeMessageVisibilityBatchRequest, ChangeMessageVisibilityBatchResult> asyncHandler) {
+        return submit(request, asyncHandler, this::changeMessageVisibilityBatch);
+    }
+
+    @Override
+    public void shutdown() {
+        asyncExecutor.shutdownNow();
+    }
+
+    /**
+     * @return Number of messages in the queue, visible or in flight.
+     */
+    synchronized int size() {
+        return messages.size();
+    }
+
+    /**
+     * @return Number of messages currently in flight.
+     */
+    synchronized int getInFlightCount() {
+        Instant now = Instant.now(clock);
+        return (int) messages.values().stream().filter(queued -> queued.visibleAt.isAfter(now)).count();
+    }
+
+    int getReceiveCount() {
+        return receiveCount.get();
+    }
+
+    int getThrottleCount() {
+        return throttleCount.get();
+    }
+
+    /**
+     * @return Number of deletes that used an outdated receipt handle, and so did not delete the message.
+     */
+    int getStaleDeleteCount() {
+        return staleDeleteCount.get();
+    }
+
+    /**
+     * @return Time from sending to deleting each deleted message, in the order they were deleted.
+     */
+    synchronized List<Duration> getDeleteLatencies() {
+        return new ArrayList<>(deleteLatencies);
+    }
+
+    private List<Message> receiveVisible(final int maxNumberOfMessages, final Integer visibilityTimeout) {
+        Instant now = Instant.now(clock);
+        int timeoutSeconds = visibilityTimeout == null ? visibilityTimeoutSeconds : visibilityTimeout;
+        List<Message> received = new ArrayList<>();
+        for (QueuedMessage queued : messages.values()) {
+            if (received.size() >= maxNumberOfMessages) {
+                break;
+            }
+            if (queued.visibleAt.isAfter(now)) {
+                continue;
+            }
+            queued.visibleAt = now.plusSeconds(timeoutSeconds);
+            if (queued.receiptHandle != null) {
+                messagesByReceiptHandle.remove(queued.receiptHandle);
+            }
+            queued.receiptHandle = UUID.randomUUID().toString();
+            messagesByReceiptHandle.put(queued.receiptHandle, queued);
+            queued.receiveCount++;
+            received.add(queued.message.clone()
+                    .withReceiptHandle(queued.receiptHandle)
+                    .withAttributes(new LinkedHashMap<>(queued.message.getAttributes()))
+                    .addAttributesEntry("ApproximateReceiveCount", String.valueOf(queued.receiveCount)));
+        }
+        return received;
+    }
+
+    private void call() {
+        latency.sleep(ThreadLocalRandom.current());
+        if (ThreadLocalRandom.current().nextDouble() < throttleRate) {
+            throttleCount.incrementAndGet();
+            throw serviceException("ThrottlingException", "Rate exceeded", AmazonServiceException.ErrorType.Client);
+        }
+    }
+
+    private boolean injectEntryFailure() {
+        return ThreadLocalRandom.current().nextDouble() < batchEntryFailureRate;
+    }
+
+    private static BatchResultErrorEntry internalError(final String id) {
+        return new BatchResultErrorEntry()
+                .withId(id)
+                .withCode("InternalError")
+                .withMessage("Injected failure")
+                .withSenderFault(false);
+    }
+
+    private static AmazonSQSException serviceException(final String errorCode, final String message,
+                                                       final AmazonServiceException.ErrorType errorType) {
+        AmazonSQSException e = new AmazonSQSException(message);
+        e.setErrorCode(errorCode);
+        e.setErrorType(errorType);
+        e.setStatusCode(400);
+        e.setServiceName("AmazonSQS");
+        return e;
+    }
+
+    private void waitForMessages(final long millis) {
+        try {
+            wait(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while long polling", e);
+        }
+    }
+
+    private <Q extends AmazonWebServiceRequest, R> Future<R> submit(final Q request, final AsyncHandler<Q, R> asyncHandler,
+                                                                     final Function<Q, R> operation) {
+        return asyncExecutor.submit(() -> {
+            R result;
+            try {
+                result = operation.apply(request);
+            } catch (Exception e) {
+                if (asyncHandler != null) {
+                    asyncHandler.onError(e);
+                }
+                throw e;
+            }
+            if (asyncHandler != null) {
+                asyncHandler.onSuccess(request, result);
+            }
+            return result;
+        });
+    }
+
+    /**
+     * A message and its delivery state.
+     */
+    private static final class QueuedMessage {
+        private final Message message;
+        private final Instant sentAt;
+        private Instant visibleAt;
+        private String receiptHandle;
+        private int receiveCount;
+
+        QueuedMessage(final Message message, final Instant sentAt) {
+            this.message = message;
+            this.sentAt = sentAt;
+            this.visibleAt = sentAt;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+
+import com.amazonaws.services.sqs.model.AmazonSQSException;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequestEntry;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class FakeAmazonSQSTest {
+    private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/123456789012/fake";
+    private static final Instant NOW = Instant.parse("2018-06-01T00:00:00Z");
+
+    private Clock clock;
+    private FakeAmazonSQS sqs;
+
+    @Before
+    public void setup() throws Exception {
+        clock = mock(Clock.class);
+        when(clock.instant()).thenReturn(NOW);
+        when(clock.millis()).thenReturn(NOW.toEpochMilli());
+        sqs = new FakeAmazonSQS(clock).withVisibilityTimeoutSeconds(30);
+    }
+
+    @Test
+    public void receiveMessage_hidesMessagesUntilVisibilityTimeoutExpires() throws Exception {
+        sqs.sendMessage(QUEUE_URL, "body");
+
+        List<Message> first = receive(10);
+        assertThat(first.size(), is(1));
+        assertThat(first.get(0).getAttributes().get("ApproximateReceiveCount"), is("1"));
+        assertThat(receive(10).isEmpty(), is(true));
+        assertThat(sqs.getInFlightCount(), is(1));
+
+        when(clock.instant()).thenReturn(NOW.plusSeconds(30));
+        List<Message> second = receive(10);
+        assertThat(second.size(), is(1));
+        assertThat(second.get(0).getMessageId(), is(first.get(0).getMessageId()));
+        assertThat(second.get(0).getReceiptHandle(), is(not(first.get(0).getReceiptHandle())));
+        assertThat(second.get(0).getAttributes().get("ApproximateReceiveCount"), is("2"));
+    }
+
+    @Test
+    public void receiveMessage_returnsAtMostMaxNumberOfMessages() throws Exception {
+        for (int i = 0; i < 15; i++) {
+            sqs.sendMessage(QUEUE_URL, "body" + i);
+        }
+
+        assertThat(receive(10).size(), is(10));
+        assertThat(receive(10).size(), is(5));
+    }
+
+    @Test(expected = AmazonSQSException.class)
+    public void receiveMessage_overReceiveLimit() throws Exception {
+        receive(11);
+    }
+
+    @Test
+    public void deleteMessageBatch_onlyLatestReceiptHandleDeletes() throws Exception {
+        sqs.sendMessage(QUEUE_URL, "body");
+        Message first = receive(1).get(0);
+        when(clock.instant()).thenReturn(NOW.plusSeconds(30));
+        Message second = receive(1).get(0);
+
+        sqs.deleteMessageBatch(new DeleteMessageBatchRequest(QUEUE_URL)
+                .withEntries(new DeleteMessageBatchRequestEntry("0", first.getReceiptHandle())));
+        assertThat(sqs.size(), is(1));
+        assertThat(sqs.getStaleDeleteCount(), is(1));
+
+        sqs.deleteMessageBatch(new DeleteMessageBatchRequest(QUEUE_URL)
+                .withEntries(new DeleteMessageBatchRequestEntry("0", second.getReceiptHandle())));
+        assertThat(sqs.size(), is(0));
+        assertThat(sqs.getDeleteLatencies().size(), is(1));
+    }
+
+    @Test
+    public void changeMessageVisibilityBatch() throws Exception {
+        sqs.sendMessage(QUEUE_URL, "body");
+        Message message = receive(1).get(0);
+
+        sqs.changeMessageVisibilityBatch(new ChangeMessageVisibilityBatchRequest(QUEUE_URL, Collections.singletonList(
+                new ChangeMessageVisibilityBatchRequestEntry("0", message.getReceiptHandle()).withVisibilityTimeout(5))));
+        when(clock.instant()).thenReturn(NOW.plusSeconds(5));
+
+        assertThat(receive(1).size(), is(1));
+    }
+
+    @Test
+    public void changeMessageVisibilityBatch_notInFlight() throws Exception {
+        sqs.sendMessage(QUEUE_URL, "body");
+        Message message = receive(1).get(0);
+        when(clock.instant()).thenReturn(NOW.plusSeconds(30));
+
+        List<BatchResultErrorEntry> failed = sqs.changeMessageVisibilityBatch(
+                new ChangeMessageVisibilityBatchRequest(QUEUE_URL, Collections.singletonList(
+                        new ChangeMessageVisibilityBatchRequestEntry("0", message.getReceiptHandle()).withVisibilityTimeout(5))))
+                .getFailed();
+
+        assertThat(failed.size(), is(1));
+        assertThat(failed.get(0).getSenderFault(), is(true));
+    }
+
+    private List<Message> receive(final int maxNumberOfMessages) {
+        return sqs.receiveMessage(new ReceiveMessageRequest(QUEUE_URL).withMaxNumberOfMessages(maxNumberOfMessages)).getMessages();
+    }
+}
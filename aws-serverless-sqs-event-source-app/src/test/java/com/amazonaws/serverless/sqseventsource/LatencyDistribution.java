@@ -0,0 +1,62 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.util.Random;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Simulated service call latency for the in-memory fakes.
+ */
+@FunctionalInterface
+interface LatencyDistribution {
+    /**
+     * @param random Source of randomness, shared by the calling fake.
+     * @return Latency of one call in milliseconds.
+     */
+    long sampleMillis(Random random);
+
+    /**
+     * Blocks the calling thread for one sampled latency.
+     */
+    default void sleep(final Random random) {
+        long millis = sampleMillis(random);
+        if (millis <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while simulating latency", e);
+        }
+    }
+
+    static LatencyDistribution none() {
+        return random -> 0;
+    }
+
+    static LatencyDistribution fixed(final long millis) {
+        Preconditions.checkArgument(millis >= 0, "millis must not be negative");
+        return random -> millis;
+    }
+
+    static LatencyDistribution uniform(final long minMillis, final long maxMillis) {
+        Preconditions.checkArgument(0 <= minMillis && minMillis <= maxMillis, "need 0 <= minMillis <= maxMillis");
+        return random -> minMillis + (long) (random.nextDouble() * (maxMillis - minMillis));
+    }
+
+    /**
+     * Right-skewed latencies, the usual shape of service call latencies: most calls take about the median, a few take much
+     * longer.
+     *
+     * @param medianMillis Median latency.
+     * @param p99Millis    99th percentile latency, at least the median.
+     */
+    static LatencyDistribution logNormal(final long medianMillis, final long p99Millis) {
+        Preconditions.checkArgument(0 < medianMillis && medianMillis <= p99Millis, "need 0 < medianMillis <= p99Millis");
+        // z-score of the 99th percentile of the standard normal distribution
+        double sigma = Math.log((double) p99Millis / medianMillis) / 2.326;
+        double mu = Math.log(medianMillis);
+        return random -> Math.round(Math.exp(mu + sigma * random.nextGaussian()));
+    }
+}
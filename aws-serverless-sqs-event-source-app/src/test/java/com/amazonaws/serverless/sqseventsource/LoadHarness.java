@@ -0,0 +1,227 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageDeserializers;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessor;
+
+import com.google.common.base.Strings;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Drives {@link SQSPoller#poll(int)} against {@link FakeAmazonSQS} and {@link FakeAWSLambda} until a preloaded queue is
+ * drained, then reports throughput, call counts and latency percentiles. Lets throughput features be compared offline. Run
+ * with <code>mvn exec:java</code> against the test classpath, e.g.
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.amazonaws.serverless.sqseventsource.LoadHarness</code>.
+ */
+@Slf4j
+public final class LoadHarness {
+    private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/123456789012/load-harness";
+    private static final String FUNCTION_NAME = "load-harness-processor";
+
+    private final FakeAmazonSQS sqs;
+    private final FakeAWSLambda lambda;
+
+    private int messageCount = 10_000;
+    private int bodySize = 1024;
+    private int maxInFlightInvocations = 1;
+    private int targetBatchSize = 10;
+    private boolean pipelined = false;
+    private int pollDurationMillis = 60_000;
+    private Duration maxRunTime = Duration.ofMinutes(10);
+
+    LoadHarness(final FakeAmazonSQS sqs, final FakeAWSLambda lambda) {
+        this.sqs = sqs;
+        this.lambda = lambda;
+    }
+
+    /**
+     * @return A harness whose processor accepts every message, with typical latencies for both services.
+     */
+    static LoadHarness withDefaults() {
+        return new LoadHarness(
+                new FakeAmazonSQS()
+                        .withLatency(LatencyDistribution.logNormal(5, 40))
+                        .withVisibilityTimeoutSeconds(5),
+                new FakeAWSLambda(new SQSMessageProcessor<>(SQSMessageDeserializers.string(), body -> {
+                }))
+                        .withLatency(LatencyDistribution.logNormal(40, 250)));
+    }
+
+    LoadHarness withMessageCount(final int messageCount) {
+        this.messageCount = messageCount;
+        return this;
+    }
+
+    LoadHarness withBodySize(final int bodySize) {
+        this.bodySize = bodySize;
+        return this;
+    }
+
+    LoadHarness withMaxInFlightInvocations(final int maxInFlightInvocations) {
+        this.maxInFlightInvocations = maxInFlightInvocations;
+        return this;
+    }
+
+    LoadHarness withTargetBatchSize(final int targetBatchSize) {
+        this.targetBatchSize = targetBatchSize;
+        return this;
+    }
+
+    LoadHarness withPipelined(final boolean pipelined) {
+        this.pipelined = pipelined;
+        return this;
+    }
+
+    /**
+     * @param pollDurationMillis Remaining time each poll is given, like the lambda context's remaining time.
+     */
+    LoadHarness withPollDurationMillis(final int pollDurationMillis) {
+        this.pollDurationMillis = pollDurationMillis;
+        return this;
+    }
+
+    /**
+     * @param maxRunTime Time after which the run stops, even if the queue is not drained.
+     */
+    LoadHarness withMaxRunTime(final Duration maxRunTime) {
+        this.maxRunTime = maxRunTime;
+        return this;
+    }
+
+    Report run() throws InterruptedException {
+        String body = Strings.repeat("x", bodySize);
+        for (int i = 0; i < messageCount; i++) {
+            sqs.sendMessage(QUEUE_URL, body);
+        }
+
+        ExecutorService dispatchThreads = Executors.newFixedThreadPool(maxInFlightInvocations, new ThreadFactoryBuilder()
+                .setNameFormat("load-harness-dispatch-%d")
+                .setDaemon(true)
+                .build());
+        SQSProxy sqsProxy = new SQSProxy(sqs, QUEUE_URL);
+        MessageProcessorProxy messageProcessorProxy = new MessageProcessorProxy(FUNCTION_NAME, lambda);
+        BoundedExecutor dispatchExecutor = maxInFlightInvocations > 1 ? new BoundedExecutor(dispatchThreads, maxInFlightInvocations) : null;
+        MessageDispatcher dispatcher = MessageDispatcher.builder()
+                .sqsProxy(sqsProxy)
+                .messageProcessorProxy(messageProcessorProxy)
+                .dispatchExecutor(dispatchExecutor)
+                .payloadBatcher(new PayloadBatcher())
+                .build();
+        SQSPoller poller = new SQSPoller(sqsProxy, dispatcher, pipelined, Duration.ZERO,
+                new BatchAccumulator(sqsProxy, targetBatchSize, Duration.ofMillis(500)));
+
+        int polls = 0;
+        int failedPolls = 0;
+        long start = System.nanoTime();
+        long deadline = start + maxRunTime.toNanos();
+        try {
+            while (sqs.size() > 0 && System.nanoTime() < deadline) {
+                polls++;
+                try {
+                    poller.poll(pollDurationMillis);
+                } catch (RuntimeException e) {
+                    failedPolls++;
+                    log.warn("Poll failed", e);
+                }
+                if (sqs.size() > 0 && sqs.getInFlightCount() == sqs.size()) {
+                    // only unacked messages are left, wait for their visibility timeouts to expire
+                    TimeUnit.MILLISECONDS.sleep(100);
+                }
+            }
+        } finally {
+            dispatchThreads.shutdownNow();
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        List<Duration> invokeLatencies = lambda.getInvokeLatencies();
+        List<Duration> endToEndLatencies = sqs.getDeleteLatencies();
+        return new Report(
+                messageCount - sqs.size(),
+                elapsed,
+                polls,
+                failedPolls,
+                sqs.getReceiveCount(),
+                sqs.getThrottleCount(),
+                lambda.getInvokeCount(),
+                lambda.getThrottleCount(),
+                lambda.getErrorCount(),
+                percentile(invokeLatencies, 0.5),
+                percentile(invokeLatencies, 0.9),
+                percentile(invokeLatencies, 0.99),
+                percentile(endToEndLatencies, 0.5),
+                percentile(endToEndLatencies, 0.9),
+                percentile(endToEndLatencies, 0.99));
+    }
+
+    /**
+     * Nearest-rank percentile.
+     */
+    static Duration percentile(final List<Duration> durations, final double percentile) {
+        if (durations.isEmpty()) {
+            return Duration.ZERO;
+        }
+        List<Duration> sorted = durations.stream().sorted().collect(Collectors.toList());
+        int rank = (int) Math.ceil(percentile * sorted.size());
+        return sorted.get(Math.max(rank, 1) - 1);
+    }
+
+    public static void main(final String[] args) throws InterruptedException {
+        for (int maxInFlightInvocations : new int[] {1, 4}) {
+            for (int targetBatchSize : new int[] {10, 50}) {
+                Report report = withDefaults()
+                        .withMessageCount(5_000)
+                        .withMaxInFlightInvocations(maxInFlightInvocations)
+                        .withTargetBatchSize(targetBatchSize)
+                        .withPipelined(true)
+                        .run();
+                System.out.printf("maxInFlightInvocations=%d targetBatchSize=%d%n%s%n", maxInFlightInvocations, targetBatchSize,
+                        report.format());
+            }
+        }
+    }
+
+    /**
+     * Outcome of a run.
+     */
+    @Value
+    static class Report {
+        private final int messagesProcessed;
+        private final Duration elapsed;
+        private final int polls;
+        private final int failedPolls;
+        private final int receives;
+        private final int receiveThrottles;
+        private final int invocations;
+        private final int invokeThrottles;
+        private final int invokeErrors;
+        private final Duration invokeP50;
+        private final Duration invokeP90;
+        private final Duration invokeP99;
+        private final Duration endToEndP50;
+        private final Duration endToEndP90;
+        private final Duration endToEndP99;
+
+        double getMessagesPerSecond() {
+            return elapsed.isZero() ? 0 : messagesProcessed * 1000.0 / elapsed.toMillis();
+        }
+
+        String format() {
+            return String.format("  %,d messages in %,dms: %,.0f messages/s%n", messagesProcessed, elapsed.toMillis(), getMessagesPerSecond())
+                    + String.format("  polls: %d (%d failed), receives: %,d (%d throttled)%n", polls, failedPolls, receives, receiveThrottles)
+                    + String.format("  invocations: %,d (%d throttled, %d errors), %.1f messages per invocation%n", invocations,
+                    invokeThrottles, invokeErrors, invocations == 0 ? 0 : (double) messagesProcessed / invocations)
+                    + String.format("  invoke latency p50/p90/p99: %d/%d/%dms%n", invokeP50.toMillis(), invokeP90.toMillis(), invokeP99.toMillis())
+                    + String.format("  send-to-delete latency p50/p90/p99: %d/%d/%dms", endToEndP50.toMillis(), endToEndP90.toMillis(),
+                    endToEndP99.toMillis());
+        }
+    }
+}
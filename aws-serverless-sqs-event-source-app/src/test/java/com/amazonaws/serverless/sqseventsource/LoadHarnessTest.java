@@ -0,0 +1,51 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.time.Duration;
+
+import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageDeserializers;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessor;
+
+import org.junit.Test;
+
+public class LoadHarnessTest {
+    @Test(timeout = 60000)
+    public void run_drainsQueue() throws Exception {
+        LoadHarness.Report report = harness(new FakeAmazonSQS(), new FakeAWSLambda(processor()))
+                .withMaxInFlightInvocations(4)
+                .run();
+
+        assertThat(report.getMessagesProcessed(), is(500));
+        assertThat(report.getInvokeErrors(), is(0));
+        assertThat(report.getInvocations() > 0, is(true));
+    }
+
+    @Test(timeout = 60000)
+    public void run_recoversFromInjectedFailures() throws Exception {
+        FakeAmazonSQS sqs = new FakeAmazonSQS()
+                .withVisibilityTimeoutSeconds(1)
+                .withBatchEntryFailureRate(0.2);
+        FakeAWSLambda lambda = new FakeAWSLambda(processor())
+                .withErrorRate(0.2);
+
+        LoadHarness.Report report = harness(sqs, lambda).run();
+
+        assertThat(report.getMessagesProcessed(), is(500));
+        assertThat(report.getInvokeErrors() > 0, is(true));
+    }
+
+    private static LoadHarness harness(final FakeAmazonSQS sqs, final FakeAWSLambda lambda) {
+        return new LoadHarness(sqs, lambda)
+                .withMessageCount(500)
+                .withBodySize(100)
+                .withPollDurationMillis(10000)
+                .withMaxRunTime(Duration.ofSeconds(50));
+    }
+
+    private static SQSMessageProcessor<String> processor() {
+        return new SQSMessageProcessor<>(SQSMessageDeserializers.string(), body -> {
+        });
+    }
+}
@@ -4,8 +4,11 @@ import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -13,18 +16,31 @@ import static org.mockito.Mockito.when;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneOffset;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.stream.Collectors;
+
+import com.amazonaws.serverless.sqseventsource.messageprocessor.MessageGroups;
 import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessorRequest;
 import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessorResponse;
 import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageResult;
+import com.amazonaws.services.lambda.model.InvokeResult;
 import com.amazonaws.services.sqs.model.Message;
 
 import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.MoreExecutors;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -41,7 +57,9 @@ public class MessageDispatcherTest {
     @Before
     public void setup() throws Exception {
         MockitoAnnotations.initMocks(this);
-        dispatcher = new MessageDispatcher(sqsProxy, messageProcessorProxy, Clock.fixed(NOW, ZoneOffset.UTC));
+        when(sqsProxy.deleteMessagesAsync(any())).thenReturn(CompletableFuture.completedFuture(SQSBatchResult.EMPTY));
+        when(sqsProxy.retryMessagesAsync(any())).thenReturn(CompletableFuture.completedFuture(SQSBatchResult.EMPTY));
+        dispatcher = builder(Clock.fixed(NOW, ZoneOffset.UTC)).build();
     }
 
     @Test
@@ -55,7 +73,7 @@ public class MessageDispatcherTest {
         dispatcher.dispatch(messages);
 
         verify(messageProcessorProxy).invoke(new SQSMessageProcessorRequest(messages));
-        verify(sqsProxy).deleteMessages(messages);
+        verify(sqsProxy).deleteMessagesAsync(messages);
         verifyNoMoreInteractions(messageProcessorProxy, sqsProxy);
     }
 
@@ -76,7 +94,7 @@ public class MessageDispatcherTest {
                 new RetryMessageRequest(m1, MessageDispatcher.DEFAULT_RETRY_DELAY_IN_SECONDS),
                 new RetryMessageRequest(m2, MessageDispatcher.DEFAULT_RETRY_DELAY_IN_SECONDS)
         );
-        verify(sqsProxy).retryMessages(expected);
+        verify(sqsProxy).retryMessagesAsync(expected);
         verifyNoMoreInteractions(messageProcessorProxy, sqsProxy);
     }
 
@@ -97,10 +115,35 @@ public class MessageDispatcherTest {
                 new RetryMessageRequest(m1, 13),
                 new RetryMessageRequest(m2, 29)
         );
-        verify(sqsProxy).retryMessages(expected);
+        verify(sqsProxy).retryMessagesAsync(expected);
         verifyNoMoreInteractions(messageProcessorProxy, sqsProxy);
     }
 
+    @Test
+    public void dispatch_retryResults_backoff() throws Exception {
+        Random random = mock(Random.class);
+        when(random.nextInt(anyInt())).thenReturn(0);
+        dispatcher = builder(Clock.fixed(NOW, ZoneOffset.UTC))
+                .retryBackoff(new RetryBackoff(10, 900, random))
+                .build();
+        Message m1 = new Message().withMessageId("1").addAttributesEntry(RetryBackoff.RECEIVE_COUNT_ATTRIBUTE, "4");
+        Message m2 = new Message().withMessageId("2").addAttributesEntry(RetryBackoff.RECEIVE_COUNT_ATTRIBUTE, "4");
+        List<Message> messages = Lists.newArrayList(m1, m2);
+        mockProcessorResults(
+                messageResult("1", SQSMessageResult.Status.RETRY),
+                retryResult("2", 29)
+        );
+
+        dispatcher.dispatch(messages);
+
+        // a delay set by the processor takes precedence over the backoff
+        List<RetryMessageRequest> expected = Lists.newArrayList(
+                new RetryMessageRequest(m1, 80),
+                new RetryMessageRequest(m2, 29)
+        );
+        verify(sqsProxy).retryMessagesAsync(expected);
+    }
+
     @Test
     public void dispatch_errorResults() throws Exception {
         Message m1 = mockMessage("1");
@@ -132,8 +175,8 @@ public class MessageDispatcherTest {
         dispatcher.dispatch(messages);
 
         verify(messageProcessorProxy).invoke(new SQSMessageProcessorRequest(messages));
-        verify(sqsProxy).deleteMessages(Lists.newArrayList(success));
-        verify(sqsProxy).retryMessages(Lists.newArrayList(new RetryMessageRequest(retry, MessageDispatcher.DEFAULT_RETRY_DELAY_IN_SECONDS)));
+        verify(sqsProxy).deleteMessagesAsync(Lists.newArrayList(success));
+        verify(sqsProxy).retryMessagesAsync(Lists.newArrayList(new RetryMessageRequest(retry, MessageDispatcher.DEFAULT_RETRY_DELAY_IN_SECONDS)));
         verifyNoMoreInteractions(messageProcessorProxy, sqsProxy);
     }
 
@@ -148,6 +191,48 @@ public class MessageDispatcherTest {
         verifyNoMoreInteractions(messageProcessorProxy, sqsProxy);
     }
 
+    @Test
+    public void dispatch_bisectOnFailure_isolatesPoisonMessage() throws Exception {
+        dispatcher = builder(Clock.fixed(NOW, ZoneOffset.UTC))
+                .bisectOnFailure(true)
+                .build();
+        dispatcher.setCutoff(NOW.plusSeconds(60));
+        List<Message> messages = Lists.newArrayList(mockMessage("1"), mockMessage("2"), mockMessage("3"), mockMessage("4"));
+        mockPoisonMessage("3");
+
+        dispatcher.dispatch(messages);
+
+        verify(messageProcessorProxy).invoke(new SQSMessageProcessorRequest(messages));
+        verify(messageProcessorProxy).invoke(new SQSMessageProcessorRequest(messages.subList(0, 2)));
+        verify(messageProcessorProxy).invoke(new SQSMessageProcessorRequest(messages.subList(2, 4)));
+        verify(messageProcessorProxy).invoke(new SQSMessageProcessorRequest(messages.subList(2, 3)));
+        verify(messageProcessorProxy).invoke(new SQSMessageProcessorRequest(messages.subList(3, 4)));
+        verify(sqsProxy).deleteMessagesAsync(messages.subList(0, 2));
+        verify(sqsProxy).deleteMessagesAsync(messages.subList(3, 4));
+        verifyNoMoreInteractions(messageProcessorProxy, sqsProxy);
+    }
+
+    @Test
+    public void dispatch_bisectOnFailure_stopsAtCutoff() throws Exception {
+        Clock clock = mock(Clock.class);
+        // the failed invocation takes 10s, and only 5s are left once it has returned
+        when(clock.instant())
+                .thenReturn(NOW)
+                .thenReturn(NOW.plusSeconds(10))
+                .thenReturn(NOW.plusSeconds(10));
+        dispatcher = builder(clock)
+                .bisectOnFailure(true)
+                .build();
+        dispatcher.setCutoff(NOW.plusSeconds(15));
+        List<Message> messages = Lists.newArrayList(mockMessage("1"), mockMessage("2"));
+        mockPoisonMessage("2");
+
+        dispatcher.dispatch(messages);
+
+        verify(messageProcessorProxy).invoke(new SQSMessageProcessorRequest(messages));
+        verifyNoMoreInteractions(messageProcessorProxy, sqsProxy);
+    }
+
     @Test
     public void reset() throws Exception {
         dispatcher = new MessageDispatcher(sqsProxy, messageProcessorProxy);
@@ -159,6 +244,19 @@ public class MessageDispatcherTest {
         assertThat(dispatcher.getEstimatedCapacity(NOW), is(Integer.MAX_VALUE));
     }
 
+    @Test
+    public void getTimeoutBufferInMillis_adaptsOnReset() throws Exception {
+        assertThat(dispatcher.getTimeoutBufferInMillis(), is(MessageDispatcher.MAX_TIMEOUT_BUFFER_IN_MILLIS));
+        mockProcessorResults(messageResult("1", SQSMessageResult.Status.SUCCESS));
+
+        dispatcher.dispatch(Lists.newArrayList(mockMessage("1")));
+        assertThat(dispatcher.getTimeoutBufferInMillis(), is(MessageDispatcher.MAX_TIMEOUT_BUFFER_IN_MILLIS));
+
+        // no latency outliers were observed, so only the minimum buffer is kept
+        dispatcher.reset();
+        assertThat(dispatcher.getTimeoutBufferInMillis(), is(MessageDispatcher.MIN_TIMEOUT_BUFFER_IN_MILLIS));
+    }
+
     @Test
     public void getEstimatedCapacity_messagesProcessed() throws Exception {
         dispatcher = new MessageDispatcher(sqsProxy, messageProcessorProxy);
@@ -173,12 +271,286 @@ public class MessageDispatcherTest {
         assertThat(dispatcher.getEstimatedCapacity(NOW), is(Integer.MAX_VALUE));
     }
 
+    @Test
+    public void dispatch_splitsOversizedBatches() throws Exception {
+        dispatcher = builder(Clock.fixed(NOW, ZoneOffset.UTC))
+                .payloadBatcher(new PayloadBatcher(1))
+                .build();
+        Message message1 = new Message().withMessageId("1").withBody("body1");
+        Message message2 = new Message().withMessageId("2").withBody("body2");
+        mockProcessorResults(messageResult("1", SQSMessageResult.Status.SUCCESS), messageResult("2", SQSMessageResult.Status.SUCCESS));
+
+        dispatcher.dispatch(Lists.newArrayList(message1, message2));
+
+        verify(messageProcessorProxy).invoke(new SQSMessageProcessorRequest(Lists.newArrayList(message1)));
+        verify(messageProcessorProxy).invoke(new SQSMessageProcessorRequest(Lists.newArrayList(message2)));
+        verify(sqsProxy).deleteMessagesAsync(Lists.newArrayList(message1));
+        verify(sqsProxy).deleteMessagesAsync(Lists.newArrayList(message2));
+        verifyNoMoreInteractions(messageProcessorProxy, sqsProxy);
+    }
+
+    @Test
+    public void dispatch_fifo_groupStopsAtFirstFailure() throws Exception {
+        Message m1 = groupMessage("1", "a");
+        Message m2 = groupMessage("2", "a");
+        Message m3 = groupMessage("3", "b");
+        // the processor reports success for a message after its group's failure, it must not be deleted ahead of it
+        mockProcessorResults(retryResult("1", 30), messageResult("2", SQSMessageResult.Status.SUCCESS), messageResult("3", SQSMessageResult.Status.SUCCESS));
+
+        dispatcher.dispatch(Lists.newArrayList(m1, m2, m3));
+
+        verify(messageProcessorProxy).invoke(new SQSMessageProcessorRequest(Lists.newArrayList(m1, m2, m3)));
+        verify(sqsProxy).deleteMessagesAsync(Lists.newArrayList(m3));
+        verify(sqsProxy).retryMessagesAsync(Lists.newArrayList(new RetryMessageRequest(m1, 30), new RetryMessageRequest(m2, 30)));
+    }
+
+    @Test
+    public void dispatch_fifo_failedGroupSkippedInLaterInvocations() throws Exception {
+        dispatcher = builder(Clock.fixed(NOW, ZoneOffset.UTC))
+                .payloadBatcher(new PayloadBatcher(1))
+                .build();
+        Message m1 = groupMessage("1", "a");
+        Message m2 = groupMessage("2", "b");
+        Message m3 = groupMessage("3", "a");
+        mockProcessorResults(messageResult("1", SQSMessageResult.Status.ERROR), messageResult("2", SQSMessageResult.Status.SUCCESS));
+
+        dispatcher.dispatch(Lists.newArrayList(m1, m2, m3));
+
+        verify(messageProcessorProxy).invoke(new SQSMessageProcessorRequest(Lists.newArrayList(m1)));
+        verify(messageProcessorProxy).invoke(new SQSMessageProcessorRequest(Lists.newArrayList(m2)));
+        verify(sqsProxy).deleteMessagesAsync(Lists.newArrayList(m2));
+        verifyNoMoreInteractions(messageProcessorProxy, sqsProxy);
+    }
+
+    @Test(timeout = 10000)
+    public void dispatch_fifo_groupsConcurrent() throws Exception {
+        dispatcher = builder(Clock.fixed(NOW, ZoneOffset.UTC))
+                .payloadBatcher(new PayloadBatcher(1))
+                .dispatchExecutor(new BoundedExecutor(Executors.newCachedThreadPool(), 4))
+                .build();
+        Message m1 = groupMessage("1", "a");
+        Message m2 = groupMessage("2", "b");
+        Message m3 = groupMessage("3", "a");
+        // the first invocations of both groups wait for each other, so this only finishes if groups are dispatched concurrently
+        CountDownLatch groupsStarted = new CountDownLatch(2);
+        List<String> invoked = Collections.synchronizedList(new ArrayList<>());
+        when(messageProcessorProxy.invoke(any())).thenAnswer(invocation -> {
+            String messageId = ((SQSMessageProcessorRequest) invocation.getArguments()[0]).getMessages().get(0).getMessageId();
+            invoked.add(messageId);
+            if (!messageId.equals("3")) {
+                groupsStarted.countDown();
+                groupsStarted.await();
+            }
+            return successResponse(invocation.getArguments()[0]);
+        });
+
+        dispatcher.dispatch(Lists.newArrayList(m1, m2, m3));
+        dispatcher.awaitInFlight();
+
+        // messages of one group still wait for each other
+        assertThat(invoked.indexOf("1") < invoked.indexOf("3"), is(true));
+        verify(sqsProxy).deleteMessagesAsync(Lists.newArrayList(m1));
+        verify(sqsProxy).deleteMessagesAsync(Lists.newArrayList(m2));
+        verify(sqsProxy).deleteMessagesAsync(Lists.newArrayList(m3));
+    }
+
+    @Test
+    public void dispatch_concurrent() throws Exception {
+        dispatcher = builder(Clock.fixed(NOW, ZoneOffset.UTC))
+                .dispatchExecutor(new BoundedExecutor(MoreExecutors.newDirectExecutorService(), 4))
+                .build();
+        List<Message> messages = Lists.newArrayList(mockMessage("1"));
+        mockProcessorResults(messageResult("1", SQSMessageResult.Status.SUCCESS));
+
+        dispatcher.dispatch(messages);
+        dispatcher.awaitInFlight();
+
+        verify(messageProcessorProxy).invoke(new SQSMessageProcessorRequest(messages));
+        verify(sqsProxy).deleteMessagesAsync(messages);
+        verifyNoMoreInteractions(messageProcessorProxy, sqsProxy);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void awaitInFlight_rethrowsDispatchFailure() throws Exception {
+        dispatcher = builder(Clock.fixed(NOW, ZoneOffset.UTC))
+                .dispatchExecutor(new BoundedExecutor(MoreExecutors.newDirectExecutorService(), 4))
+                .build();
+        List<Message> messages = Lists.newArrayList(mockMessage("1"));
+        mockProcessorResults(messageResult("1", SQSMessageResult.Status.SUCCESS));
+        CompletableFuture<SQSBatchResult> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException());
+        when(sqsProxy.deleteMessagesAsync(any())).thenReturn(failed);
+
+        dispatcher.dispatch(messages);
+        dispatcher.awaitInFlight();
+    }
+
+    @Test
+    public void getEstimatedCapacity_concurrent() throws Exception {
+        Clock clock = mock(Clock.class);
+        when(clock.instant())
+                .thenReturn(NOW)
+                .thenReturn(NOW.plusMillis(100))
+                .thenReturn(NOW);
+        dispatcher = builder(clock)
+                .dispatchExecutor(new BoundedExecutor(MoreExecutors.newDirectExecutorService(), 4))
+                .build();
+        mockProcessorResults(messageResult("1", SQSMessageResult.Status.SUCCESS));
+        dispatcher.dispatch(Lists.newArrayList(mockMessage("1")));
+
+        // 10 messages fit in one invocation slot, and there are 4 slots
+        assertThat(dispatcher.getEstimatedCapacity(NOW.plusSeconds(1)), is(40));
+    }
+
+    @Test
+    public void dispatch_otherQueue() throws Exception {
+        Message m1 = mockMessage("1");
+        Message m2 = mockMessage("2");
+        SQSProxy otherQueue = mock(SQSProxy.class);
+        PollMetrics otherMetrics = mock(PollMetrics.class);
+        when(otherQueue.deleteMessagesAsync(any()))
+                .thenReturn(CompletableFuture.completedFuture(new SQSBatchResult(Lists.newArrayList(m1), Collections.emptyList())));
+        when(otherQueue.retryMessagesAsync(any()))
+                .thenReturn(CompletableFuture.completedFuture(new SQSBatchResult(Lists.newArrayList(m2), Collections.emptyList())));
+        when(otherQueue.getMetrics()).thenReturn(otherMetrics);
+        mockProcessorResults(
+                messageResult("1", SQSMessageResult.Status.SUCCESS),
+                retryResult("2", 5)
+        );
+
+        dispatcher.dispatch(Lists.newArrayList(m1, m2), otherQueue);
+
+        // acked on the queue the messages came from
+        verify(otherQueue).deleteMessagesAsync(Lists.newArrayList(m1));
+        verify(otherQueue).retryMessagesAsync(Lists.newArrayList(new RetryMessageRequest(m2, 5)));
+        // and counted in that queue's metrics
+        verify(otherMetrics).addMessagesDeleted(1);
+        verify(otherMetrics).addMessagesRetried(1);
+        verifyNoMoreInteractions(sqsProxy);
+    }
+
+    @Test
+    public void dispatch_visibilityHeartbeat() throws Exception {
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        ScheduledFuture<?> future = mock(ScheduledFuture.class);
+        ArgumentCaptor<Runnable> beat = ArgumentCaptor.forClass(Runnable.class);
+        when(scheduler.scheduleAtFixedRate(beat.capture(), anyLong(), anyLong(), any())).thenAnswer(invocation -> future);
+        when(sqsProxy.retryMessages(any())).thenReturn(SQSBatchResult.EMPTY);
+        dispatcher = builder(Clock.fixed(NOW, ZoneOffset.UTC))
+                .visibilityHeartbeat(new VisibilityHeartbeat(sqsProxy, scheduler, 30))
+                .build();
+        Message m1 = mockMessage("1");
+        List<Message> messages = Lists.newArrayList(m1);
+        SQSMessageProcessorResponse response = new SQSMessageProcessorResponse(Lists.newArrayList(retryResult("1", 5)));
+        when(messageProcessorProxy.invoke(any())).thenAnswer(invocation -> {
+            // a slow invocation outlasts half the visibility timeout
+            beat.getValue().run();
+            return response;
+        });
+
+        dispatcher.dispatch(messages);
+        // the heartbeat is stopped before the retry delay is set and never overrides it
+        beat.getValue().run();
+
+        verify(sqsProxy).retryMessages(Lists.newArrayList(new RetryMessageRequest(m1, 30)));
+        verify(future).cancel(false);
+        verify(sqsProxy).retryMessagesAsync(Lists.newArrayList(new RetryMessageRequest(m1, 5)));
+        verifyNoMoreInteractions(sqsProxy);
+    }
+
+    @Test
+    public void dispatch_throttled() throws Exception {
+        List<Message> messages = Lists.newArrayList(mockMessage("1"), mockMessage("2"));
+        when(messageProcessorProxy.invoke(any())).thenThrow(new MessageProcessorThrottledException(new IllegalStateException()));
+
+        dispatcher.dispatch(messages);
+
+        // the batch is left to become visible again instead of failing the poll
+        verify(messageProcessorProxy).invoke(new SQSMessageProcessorRequest(messages));
+        verifyNoMoreInteractions(sqsProxy);
+    }
+
+    @Test
+    public void dispatch_throttled_congestionController() throws Exception {
+        Clock clock = Clock.fixed(NOW, ZoneOffset.UTC);
+        CongestionController congestionController = new CongestionController(1, 4, clock);
+        dispatcher = builder(clock)
+                .congestionController(congestionController)
+                .build();
+        dispatcher.setCutoff(NOW.plusSeconds(60));
+        List<Message> messages = Lists.newArrayList(mockMessage("1"), mockMessage("2"), mockMessage("3"), mockMessage("4"));
+        when(messageProcessorProxy.invoke(any()))
+                .thenThrow(new MessageProcessorThrottledException(new IllegalStateException()))
+                .thenAnswer(invocation -> successResponse(invocation.getArguments()[0]));
+
+        dispatcher.dispatch(messages);
+
+        // the throttled batch is sent again as it was
+        verify(messageProcessorProxy, times(2)).invoke(new SQSMessageProcessorRequest(messages));
+        verify(sqsProxy).deleteMessagesAsync(messages);
+        // halved by the throttle, grown by one by the successful retry
+        assertThat(congestionController.getBatchSizeLimit(), is(3));
+
+        dispatcher.dispatch(messages);
+
+        verify(messageProcessorProxy).invoke(new SQSMessageProcessorRequest(messages.subList(0, 3)));
+        verify(messageProcessorProxy).invoke(new SQSMessageProcessorRequest(messages.subList(3, 4)));
+    }
+
+    @Test
+    public void dispatch_throttled_congestionControllerWithoutTimeLeft() throws Exception {
+        Clock clock = Clock.fixed(NOW, ZoneOffset.UTC);
+        dispatcher = builder(clock)
+                .congestionController(new CongestionController(1, 10, clock))
+                .build();
+        dispatcher.setCutoff(NOW.plusMillis(MessageDispatcher.THROTTLE_BACKOFF_IN_MILLIS));
+        List<Message> messages = Lists.newArrayList(mockMessage("1"));
+        when(messageProcessorProxy.invoke(any())).thenThrow(new MessageProcessorThrottledException(new IllegalStateException()));
+
+        dispatcher.dispatch(messages);
+
+        verify(messageProcessorProxy).invoke(new SQSMessageProcessorRequest(messages));
+        verifyNoMoreInteractions(sqsProxy);
+    }
+
+    private MessageDispatcher.MessageDispatcherBuilder builder(Clock clock) {
+        return MessageDispatcher.builder()
+                .sqsProxy(sqsProxy)
+                .messageProcessorProxy(messageProcessorProxy)
+                .clock(clock);
+    }
+
+    private static SQSMessageProcessorResponse successResponse(Object request) {
+        return new SQSMessageProcessorResponse(((SQSMessageProcessorRequest) request).getMessages().stream()
+                .map(message -> new SQSMessageResult(message.getMessageId(), SQSMessageResult.Status.SUCCESS))
+                .collect(Collectors.toList()));
+    }
+
+    private void mockPoisonMessage(String messageId) throws Exception {
+        when(messageProcessorProxy.invoke(any())).thenAnswer(invocation -> {
+            List<Message> batch = ((SQSMessageProcessorRequest) invocation.getArguments()[0]).getMessages();
+            if (batch.stream().anyMatch(message -> message.getMessageId().equals(messageId))) {
+                throw new MessageProcessorException(new InvokeResult().withFunctionError("Unhandled"));
+            }
+            return new SQSMessageProcessorResponse(batch.stream()
+                    .map(message -> messageResult(message.getMessageId(), SQSMessageResult.Status.SUCCESS))
+                    .collect(Collectors.toList()));
+        });
+    }
+
     private Message mockMessage(String messageId) {
         Message message = mock(Message.class);
         when(message.getMessageId()).thenReturn(messageId);
         return message;
     }
 
+    private Message groupMessage(String messageId, String groupId) {
+        return new Message()
+                .withMessageId(messageId)
+                .withBody("body" + messageId)
+                .addAttributesEntry(MessageGroups.MESSAGE_GROUP_ID_ATTRIBUTE, groupId);
+    }
+
     private void mockProcessorResults(SQSMessageResult... results) throws Exception {
         when(messageProcessorProxy.invoke(any())).thenReturn(new SQSMessageProcessorResponse(Arrays.asList(results)));
     }
@@ -37,4 +37,96 @@ public class MessageProcessingStatsTest {
         assertThat(stats.getEstimatedCapacity(Duration.ofMillis(800)), is(10));
         assertThat(stats.getEstimatedCapacity(Duration.ofMillis(1000)), is(13));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void getExpectedDuration() throws Exception {
+        assertThat(stats.getExpectedDuration(10), is(Duration.ZERO));
+
+        stats.record(Duration.ofMillis(200), 100);
+        // nothing tells how much of a single batch size's time is overhead
+        assertThat(stats.getExpectedDuration(10), is(Duration.ofMillis(200)));
+        assertThat(stats.getExpectedDuration(200), is(Duration.ofMillis(400)));
+
+        stats.record(Duration.ofMillis(110), 10);
+        assertThat(stats.getExpectedDuration(10), is(Duration.ofMillis(110)));
+        assertThat(stats.getExpectedDuration(1), is(Duration.ofMillis(110)));
+        assertThat(stats.getExpectedDuration(50), is(Duration.ofMillis(150)));
+    }
+
+    @Test
+    public void window_evictsOldestBatches() throws Exception {
+        stats = new MessageProcessingStats(2);
+
+        stats.record(Duration.ofMillis(1000), 1);
+        stats.record(Duration.ofMillis(100), 1);
+        assertThat(stats.getEstimatedCapacity(Duration.ofMillis(1100)), is(2));
+
+        stats.record(Duration.ofMillis(100), 1);
+        assertThat(stats.getEstimatedCapacity(Duration.ofMillis(1100)), is(11));
+    }
+
+    @Test
+    public void record_weightsBatchesByMessageCount() throws Exception {
+        stats.record(Duration.ofMillis(100), 1);
+        stats.record(Duration.ofMillis(900), 9);
+
+        assertThat(stats.getEstimatedCapacity(Duration.ofMillis(1000)), is(10));
+    }
+
+    @Test
+    public void getEstimatedCapacity_separatesInvocationOverhead() throws Exception {
+        // 900ms per invocation plus 100ms per message
+        stats.record(Duration.ofMillis(1000), 1);
+        stats.record(Duration.ofMillis(1900), 10);
+
+        // an average cost of 264ms per message would only fit 110 messages
+        assertThat(stats.getEstimatedCapacity(Duration.ofMillis(29000)), is(150));
+        assertThat(stats.getEstimatedCapacity(Duration.ofMillis(3000)), is(12));
+        assertThat(stats.getEstimatedCapacity(Duration.ofMillis(900)), is(0));
+    }
+
+    @Test
+    public void getEstimatedCapacity_usesTailLatency() throws Exception {
+        for (int i = 0; i < 8; i++) {
+            stats.record(Duration.ofMillis(100), 1);
+        }
+        stats.record(Duration.ofMillis(300), 1);
+        stats.record(Duration.ofMillis(300), 1);
+
+        // the mean cost of 140ms per message would fit 10 messages, but the slowest batches take 300ms
+        assertThat(stats.getEstimatedCapacity(Duration.ofMillis(1500)), is(5));
+        assertThat(stats.getTailOverrun(), is(Duration.ZERO));
+    }
+
+    @Test
+    public void getEstimatedCapacity_ignoresTailWithFewSamples() throws Exception {
+        for (int i = 0; i < MessageProcessingStats.MIN_TAIL_SAMPLES - 2; i++) {
+            stats.record(Duration.ofMillis(100), 1);
+        }
+        stats.record(Duration.ofMillis(300), 1);
+
+        // the mean cost of 122ms per message, since the p90 of so few batches would be the slowest one
+        assertThat(stats.getEstimatedCapacity(Duration.ofMillis(1500)), is(12));
+        assertThat(stats.getTailOverrun(), is(Duration.ofMillis(177)));
+
+        stats.record(Duration.ofMillis(300), 1);
+        assertThat(stats.getEstimatedCapacity(Duration.ofMillis(1500)), is(5));
+    }
+
+    @Test
+    public void getTailOverrun_outlier() throws Exception {
+        for (int i = 0; i < 9; i++) {
+            stats.record(Duration.ofMillis(100), 1);
+        }
+        stats.record(Duration.ofMillis(1100), 1);
+
+        // fitted cost is 200ms per message and the outlier took 900ms longer than that
+        assertThat(stats.getEstimatedCapacity(Duration.ofMillis(1500)), is(7));
+        assertThat(stats.getTailOverrun(), is(Duration.ofMillis(900)));
+    }
+
+    @Test
+    public void getTailOverrun_noSamples() throws Exception {
+        assertThat(stats.getTailOverrun(), is(Duration.ZERO));
+    }
+}
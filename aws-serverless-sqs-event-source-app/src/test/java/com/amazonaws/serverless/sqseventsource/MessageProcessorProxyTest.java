@@ -1,22 +1,36 @@
 package com.amazonaws.serverless.sqseventsource;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
 
+import com.amazonaws.serverless.sqseventsource.messageprocessor.JacksonCodec;
 import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessorRequest;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessorResponse;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageResult;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.WireFormat;
 import com.amazonaws.services.lambda.AWSLambda;
 import com.amazonaws.services.lambda.model.InvokeRequest;
 import com.amazonaws.services.lambda.model.InvokeResult;
+import com.amazonaws.services.lambda.model.TooManyRequestsException;
 import com.amazonaws.services.sqs.model.Message;
 
+import com.google.common.base.Strings;
 import com.google.common.collect.Lists;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
@@ -66,4 +80,126 @@ public class MessageProcessorProxyTest {
 
         messageProcessorProxy.invoke(sqsMessageProcessorRequest);
     }
+
+    @Test(expected = MessageProcessorThrottledException.class)
+    public void invoke_throttled() throws Exception {
+        when(lambda.invoke(any(InvokeRequest.class))).thenThrow(new TooManyRequestsException("Rate Exceeded."));
+
+        messageProcessorProxy.invoke(new SQSMessageProcessorRequest(MESSAGES));
+    }
+
+    @Test
+    public void invoke_streamsRequestAndResponse() throws Exception {
+        SQSMessageProcessorRequest sqsMessageProcessorRequest = new SQSMessageProcessorRequest(MESSAGES);
+        SQSMessageProcessorResponse expected = new SQSMessageProcessorResponse(
+                Lists.newArrayList(new SQSMessageResult("message1", SQSMessageResult.Status.SUCCESS)));
+
+        // response in a read-only slice of a larger buffer, so it has no accessible backing array starting at the payload
+        byte[] json = GsonCodec.GSON.toJson(expected).getBytes(StandardCharsets.UTF_8);
+        ByteBuffer backing = ByteBuffer.allocate(json.length + 10);
+        backing.position(5);
+        backing.put(json);
+        backing.position(5);
+        backing.limit(5 + json.length);
+        ByteBuffer payload = backing.slice().asReadOnlyBuffer();
+
+        InvokeResult invokeResult = mock(InvokeResult.class);
+        when(invokeResult.getPayload()).thenReturn(payload);
+        ArgumentCaptor<InvokeRequest> invokeRequest = ArgumentCaptor.forClass(InvokeRequest.class);
+        when(lambda.invoke(invokeRequest.capture())).thenReturn(invokeResult);
+
+        assertThat(messageProcessorProxy.invoke(sqsMessageProcessorRequest), is(expected));
+        assertThat(StandardCharsets.UTF_8.decode(invokeRequest.getValue().getPayload()).toString(),
+                is(GsonCodec.GSON.toJson(sqsMessageProcessorRequest)));
+        assertThat(payload.position(), is(0));
+    }
+
+    @Test
+    public void invoke_jacksonCodec() throws Exception {
+        messageProcessorProxy = new MessageProcessorProxy(MESSAGE_PROCESSOR_FUNCTION_NAME, lambda, false, JacksonCodec.INSTANCE);
+        SQSMessageProcessorResponse expected = new SQSMessageProcessorResponse(
+                Lists.newArrayList(new SQSMessageResult("message1", SQSMessageResult.Status.RETRY, 30)));
+        StringWriter json = new StringWriter();
+        JacksonCodec.INSTANCE.write(expected, json);
+
+        InvokeResult invokeResult = new InvokeResult()
+                .withPayload(ByteBuffer.wrap(json.toString().getBytes(StandardCharsets.UTF_8)));
+        ArgumentCaptor<InvokeRequest> invokeRequest = ArgumentCaptor.forClass(InvokeRequest.class);
+        when(lambda.invoke(invokeRequest.capture())).thenReturn(invokeResult);
+
+        assertThat(messageProcessorProxy.invoke(new SQSMessageProcessorRequest(MESSAGES)), is(expected));
+        SQSMessageProcessorRequest sent = JacksonCodec.INSTANCE.read(
+                new StringReader(StandardCharsets.UTF_8.decode(invokeRequest.getValue().getPayload()).toString()),
+                SQSMessageProcessorRequest.class);
+        assertThat(sent.getMessages(), is(MESSAGES));
+    }
+
+    @Test
+    public void invoke_largePayloadBufferNotRetained() throws Exception {
+        Message large = new Message().withMessageId("large").withBody(Strings.repeat("x", MessageProcessorProxy.MAX_RETAINED_BUFFER_BYTES));
+        ArgumentCaptor<InvokeRequest> invokeRequest = ArgumentCaptor.forClass(InvokeRequest.class);
+        when(lambda.invoke(invokeRequest.capture())).thenReturn(new InvokeResult());
+
+        messageProcessorProxy.invoke(new SQSMessageProcessorRequest(Lists.newArrayList(large)));
+        assertThat(invokeRequest.getValue().getPayload().array().length > MessageProcessorProxy.MAX_RETAINED_BUFFER_BYTES, is(true));
+
+        // the next request is encoded into a buffer of the initial size
+        ByteBuffer payload = MessageProcessorProxy.encode(GsonCodec.INSTANCE, new SQSMessageProcessorRequest(MESSAGES));
+        assertThat(payload.array().length, is(MessageProcessorProxy.INITIAL_BUFFER_BYTES));
+    }
+
+    @Test
+    public void invoke_noPayload() throws Exception {
+        InvokeResult invokeResult = mock(InvokeResult.class);
+        when(lambda.invoke(any(InvokeRequest.class))).thenReturn(invokeResult);
+
+        assertThat(messageProcessorProxy.invoke(new SQSMessageProcessorRequest(MESSAGES)), is(nullValue()));
+    }
+
+    @Test
+    public void invoke_switchesToCompactFormat() throws Exception {
+        messageProcessorProxy = new MessageProcessorProxy(MESSAGE_PROCESSOR_FUNCTION_NAME, lambda, true);
+        String body = Strings.repeat("a compressible message body ", 100);
+        Message message = new Message().withMessageId("message1").withReceiptHandle("receipt1").withMD5OfBody("md5").withBody(body);
+        SQSMessageProcessorResponse response = new SQSMessageProcessorResponse(
+                Lists.newArrayList(new SQSMessageResult("message1", SQSMessageResult.Status.SUCCESS)), WireFormat.COMPACT_VERSION);
+        InvokeResult invokeResult = new InvokeResult()
+                .withPayload(ByteBuffer.wrap(GsonCodec.GSON.toJson(response).getBytes(StandardCharsets.UTF_8)));
+
+        List<SQSMessageProcessorRequest> sent = new ArrayList<>();
+        when(lambda.invoke(any(InvokeRequest.class))).thenAnswer(invocation -> {
+            InvokeRequest invokeRequest = (InvokeRequest) invocation.getArguments()[0];
+            String payload = StandardCharsets.UTF_8.decode(invokeRequest.getPayload()).toString();
+            sent.add(GsonCodec.GSON.fromJson(payload, SQSMessageProcessorRequest.class));
+            return invokeResult;
+        });
+
+        messageProcessorProxy.invoke(new SQSMessageProcessorRequest(Lists.newArrayList(message)));
+        messageProcessorProxy.invoke(new SQSMessageProcessorRequest(Lists.newArrayList(message)));
+
+        // the first request goes out in the original format, the processor's response then enables the compact one
+        assertThat(sent.get(0).getVersion(), is(nullValue()));
+        assertThat(sent.get(0).getMessages(), is(Lists.newArrayList(message)));
+        assertThat(sent.get(1).getVersion(), is(WireFormat.COMPACT_VERSION));
+        assertThat(sent.get(1).getMessages(), is(nullValue()));
+        assertThat(sent.get(1).getEncoding(), is(WireFormat.GZIP_ENCODING));
+        assertThat(WireFormat.decodeMessages(sent.get(1)), is(Lists.newArrayList(new Message().withMessageId("message1").withBody(body))));
+    }
+
+    @Test
+    public void invoke_legacyProcessorKeepsOriginalFormat() throws Exception {
+        messageProcessorProxy = new MessageProcessorProxy(MESSAGE_PROCESSOR_FUNCTION_NAME, lambda, true);
+        SQSMessageProcessorResponse response = new SQSMessageProcessorResponse(
+                Lists.newArrayList(new SQSMessageResult("message1", SQSMessageResult.Status.SUCCESS)));
+        InvokeResult invokeResult = new InvokeResult()
+                .withPayload(ByteBuffer.wrap(GsonCodec.GSON.toJson(response).getBytes(StandardCharsets.UTF_8)));
+        ArgumentCaptor<InvokeRequest> invokeRequest = ArgumentCaptor.forClass(InvokeRequest.class);
+        when(lambda.invoke(invokeRequest.capture())).thenReturn(invokeResult);
+
+        messageProcessorProxy.invoke(new SQSMessageProcessorRequest(MESSAGES));
+        messageProcessorProxy.invoke(new SQSMessageProcessorRequest(MESSAGES));
+
+        assertThat(StandardCharsets.UTF_8.decode(invokeRequest.getValue().getPayload()).toString(),
+                is(GsonCodec.GSON.toJson(new SQSMessageProcessorRequest(MESSAGES))));
+    }
 }
@@ -0,0 +1,193 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.amazonaws.services.sqs.model.AmazonSQSException;
+import com.amazonaws.services.sqs.model.Message;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class MultiQueuePollerTest {
+    private static final Instant NOW = Instant.now();
+    private static final int QUANTUM = 10;
+
+    @Mock
+    private BatchAccumulator accumulator1;
+    @Mock
+    private MessageDispatcher dispatcher1;
+    @Mock
+    private BatchAccumulator accumulator2;
+    @Mock
+    private MessageDispatcher dispatcher2;
+    @Mock
+    private PollMetrics metrics1;
+    @Mock
+    private PollMetrics metrics2;
+
+    private MultiQueuePoller poller;
+
+    @Before
+    public void setup() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(dispatcher1.getTimeoutBufferInMillis()).thenReturn(1000);
+        when(dispatcher2.getTimeoutBufferInMillis()).thenReturn(3000);
+        poller = new MultiQueuePoller(Lists.newArrayList(
+                new MultiQueuePoller.Lane("queue1", 3, accumulator1, dispatcher1, metrics1),
+                new MultiQueuePoller.Lane("queue2", 1, accumulator2, dispatcher2, metrics2)),
+                QUANTUM, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    public void poll_sharesByWeight() throws Exception {
+        // both queues have plenty of messages, but receives return at most 10
+        when(accumulator1.receive(anyInt())).thenAnswer(invocation -> messages(Math.min(10, (int) invocation.getArguments()[0])));
+        when(accumulator2.receive(anyInt())).thenAnswer(invocation -> messages(Math.min(10, (int) invocation.getArguments()[0])));
+        // two rounds worth of capacity
+        when(dispatcher1.getEstimatedCapacity(any())).thenReturn(100, 100, 100, 100, 100, 100, 0);
+        when(dispatcher2.getEstimatedCapacity(any())).thenReturn(100, 100, 0);
+
+        poller.poll(10000);
+
+        InOrder inOrder = inOrder(accumulator1, accumulator2);
+        for (int round = 0; round < 2; round++) {
+            inOrder.verify(accumulator1).receive(30);
+            inOrder.verify(accumulator1).receive(20);
+            inOrder.verify(accumulator1).receive(10);
+            inOrder.verify(accumulator2).receive(10);
+        }
+        verify(dispatcher1, times(6)).dispatch(any());
+        verify(dispatcher2, times(2)).dispatch(any());
+    }
+
+    @Test
+    public void poll_shortReceivesSpendRemainingCredit() throws Exception {
+        when(accumulator1.receive(anyInt())).thenReturn(Collections.emptyList());
+        when(accumulator2.receive(anyInt())).thenAnswer(invocation -> messages(Math.min(4, (int) invocation.getArguments()[0])));
+        when(dispatcher1.getEstimatedCapacity(any())).thenReturn(100);
+        when(dispatcher2.getEstimatedCapacity(any())).thenReturn(100, 100, 100, 0);
+
+        poller.poll(10000);
+
+        InOrder inOrder = inOrder(accumulator2);
+        inOrder.verify(accumulator2).receive(10);
+        inOrder.verify(accumulator2).receive(6);
+        inOrder.verify(accumulator2).receive(2);
+        verify(accumulator2, times(3)).receive(anyInt());
+    }
+
+    @Test
+    public void poll_skipsEmptyQueue() throws Exception {
+        when(accumulator1.receive(anyInt())).thenReturn(Collections.emptyList());
+        when(accumulator2.receive(anyInt())).thenAnswer(invocation -> messages(10));
+        when(dispatcher1.getEstimatedCapacity(any())).thenReturn(100);
+        when(dispatcher2.getEstimatedCapacity(any())).thenReturn(100, 100, 100, 0);
+
+        poller.poll(10000);
+
+        verify(accumulator1).receive(30);
+        verify(dispatcher1, never()).dispatch(any());
+        verify(accumulator2, times(3)).receive(10);
+        verify(dispatcher2, times(3)).dispatch(any());
+    }
+
+    @Test
+    public void poll_metricsPerQueue() throws Exception {
+        when(accumulator1.receive(anyInt())).thenReturn(Collections.emptyList());
+        when(accumulator2.receive(anyInt())).thenReturn(Collections.emptyList());
+        when(dispatcher1.getEstimatedCapacity(any())).thenReturn(100);
+        when(dispatcher2.getEstimatedCapacity(any())).thenReturn(50);
+
+        poller.poll(10000);
+
+        verify(metrics1).recordEstimatedCapacity(100);
+        verify(metrics2).recordEstimatedCapacity(50);
+        verify(metrics1).flush(NOW);
+        verify(metrics2).flush(NOW);
+    }
+
+    @Test
+    public void poll_receivesOnlyEstimatedCapacity() throws Exception {
+        when(accumulator1.receive(anyInt())).thenAnswer(invocation -> messages((int) invocation.getArguments()[0]));
+        when(accumulator2.receive(anyInt())).thenReturn(Collections.emptyList());
+        when(dispatcher1.getEstimatedCapacity(any())).thenReturn(5, 0);
+        when(dispatcher2.getEstimatedCapacity(any())).thenReturn(100);
+
+        poller.poll(10000);
+
+        verify(accumulator1).receive(5);
+        verify(accumulator1, times(1)).receive(anyInt());
+    }
+
+    @Test
+    public void poll_cutoffAllowsForLargestTimeoutBuffer() throws Exception {
+        when(dispatcher1.getEstimatedCapacity(any())).thenReturn(0);
+        when(dispatcher2.getEstimatedCapacity(any())).thenReturn(0);
+
+        poller.poll(10000);
+
+        InOrder inOrder = inOrder(dispatcher1, dispatcher2);
+        inOrder.verify(dispatcher1).reset();
+        inOrder.verify(dispatcher2).reset();
+        inOrder.verify(dispatcher1).setCutoff(NOW.plusMillis(7000));
+        inOrder.verify(dispatcher2).setCutoff(NOW.plusMillis(7000));
+        inOrder.verify(dispatcher1).awaitInFlight();
+        inOrder.verify(dispatcher2).awaitInFlight();
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void poll_awaitsAllQueuesBeforeRethrowing() throws Exception {
+        when(dispatcher1.getEstimatedCapacity(any())).thenReturn(0);
+        when(dispatcher2.getEstimatedCapacity(any())).thenReturn(0);
+        doThrow(new IllegalStateException()).when(dispatcher1).awaitInFlight();
+
+        try {
+            poller.poll(10000);
+        } finally {
+            verify(dispatcher2).awaitInFlight();
+        }
+    }
+
+    @Test(expected = AmazonSQSException.class)
+    public void poll_failureNotMaskedByInFlightFailure() throws Exception {
+        IllegalStateException inFlightFailure = new IllegalStateException("dispatch failed");
+        when(dispatcher1.getEstimatedCapacity(any())).thenReturn(100);
+        when(accumulator1.receive(anyInt())).thenThrow(new AmazonSQSException("receive failed"));
+        doThrow(inFlightFailure).when(dispatcher2).awaitInFlight();
+
+        try {
+            poller.poll(10000);
+        } catch (AmazonSQSException e) {
+            assertThat(e.getSuppressed(), is(new Throwable[] {inFlightFailure}));
+            throw e;
+        }
+    }
+
+    private static List<Message> messages(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new Message().withMessageId(String.valueOf(i)))
+                .collect(Collectors.toList());
+    }
+}
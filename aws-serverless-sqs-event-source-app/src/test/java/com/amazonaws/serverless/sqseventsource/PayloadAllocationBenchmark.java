@@ -0,0 +1,76 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessorRequest;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessorResponse;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageResult;
+import com.amazonaws.services.lambda.model.InvokeResult;
+import com.amazonaws.services.sqs.model.Message;
+
+import com.google.common.base.Strings;
+
+/**
+ * Compares bytes allocated per batch when encoding requests and decoding responses through intermediate strings against the
+ * streaming path used by {@link MessageProcessorProxy}. Run with <code>mvn exec:java</code> against the test classpath, e.g.
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.amazonaws.serverless.sqseventsource.PayloadAllocationBenchmark</code>.
+ */
+public final class PayloadAllocationBenchmark {
+    private static final int BATCH_SIZE = 100;
+    private static final int BODY_SIZE = 4 * 1024;
+    private static final int WARMUP_ITERATIONS = 2_000;
+    private static final int ITERATIONS = 2_000;
+
+    private PayloadAllocationBenchmark() {
+    }
+
+    public static void main(final String[] args) {
+        List<Message> messages = new ArrayList<>();
+        List<SQSMessageResult> results = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            String messageId = "message" + i;
+            messages.add(new Message().withMessageId(messageId).withReceiptHandle("receipt" + i).withBody(Strings.repeat("x", BODY_SIZE)));
+            results.add(new SQSMessageResult(messageId, SQSMessageResult.Status.SUCCESS));
+        }
+        SQSMessageProcessorRequest request = new SQSMessageProcessorRequest(messages);
+        InvokeResult result = new InvokeResult().withPayload(ByteBuffer.wrap(
+                GsonCodec.GSON.toJson(new SQSMessageProcessorResponse(results)).getBytes(StandardCharsets.UTF_8)));
+
+        long stringBytes = measure(() -> {
+            ByteBuffer payload = ByteBuffer.wrap(GsonCodec.GSON.toJson(request).getBytes(StandardCharsets.UTF_8));
+            String response = new String(result.getPayload().array(), StandardCharsets.UTF_8);
+            return GsonCodec.GSON.fromJson(response, SQSMessageProcessorResponse.class).getMessageResults().size() + payload.remaining();
+        });
+        long streamingBytes = measure(() -> {
+            ByteBuffer payload = MessageProcessorProxy.encode(GsonCodec.INSTANCE, request);
+            return GsonCodec.GSON.fromJson(LambdaUtil.getPayloadAsReader(result), SQSMessageProcessorResponse.class)
+                    .getMessageResults().size() + payload.remaining();
+        });
+
+        System.out.printf("Batch of %d messages with %d byte bodies%n", BATCH_SIZE, BODY_SIZE);
+        System.out.printf("  strings:   %,d bytes allocated per batch%n", stringBytes);
+        System.out.printf("  streaming: %,d bytes allocated per batch%n", streamingBytes);
+    }
+
+    private static long measure(final Supplier<Integer> batch) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long sink = 0;
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            sink += batch.get();
+        }
+        long before = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int i = 0; i < ITERATIONS; i++) {
+            sink += batch.get();
+        }
+        long allocated = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+        if (sink == 0) {
+            throw new IllegalStateException("Benchmark did no work");
+        }
+        return allocated / ITERATIONS;
+    }
+}
@@ -0,0 +1,71 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessorRequest;
+import com.amazonaws.services.sqs.model.Message;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+public class PayloadBatcherTest {
+    private static final Message MESSAGE1 = new Message().withMessageId("message1").withBody("this is a test message1");
+    private static final Message MESSAGE2 = new Message().withMessageId("message2").withBody("this is a test message2");
+    private static final Message MESSAGE3 = new Message().withMessageId("message3").withBody("this is a test message3");
+
+    @Test
+    public void split_fitsInOneBatch() throws Exception {
+        PayloadBatcher batcher = new PayloadBatcher();
+        List<Message> messages = Lists.newArrayList(MESSAGE1, MESSAGE2, MESSAGE3);
+
+        List<List<Message>> expected = Collections.singletonList(messages);
+        assertThat(batcher.split(messages), is(expected));
+    }
+
+    @Test
+    public void split_atByteBudget() throws Exception {
+        PayloadBatcher batcher = new PayloadBatcher(payloadSize(MESSAGE1, MESSAGE2));
+
+        List<List<Message>> batches = batcher.split(Lists.newArrayList(MESSAGE1, MESSAGE2, MESSAGE3));
+
+        List<List<Message>> expected = Arrays.asList(Arrays.asList(MESSAGE1, MESSAGE2), Arrays.asList(MESSAGE3));
+        assertThat(batches, is(expected));
+    }
+
+    @Test
+    public void split_oversizedMessageSentAlone() throws Exception {
+        PayloadBatcher batcher = new PayloadBatcher(1);
+
+        List<List<Message>> batches = batcher.split(Lists.newArrayList(MESSAGE1, MESSAGE2));
+
+        List<List<Message>> expected = Arrays.asList(Arrays.asList(MESSAGE1), Arrays.asList(MESSAGE2));
+        assertThat(batches, is(expected));
+    }
+
+    @Test
+    public void split_countsEncodedBytes() throws Exception {
+        Message message1 = new Message().withMessageId("1").withBody("caf\u00e9 \u20ac \ud83d\ude00");
+        Message message2 = new Message().withMessageId("2").withBody("\u00fcber \u2603");
+        int size = payloadSize(message1, message2);
+
+        assertThat(new PayloadBatcher(size).split(Lists.newArrayList(message1, message2)).size(), is(1));
+        assertThat(new PayloadBatcher(size - 1).split(Lists.newArrayList(message1, message2)).size(), is(2));
+    }
+
+    @Test
+    public void split_noMessages() throws Exception {
+        assertThat(new PayloadBatcher().split(Lists.newArrayList()).isEmpty(), is(true));
+    }
+
+    private static int payloadSize(final Message... messages) {
+        return GsonCodec.GSON.toJson(new SQSMessageProcessorRequest(Lists.newArrayList(messages)))
+                .getBytes(StandardCharsets.UTF_8).length;
+    }
+}
@@ -0,0 +1,118 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class PollMetricsTest {
+    private static final Instant NOW = Instant.parse("2018-06-01T10:00:00Z");
+
+    private PollMetrics metrics;
+
+    @Before
+    public void setup() throws Exception {
+        metrics = PollMetrics.embeddedMetricFormat(ImmutableMap.of("QueueName", "my-queue"));
+    }
+
+    @Test
+    public void flush_embeddedMetricFormat() throws Exception {
+        metrics.addMessagesReceived(10);
+        metrics.addMessagesDeleted(7);
+        metrics.addMessagesRetried(2);
+        metrics.addMessagesErrored(1);
+        metrics.recordBatchSize(10);
+        metrics.recordProcessorInvokeLatency(Duration.ofMillis(120));
+        metrics.recordSQSCallLatency(Duration.ofMillis(8));
+        metrics.recordSQSCallLatency(Duration.ofMillis(12));
+        metrics.recordTimeLeftAtExit(Duration.ofMillis(4000));
+
+        JsonObject line = new JsonParser().parse(metrics.flush(NOW)).getAsJsonObject();
+
+        JsonObject metadata = line.getAsJsonObject("_aws");
+        assertThat(metadata.get("Timestamp").getAsLong(), is(NOW.toEpochMilli()));
+        JsonObject directive = metadata.getAsJsonArray("CloudWatchMetrics").get(0).getAsJsonObject();
+        assertThat(directive.get("Namespace").getAsString(), is(PollMetrics.NAMESPACE));
+        assertThat(directive.getAsJsonArray("Dimensions").get(0).getAsJsonArray().get(0).getAsString(), is("QueueName"));
+        JsonArray definitions = directive.getAsJsonArray("Metrics");
+        // no capacity estimate was recorded, so it is not reported
+        assertThat(definitions.size(), is(8));
+        assertThat(definitions.get(0).getAsJsonObject().get("Name").getAsString(), is("MessagesReceived"));
+        assertThat(definitions.get(0).getAsJsonObject().get("Unit").getAsString(), is("Count"));
+
+        assertThat(line.get("QueueName").getAsString(), is("my-queue"));
+        assertThat(line.get("MessagesReceived").getAsLong(), is(10L));
+        assertThat(line.get("MessagesDeleted").getAsLong(), is(7L));
+        assertThat(line.get("MessagesRetried").getAsLong(), is(2L));
+        assertThat(line.get("MessagesErrored").getAsLong(), is(1L));
+        assertThat(line.get("BatchSize").getAsLong(), is(10L));
+        assertThat(line.get("ProcessorInvokeLatency").getAsLong(), is(120L));
+        assertThat(line.get("SQSCallLatency").getAsJsonArray().size(), is(2));
+        assertThat(line.get("SQSCallLatency").getAsJsonArray().get(1).getAsLong(), is(12L));
+        assertThat(line.get("TimeLeftAtExit").getAsLong(), is(4000L));
+        assertThat(line.has("EstimatedCapacity"), is(false));
+    }
+
+    @Test
+    public void flush_resetsAggregates() throws Exception {
+        metrics.addMessagesReceived(10);
+        metrics.recordBatchSize(10);
+        metrics.flush(NOW);
+
+        JsonObject line = new JsonParser().parse(metrics.flush(NOW)).getAsJsonObject();
+        assertThat(line.get("MessagesReceived").getAsLong(), is(0L));
+        assertThat(line.has("BatchSize"), is(false));
+    }
+
+    @Test
+    public void recordEstimatedCapacity_ignoresMissingEstimate() throws Exception {
+        metrics.recordEstimatedCapacity(Integer.MAX_VALUE);
+        metrics.recordEstimatedCapacity(25);
+
+        JsonObject line = new JsonParser().parse(metrics.flush(NOW)).getAsJsonObject();
+        assertThat(line.get("EstimatedCapacity").getAsLong(), is(25L));
+    }
+
+    @Test
+    public void recordSamples_capsValuesPerMetric() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            metrics.recordBatchSize(i);
+        }
+
+        JsonObject line = new JsonParser().parse(metrics.flush(NOW)).getAsJsonObject();
+        assertThat(line.get("BatchSize").getAsJsonArray().size(), is(PollMetrics.MAX_VALUES_PER_METRIC));
+    }
+
+    @Test
+    public void flush_disabled() throws Exception {
+        metrics = PollMetrics.disabled();
+        metrics.addMessagesReceived(10);
+
+        assertThat(metrics.flush(NOW), is(nullValue()));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void embeddedMetricFormat_nullDimensions() throws Exception {
+        PollMetrics.embeddedMetricFormat(null);
+    }
+
+    @Test
+    public void embeddedMetricFormat_noDimensions() throws Exception {
+        metrics = PollMetrics.embeddedMetricFormat(Collections.emptyMap());
+
+        JsonObject line = new JsonParser().parse(metrics.flush(NOW)).getAsJsonObject();
+        JsonObject directive = line.getAsJsonObject("_aws").getAsJsonArray("CloudWatchMetrics").get(0).getAsJsonObject();
+        assertThat(directive.getAsJsonArray("Dimensions").get(0).getAsJsonArray().size(), is(0));
+    }
+}
@@ -0,0 +1,98 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import com.amazonaws.services.sqs.model.Message;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class PrefetchBufferTest {
+    @Mock
+    private SQSProxy sqsProxy;
+
+    private PrefetchBuffer prefetchBuffer;
+
+    @Before
+    public void setup() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        prefetchBuffer = new PrefetchBuffer(sqsProxy, BatchAccumulator.singleReceive(sqsProxy));
+    }
+
+    @Test
+    public void take_nothingPrefetched() throws Exception {
+        List<Message> messages = Lists.newArrayList(mock(Message.class));
+        when(sqsProxy.receiveMessages(anyInt())).thenReturn(messages);
+
+        assertThat(prefetchBuffer.take(3), is(messages));
+        verify(sqsProxy).receiveMessages(3);
+        verifyNoMoreInteractions(sqsProxy);
+    }
+
+    @Test
+    public void take_prefetched() throws Exception {
+        List<Message> messages = Lists.newArrayList(mock(Message.class));
+        when(sqsProxy.receiveMessagesAsync(anyInt())).thenReturn(CompletableFuture.completedFuture(messages));
+
+        prefetchBuffer.prefetch(5);
+
+        assertThat(prefetchBuffer.take(5), is(messages));
+        verify(sqsProxy).receiveMessagesAsync(5);
+        verifyNoMoreInteractions(sqsProxy);
+    }
+
+    @Test
+    public void take_releasesMessagesBeyondLimit() throws Exception {
+        Message m1 = mock(Message.class);
+        Message m2 = mock(Message.class);
+        Message m3 = mock(Message.class);
+        when(sqsProxy.receiveMessagesAsync(anyInt())).thenReturn(CompletableFuture.completedFuture(Lists.newArrayList(m1, m2, m3)));
+
+        prefetchBuffer.prefetch(3);
+
+        assertThat(prefetchBuffer.take(1), is(Lists.newArrayList(m1)));
+        verify(sqsProxy).retryMessages(Lists.newArrayList(new RetryMessageRequest(m2, 0), new RetryMessageRequest(m3, 0)));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void take_prefetchFailed() throws Exception {
+        CompletableFuture<List<Message>> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new IllegalStateException());
+        when(sqsProxy.receiveMessagesAsync(anyInt())).thenReturn(failed);
+
+        prefetchBuffer.prefetch(1);
+        prefetchBuffer.take(1);
+    }
+
+    @Test
+    public void prefetch_nonPositiveLimit() throws Exception {
+        prefetchBuffer.prefetch(0);
+        prefetchBuffer.release();
+
+        verifyNoMoreInteractions(sqsProxy);
+    }
+
+    @Test
+    public void release() throws Exception {
+        Message m1 = mock(Message.class);
+        when(sqsProxy.receiveMessagesAsync(anyInt())).thenReturn(CompletableFuture.completedFuture(Lists.newArrayList(m1)));
+
+        prefetchBuffer.prefetch(1);
+        prefetchBuffer.release();
+
+        verify(sqsProxy).retryMessages(Lists.newArrayList(new RetryMessageRequest(m1, 0)));
+    }
+}
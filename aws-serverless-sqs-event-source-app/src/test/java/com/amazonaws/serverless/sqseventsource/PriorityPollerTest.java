@@ -0,0 +1,157 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.amazonaws.services.sqs.model.AmazonSQSException;
+import com.amazonaws.services.sqs.model.Message;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class PriorityPollerTest {
+    private static final Instant NOW = Instant.now();
+    private static final int TIMEOUT_BUFFER_IN_MILLIS = 3000;
+
+    @Mock
+    private SQSProxy urgentProxy;
+    @Mock
+    private BatchAccumulator urgentAccumulator;
+    @Mock
+    private SQSProxy bulkProxy;
+    @Mock
+    private BatchAccumulator bulkAccumulator;
+    @Mock
+    private MessageDispatcher messageDispatcher;
+    @Mock
+    private PollMetrics urgentMetrics;
+    @Mock
+    private PollMetrics bulkMetrics;
+
+    private PriorityPoller poller;
+
+    @Before
+    public void setup() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(messageDispatcher.getTimeoutBufferInMillis()).thenReturn(TIMEOUT_BUFFER_IN_MILLIS);
+        when(urgentProxy.getMetrics()).thenReturn(urgentMetrics);
+        when(bulkProxy.getMetrics()).thenReturn(bulkMetrics);
+        poller = new PriorityPoller(Lists.newArrayList(
+                new PriorityPoller.Tier("urgent", urgentProxy, urgentAccumulator, 0),
+                new PriorityPoller.Tier("bulk", bulkProxy, bulkAccumulator, 0.2)),
+                messageDispatcher, urgentMetrics, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    public void poll_higherTierFirstWithGuaranteedShare() throws Exception {
+        when(urgentAccumulator.receive(anyInt())).thenReturn(messages(10), messages(10), messages(10), Collections.<Message>emptyList());
+        when(bulkAccumulator.receive(anyInt())).thenAnswer(invocation -> messages(10));
+        when(messageDispatcher.getEstimatedCapacity(any())).thenReturn(100, 100, 100, 100, 100, 0);
+
+        poller.poll(TIMEOUT_BUFFER_IN_MILLIS * 2);
+
+        InOrder inOrder = inOrder(messageDispatcher);
+        inOrder.verify(messageDispatcher).dispatch(any(), eq(urgentProxy));
+        // 0 of 10 messages received so far are bulk, below its 20% share
+        inOrder.verify(messageDispatcher).dispatch(any(), eq(bulkProxy));
+        // 10 of 20 and 10 of 30 are enough
+        inOrder.verify(messageDispatcher).dispatch(any(), eq(urgentProxy));
+        inOrder.verify(messageDispatcher).dispatch(any(), eq(urgentProxy));
+        // the urgent queue is empty
+        inOrder.verify(messageDispatcher).dispatch(any(), eq(bulkProxy));
+        verify(messageDispatcher, times(3)).dispatch(any(), eq(urgentProxy));
+        verify(messageDispatcher, times(2)).dispatch(any(), eq(bulkProxy));
+    }
+
+    @Test
+    public void poll_strictPriorityWithoutShare() throws Exception {
+        poller = new PriorityPoller(Lists.newArrayList(
+                new PriorityPoller.Tier("urgent", urgentProxy, urgentAccumulator, 0),
+                new PriorityPoller.Tier("bulk", bulkProxy, bulkAccumulator, 0)),
+                messageDispatcher, urgentMetrics, Clock.fixed(NOW, ZoneOffset.UTC));
+        when(urgentAccumulator.receive(anyInt())).thenAnswer(invocation -> messages(10));
+        when(messageDispatcher.getEstimatedCapacity(any())).thenReturn(100, 100, 100, 0);
+
+        poller.poll(TIMEOUT_BUFFER_IN_MILLIS * 2);
+
+        verify(bulkAccumulator, never()).receive(anyInt());
+        verify(messageDispatcher, never()).dispatch(any(), eq(bulkProxy));
+    }
+
+    @Test
+    public void poll_allTiersEmpty() throws Exception {
+        when(urgentAccumulator.receive(anyInt())).thenReturn(Collections.emptyList());
+        when(bulkAccumulator.receive(anyInt())).thenReturn(Collections.emptyList());
+        when(messageDispatcher.getEstimatedCapacity(any())).thenReturn(7);
+
+        poller.poll(TIMEOUT_BUFFER_IN_MILLIS * 2);
+
+        Instant expectedCutoff = NOW.plusMillis(TIMEOUT_BUFFER_IN_MILLIS);
+        InOrder inOrder = inOrder(messageDispatcher, urgentAccumulator, bulkAccumulator);
+        inOrder.verify(messageDispatcher).reset();
+        inOrder.verify(messageDispatcher).setCutoff(expectedCutoff);
+        inOrder.verify(messageDispatcher).getEstimatedCapacity(expectedCutoff);
+        inOrder.verify(urgentAccumulator).receive(7);
+        inOrder.verify(bulkAccumulator).receive(7);
+        inOrder.verify(messageDispatcher).awaitInFlight();
+        verify(messageDispatcher, never()).dispatch(any(), any());
+    }
+
+    @Test(expected = AmazonSQSException.class)
+    public void poll_failureNotMaskedByInFlightFailure() throws Exception {
+        IllegalStateException inFlightFailure = new IllegalStateException("dispatch failed");
+        when(messageDispatcher.getEstimatedCapacity(any())).thenReturn(7);
+        when(urgentAccumulator.receive(anyInt())).thenThrow(new AmazonSQSException("receive failed"));
+        doThrow(inFlightFailure).when(messageDispatcher).awaitInFlight();
+
+        try {
+            poller.poll(TIMEOUT_BUFFER_IN_MILLIS * 2);
+        } catch (AmazonSQSException e) {
+            assertThat(e.getSuppressed(), is(new Throwable[] {inFlightFailure}));
+            throw e;
+        }
+    }
+
+    @Test
+    public void poll_flushesMetricsOfEveryTier() throws Exception {
+        when(urgentAccumulator.receive(anyInt())).thenReturn(Collections.emptyList());
+        when(bulkAccumulator.receive(anyInt())).thenReturn(Collections.emptyList());
+        when(messageDispatcher.getEstimatedCapacity(any())).thenReturn(7);
+
+        poller.poll(TIMEOUT_BUFFER_IN_MILLIS * 2);
+
+        // the shared message processor's metrics are the first tier's
+        verify(urgentMetrics).recordEstimatedCapacity(7);
+        verify(urgentMetrics).flush(NOW);
+        verify(bulkMetrics, never()).recordEstimatedCapacity(anyInt());
+        verify(bulkMetrics).flush(NOW);
+    }
+
+    private static List<Message> messages(int count) {
+        return IntStream.range(0, count)
+                .mapToObj(i -> new Message().withMessageId(String.valueOf(i)))
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,86 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Random;
+
+import com.amazonaws.services.sqs.model.Message;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class RetryBackoffTest {
+    private Random random;
+    private RetryBackoff backoff;
+
+    @Before
+    public void setup() throws Exception {
+        random = mock(Random.class);
+        // no jitter, every delay is the full exponential delay
+        when(random.nextInt(anyInt())).thenReturn(0);
+        backoff = new RetryBackoff(10, 900, random);
+    }
+
+    @Test
+    public void getDelayInSeconds_doublesWithReceiveCount() throws Exception {
+        assertThat(backoff.getDelayInSeconds(message("1")), is(10));
+        assertThat(backoff.getDelayInSeconds(message("2")), is(20));
+        assertThat(backoff.getDelayInSeconds(message("3")), is(40));
+        assertThat(backoff.getDelayInSeconds(message("6")), is(320));
+        assertThat(backoff.getDelayInSeconds(message("7")), is(640));
+    }
+
+    @Test
+    public void getDelayInSeconds_capped() throws Exception {
+        assertThat(backoff.getDelayInSeconds(message("8")), is(900));
+        assertThat(backoff.getDelayInSeconds(message("1000")), is(900));
+    }
+
+    @Test
+    public void getDelayInSeconds_jitter() throws Exception {
+        backoff = new RetryBackoff(10, 900, new Random(42));
+
+        for (int i = 0; i < 100; i++) {
+            int delay = backoff.getDelayInSeconds(message("3"));
+            assertThat(delay >= 20 && delay <= 40, is(true));
+        }
+    }
+
+    @Test
+    public void getDelayInSeconds_missingReceiveCount() throws Exception {
+        assertThat(backoff.getDelayInSeconds(new Message()), is(10));
+        assertThat(backoff.getDelayInSeconds(message("not a number")), is(10));
+        assertThat(backoff.getDelayInSeconds(message("0")), is(10));
+    }
+
+    @Test
+    public void constructor_dispatcherBaseDelay() throws Exception {
+        backoff = new RetryBackoff(900);
+
+        int delay = backoff.getDelayInSeconds(message("1"));
+        assertThat(delay >= MessageDispatcher.DEFAULT_RETRY_DELAY_IN_SECONDS / 2
+                && delay <= MessageDispatcher.DEFAULT_RETRY_DELAY_IN_SECONDS, is(true));
+    }
+
+    @Test
+    public void constructor_capsMaxDelayAtSQSMaximum() throws Exception {
+        backoff = new RetryBackoff(10, Integer.MAX_VALUE);
+
+        int delay = backoff.getDelayInSeconds(message("100"));
+        assertThat(delay >= RetryBackoff.SQS_MAX_VISIBILITY_TIMEOUT_IN_SECONDS / 2, is(true));
+        assertThat(delay <= RetryBackoff.SQS_MAX_VISIBILITY_TIMEOUT_IN_SECONDS, is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_maxDelayBelowBaseDelay() throws Exception {
+        new RetryBackoff(10, 5);
+    }
+
+    private static Message message(final String receiveCount) {
+        return new Message().addAttributesEntry(RetryBackoff.RECEIVE_COUNT_ATTRIBUTE, receiveCount);
+    }
+}
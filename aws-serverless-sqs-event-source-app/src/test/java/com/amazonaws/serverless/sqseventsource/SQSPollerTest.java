@@ -1,20 +1,27 @@
 package com.amazonaws.serverless.sqseventsource;
 
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
 
 import java.time.Clock;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
+import com.amazonaws.services.sqs.model.AmazonSQSException;
 import com.amazonaws.services.sqs.model.Message;
 
 import com.google.common.collect.Lists;
@@ -27,6 +34,7 @@ import org.mockito.MockitoAnnotations;
 
 public class SQSPollerTest {
     private static final Instant NOW = Instant.now();
+    private static final int TIMEOUT_BUFFER_IN_MILLIS = 3000;
 
     @Mock
     private SQSProxy sqsProxy;
@@ -38,6 +46,7 @@ public class SQSPollerTest {
     @Before
     public void setup() throws Exception {
         MockitoAnnotations.initMocks(this);
+        when(messageDispatcher.getTimeoutBufferInMillis()).thenReturn(TIMEOUT_BUFFER_IN_MILLIS);
         poller = new SQSPoller(sqsProxy, messageDispatcher, Clock.fixed(NOW, ZoneOffset.UTC));
     }
 
@@ -50,11 +59,13 @@ public class SQSPollerTest {
         List<Message> messages = Lists.newArrayList(mock(Message.class), mock(Message.class));
         when(sqsProxy.receiveMessages(anyInt())).thenReturn(messages);
 
-        poller.poll(SQSPoller.TIMEOUT_BUFFER_IN_MILLIS * 2);
+        poller.poll(TIMEOUT_BUFFER_IN_MILLIS * 2);
 
-        Instant expectedCutoff = NOW.plusMillis(SQSPoller.TIMEOUT_BUFFER_IN_MILLIS);
+        Instant expectedCutoff = NOW.plusMillis(TIMEOUT_BUFFER_IN_MILLIS);
         InOrder inOrder = inOrder(messageDispatcher, sqsProxy);
         inOrder.verify(messageDispatcher).reset();
+        inOrder.verify(messageDispatcher).getTimeoutBufferInMillis();
+        inOrder.verify(messageDispatcher).setCutoff(expectedCutoff);
         inOrder.verify(messageDispatcher).getEstimatedCapacity(expectedCutoff);
         inOrder.verify(sqsProxy).receiveMessages(4);
         inOrder.verify(messageDispatcher).dispatch(messages);
@@ -62,6 +73,7 @@ public class SQSPollerTest {
         inOrder.verify(sqsProxy).receiveMessages(2);
         inOrder.verify(messageDispatcher).dispatch(messages);
         inOrder.verify(messageDispatcher).getEstimatedCapacity(expectedCutoff);
+        inOrder.verify(messageDispatcher).awaitInFlight();
 
         verifyNoMoreInteractions(sqsProxy, messageDispatcher);
     }
@@ -71,8 +83,132 @@ public class SQSPollerTest {
         when(messageDispatcher.getEstimatedCapacity(any())).thenReturn(1);
         when(sqsProxy.receiveMessages(anyInt())).thenReturn(Collections.emptyList());
 
-        poller.poll(SQSPoller.TIMEOUT_BUFFER_IN_MILLIS * 2);
+        poller.poll(TIMEOUT_BUFFER_IN_MILLIS * 2);
 
         verify(messageDispatcher, never()).dispatch(any());
+        verify(messageDispatcher).awaitInFlight();
     }
-}
\ No newline at end of file
+
+    @Test(expected = AmazonSQSException.class)
+    public void poll_failureNotMaskedByInFlightFailure() throws Exception {
+        IllegalStateException inFlightFailure = new IllegalStateException("dispatch failed");
+        when(messageDispatcher.getEstimatedCapacity(any())).thenReturn(1);
+        when(sqsProxy.receiveMessages(anyInt())).thenThrow(new AmazonSQSException("receive failed"));
+        doThrow(inFlightFailure).when(messageDispatcher).awaitInFlight();
+
+        try {
+            poller.poll(TIMEOUT_BUFFER_IN_MILLIS * 2);
+        } catch (AmazonSQSException e) {
+            assertThat(e.getSuppressed(), is(new Throwable[] {inFlightFailure}));
+            throw e;
+        }
+    }
+
+    @Test
+    public void poll_pipelined_prefetchesNextBatch() throws Exception {
+        poller = new SQSPoller(sqsProxy, messageDispatcher, Clock.fixed(NOW, ZoneOffset.UTC), true);
+        when(messageDispatcher.getEstimatedCapacity(any()))
+                .thenReturn(4)
+                .thenReturn(2)
+                .thenReturn(0);
+        List<Message> messages = Lists.newArrayList(mock(Message.class), mock(Message.class));
+        when(sqsProxy.receiveMessages(anyInt())).thenReturn(messages);
+        when(sqsProxy.receiveMessagesAsync(anyInt())).thenReturn(CompletableFuture.completedFuture(messages));
+
+        poller.poll(TIMEOUT_BUFFER_IN_MILLIS * 2);
+
+        Instant expectedCutoff = NOW.plusMillis(TIMEOUT_BUFFER_IN_MILLIS);
+        InOrder inOrder = inOrder(messageDispatcher, sqsProxy);
+        inOrder.verify(messageDispatcher).reset();
+        inOrder.verify(messageDispatcher).getTimeoutBufferInMillis();
+        inOrder.verify(messageDispatcher).setCutoff(expectedCutoff);
+        inOrder.verify(messageDispatcher).getEstimatedCapacity(expectedCutoff);
+        inOrder.verify(sqsProxy).receiveMessages(4);
+        inOrder.verify(sqsProxy).receiveMessagesAsync(2);
+        inOrder.verify(messageDispatcher).dispatch(messages);
+        inOrder.verify(messageDispatcher).getEstimatedCapacity(expectedCutoff);
+        inOrder.verify(messageDispatcher).dispatch(messages);
+        inOrder.verify(messageDispatcher).getEstimatedCapacity(expectedCutoff);
+        inOrder.verify(messageDispatcher).awaitInFlight();
+
+        verifyNoMoreInteractions(sqsProxy, messageDispatcher);
+    }
+
+    @Test
+    public void poll_pipelined_releasesUndispatchedMessages() throws Exception {
+        poller = new SQSPoller(sqsProxy, messageDispatcher, Clock.fixed(NOW, ZoneOffset.UTC), true);
+        when(messageDispatcher.getEstimatedCapacity(any()))
+                .thenReturn(4)
+                .thenReturn(0);
+        Message prefetched = mock(Message.class);
+        List<Message> messages = Lists.newArrayList(mock(Message.class), mock(Message.class));
+        when(sqsProxy.receiveMessages(anyInt())).thenReturn(messages);
+        when(sqsProxy.receiveMessagesAsync(anyInt())).thenReturn(CompletableFuture.completedFuture(Lists.newArrayList(prefetched)));
+
+        poller.poll(TIMEOUT_BUFFER_IN_MILLIS * 2);
+
+        verify(messageDispatcher).dispatch(messages);
+        verify(sqsProxy).retryMessages(Lists.newArrayList(new RetryMessageRequest(prefetched, 0)));
+    }
+
+    @Test
+    public void poll_pipelined_noMessagesReceived() throws Exception {
+        poller = new SQSPoller(sqsProxy, messageDispatcher, Clock.fixed(NOW, ZoneOffset.UTC), true);
+        when(messageDispatcher.getEstimatedCapacity(any())).thenReturn(1);
+        when(sqsProxy.receiveMessages(anyInt())).thenReturn(Collections.emptyList());
+
+        poller.poll(TIMEOUT_BUFFER_IN_MILLIS * 2);
+
+        verify(messageDispatcher, never()).dispatch(any());
+        verify(sqsProxy, never()).retryMessages(any());
+    }
+
+    @Test
+    public void poll_longPolling_messagesArrive() throws Exception {
+        poller = new SQSPoller(sqsProxy, messageDispatcher, Clock.fixed(NOW, ZoneOffset.UTC), false, Duration.ofSeconds(30));
+        when(messageDispatcher.getEstimatedCapacity(any()))
+                .thenReturn(5)
+                .thenReturn(5)
+                .thenReturn(0);
+        List<Message> messages = Lists.newArrayList(mock(Message.class));
+        when(sqsProxy.receiveMessages(anyInt())).thenReturn(Collections.emptyList());
+        when(sqsProxy.receiveMessages(anyInt(), anyInt())).thenReturn(messages);
+
+        poller.poll(60000);
+
+        Instant expectedCutoff = NOW.plusMillis(60000 - TIMEOUT_BUFFER_IN_MILLIS);
+        InOrder inOrder = inOrder(messageDispatcher, sqsProxy);
+        inOrder.verify(sqsProxy).receiveMessages(5);
+        inOrder.verify(messageDispatcher).getEstimatedCapacity(expectedCutoff.minusSeconds(20));
+        inOrder.verify(sqsProxy).receiveMessages(5, 20);
+        inOrder.verify(messageDispatcher).dispatch(messages);
+    }
+
+    @Test
+    public void poll_longPolling_idleBudgetSpent() throws Exception {
+        poller = new SQSPoller(sqsProxy, messageDispatcher, Clock.fixed(NOW, ZoneOffset.UTC), false, Duration.ofSeconds(30));
+        when(messageDispatcher.getEstimatedCapacity(any())).thenReturn(5);
+        when(sqsProxy.receiveMessages(anyInt())).thenReturn(Collections.emptyList());
+        when(sqsProxy.receiveMessages(anyInt(), anyInt())).thenReturn(Collections.emptyList());
+
+        poller.poll(60000);
+
+        verify(sqsProxy).receiveMessages(5, 20);
+        verify(sqsProxy).receiveMessages(5, 10);
+        verify(sqsProxy, times(2)).receiveMessages(anyInt(), anyInt());
+        verify(messageDispatcher, never()).dispatch(any());
+    }
+
+    @Test
+    public void poll_longPolling_waitLimitedByCutoff() throws Exception {
+        poller = new SQSPoller(sqsProxy, messageDispatcher, Clock.fixed(NOW, ZoneOffset.UTC), false, Duration.ofSeconds(30));
+        when(messageDispatcher.getEstimatedCapacity(any())).thenReturn(5);
+        when(sqsProxy.receiveMessages(anyInt())).thenReturn(Collections.emptyList());
+        when(sqsProxy.receiveMessages(anyInt(), anyInt())).thenReturn(Collections.emptyList());
+
+        poller.poll(TIMEOUT_BUFFER_IN_MILLIS + 3000);
+
+        verify(sqsProxy, times(10)).receiveMessages(5, 3);
+        verify(messageDispatcher, never()).dispatch(any());
+    }
+}
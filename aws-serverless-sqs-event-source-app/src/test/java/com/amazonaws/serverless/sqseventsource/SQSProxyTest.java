@@ -0,0 +1,215 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.amazonaws.handlers.AsyncHandler;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.MessageGroups;
+import com.amazonaws.services.sqs.AmazonSQSAsync;
+import com.amazonaws.services.sqs.model.BatchResultErrorEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequest;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchRequestEntry;
+import com.amazonaws.services.sqs.model.ChangeMessageVisibilityBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchRequest;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResult;
+import com.amazonaws.services.sqs.model.DeleteMessageBatchResultEntry;
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.ReceiveMessageRequest;
+import com.amazonaws.services.sqs.model.ReceiveMessageResult;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class SQSProxyTest {
+    private static final String QUEUE_URL = "https://sqs.us-east-1.amazonaws.com/123456789012/queue";
+    private static final Message MESSAGE1 = new Message().withMessageId("message1").withReceiptHandle("handle1");
+    private static final Message MESSAGE2 = new Message().withMessageId("message2").withReceiptHandle("handle2");
+
+    @Mock
+    private AmazonSQSAsync sqs;
+    @Mock
+    private ScheduledExecutorService retryScheduler;
+
+    private SQSProxy sqsProxy;
+
+    @Before
+    public void setup() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        // run backoff delays immediately
+        when(retryScheduler.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenAnswer(invocation -> {
+            ((Runnable) invocation.getArguments()[0]).run();
+            return null;
+        });
+        sqsProxy = new SQSProxy(sqs, QUEUE_URL, retryScheduler);
+    }
+
+    @Test
+    public void receiveMessages_standardQueue() throws Exception {
+        ArgumentCaptor<ReceiveMessageRequest> request = ArgumentCaptor.forClass(ReceiveMessageRequest.class);
+        when(sqs.receiveMessage(request.capture())).thenReturn(new ReceiveMessageResult().withMessages(MESSAGE1));
+
+        sqsProxy.receiveMessages(5);
+
+        assertThat(sqsProxy.isFifo(), is(false));
+        assertThat(request.getValue().getAttributeNames(), is(Lists.newArrayList(RetryBackoff.RECEIVE_COUNT_ATTRIBUTE)));
+        assertThat(request.getValue().getReceiveRequestAttemptId(), is(nullValue()));
+    }
+
+    @Test
+    public void receiveMessages_fifoQueue() throws Exception {
+        sqsProxy = new SQSProxy(sqs, QUEUE_URL + ".fifo", retryScheduler);
+        ArgumentCaptor<ReceiveMessageRequest> request = ArgumentCaptor.forClass(ReceiveMessageRequest.class);
+        when(sqs.receiveMessage(request.capture())).thenReturn(new ReceiveMessageResult().withMessages(MESSAGE1));
+
+        sqsProxy.receiveMessages(5);
+        sqsProxy.receiveMessages(5);
+
+        assertThat(sqsProxy.isFifo(), is(true));
+        List<ReceiveMessageRequest> requests = request.getAllValues();
+        assertThat(requests.get(0).getAttributeNames(),
+                is(Lists.newArrayList(RetryBackoff.RECEIVE_COUNT_ATTRIBUTE, MessageGroups.MESSAGE_GROUP_ID_ATTRIBUTE)));
+        assertThat(requests.get(0).getReceiveRequestAttemptId(), is(notNullValue()));
+        // every receive is a new attempt
+        assertThat(requests.get(0).getReceiveRequestAttemptId().equals(requests.get(1).getReceiveRequestAttemptId()), is(false));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void receiveMessagesAsync() throws Exception {
+        when(sqs.receiveMessageAsync(any(ReceiveMessageRequest.class), any(AsyncHandler.class))).thenAnswer(invocation -> {
+            ReceiveMessageRequest request = (ReceiveMessageRequest) invocation.getArguments()[0];
+            AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult> handler = (AsyncHandler<ReceiveMessageRequest, ReceiveMessageResult>) invocation.getArguments()[1];
+            handler.onSuccess(request, new ReceiveMessageResult().withMessages(MESSAGE1, MESSAGE2));
+            return null;
+        });
+
+        CompletableFuture<List<Message>> future = sqsProxy.receiveMessagesAsync(25);
+
+        assertThat(future.get(), is(Lists.newArrayList(MESSAGE1, MESSAGE2)));
+        verify(sqs).receiveMessageAsync(any(ReceiveMessageRequest.class), any(AsyncHandler.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void deleteMessages_chunksOfTen() throws Exception {
+        mockDeleteResults(new DeleteMessageBatchResult());
+        List<Message> messages = IntStream.range(0, 25)
+                .mapToObj(i -> new Message().withMessageId("message" + i).withReceiptHandle("handle" + i))
+                .collect(Collectors.toList());
+
+        SQSBatchResult result = sqsProxy.deleteMessages(messages);
+
+        ArgumentCaptor<DeleteMessageBatchRequest> captor = ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+        verify(sqs, times(3)).deleteMessageBatchAsync(captor.capture(), any(AsyncHandler.class));
+        assertThat(captor.getAllValues().stream().map(r -> r.getEntries().size()).collect(Collectors.toList()), is(Lists.newArrayList(10, 10, 5)));
+        assertThat(result.getSucceeded().size(), is(25));
+        assertThat(result.getFailed().isEmpty(), is(true));
+    }
+
+    @Test(timeout = 10000)
+    @SuppressWarnings("unchecked")
+    public void deleteMessages_retriesServerFailures() throws Exception {
+        mockDeleteResults(
+                new DeleteMessageBatchResult()
+                        .withSuccessful(new DeleteMessageBatchResultEntry().withId("0"))
+                        .withFailed(new BatchResultErrorEntry().withId("1").withSenderFault(false).withCode("InternalError")),
+                new DeleteMessageBatchResult()
+                        .withSuccessful(new DeleteMessageBatchResultEntry().withId("0")));
+
+        SQSBatchResult result = sqsProxy.deleteMessages(Lists.newArrayList(MESSAGE1, MESSAGE2));
+
+        ArgumentCaptor<DeleteMessageBatchRequest> captor = ArgumentCaptor.forClass(DeleteMessageBatchRequest.class);
+        verify(sqs, times(2)).deleteMessageBatchAsync(captor.capture(), any(AsyncHandler.class));
+        assertThat(captor.getAllValues().get(1).getEntries().get(0).getReceiptHandle(), is("handle2"));
+        assertThat(result, is(new SQSBatchResult(Lists.newArrayList(MESSAGE1, MESSAGE2), Lists.newArrayList())));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void deleteMessages_doesNotRetrySenderFaults() throws Exception {
+        mockDeleteResults(new DeleteMessageBatchResult()
+                .withSuccessful(new DeleteMessageBatchResultEntry().withId("1"))
+                .withFailed(new BatchResultErrorEntry().withId("0").withSenderFault(true).withCode("ReceiptHandleIsInvalid")));
+
+        SQSBatchResult result = sqsProxy.deleteMessages(Lists.newArrayList(MESSAGE1, MESSAGE2));
+
+        verify(sqs).deleteMessageBatchAsync(any(DeleteMessageBatchRequest.class), any(AsyncHandler.class));
+        assertThat(result, is(new SQSBatchResult(Lists.newArrayList(MESSAGE2), Lists.newArrayList(MESSAGE1))));
+    }
+
+    @Test(timeout = 10000)
+    @SuppressWarnings("unchecked")
+    public void deleteMessages_givesUpAfterMaxAttempts() throws Exception {
+        mockDeleteResults(new DeleteMessageBatchResult()
+                .withFailed(new BatchResultErrorEntry().withId("0").withSenderFault(false).withCode("InternalError")));
+
+        SQSBatchResult result = sqsProxy.deleteMessages(Lists.newArrayList(MESSAGE1));
+
+        verify(sqs, times(SQSProxy.MAX_BATCH_ATTEMPTS)).deleteMessageBatchAsync(any(DeleteMessageBatchRequest.class), any(AsyncHandler.class));
+        assertThat(result, is(new SQSBatchResult(Lists.newArrayList(), Lists.newArrayList(MESSAGE1))));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    @SuppressWarnings("unchecked")
+    public void retryMessagesAsync_error() throws Exception {
+        when(sqs.changeMessageVisibilityBatchAsync(any(ChangeMessageVisibilityBatchRequest.class), any(AsyncHandler.class))).thenAnswer(invocation -> {
+            AsyncHandler<ChangeMessageVisibilityBatchRequest, ChangeMessageVisibilityBatchResult> handler = (AsyncHandler<ChangeMessageVisibilityBatchRequest, ChangeMessageVisibilityBatchResult>) invocation.getArguments()[1];
+            handler.onError(new IllegalStateException());
+            return null;
+        });
+
+        FutureUtil.join(sqsProxy.retryMessagesAsync(Lists.newArrayList(new RetryMessageRequest(MESSAGE1, 30))));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void retryMessages() throws Exception {
+        when(sqs.changeMessageVisibilityBatchAsync(any(ChangeMessageVisibilityBatchRequest.class), any(AsyncHandler.class))).thenAnswer(invocation -> {
+            ChangeMessageVisibilityBatchRequest request = (ChangeMessageVisibilityBatchRequest) invocation.getArguments()[0];
+            AsyncHandler<ChangeMessageVisibilityBatchRequest, ChangeMessageVisibilityBatchResult> handler = (AsyncHandler<ChangeMessageVisibilityBatchRequest, ChangeMessageVisibilityBatchResult>) invocation.getArguments()[1];
+            handler.onSuccess(request, new ChangeMessageVisibilityBatchResult());
+            return null;
+        });
+
+        SQSBatchResult result = sqsProxy.retryMessages(Lists.newArrayList(new RetryMessageRequest(MESSAGE1, 30)));
+
+        verify(sqs).changeMessageVisibilityBatchAsync(eq(new ChangeMessageVisibilityBatchRequest(QUEUE_URL, Lists.newArrayList(
+                new ChangeMessageVisibilityBatchRequestEntry()
+                        .withId("0")
+                        .withReceiptHandle("handle1")
+                        .withVisibilityTimeout(30)))), any(AsyncHandler.class));
+        assertThat(result.getSucceeded(), is(Lists.newArrayList(MESSAGE1)));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void mockDeleteResults(DeleteMessageBatchResult first, DeleteMessageBatchResult... rest) {
+        List<DeleteMessageBatchResult> results = Lists.asList(first, rest);
+        int[] call = {0};
+        when(sqs.deleteMessageBatchAsync(any(DeleteMessageBatchRequest.class), any(AsyncHandler.class))).thenAnswer(invocation -> {
+            DeleteMessageBatchRequest request = (DeleteMessageBatchRequest) invocation.getArguments()[0];
+            AsyncHandler<DeleteMessageBatchRequest, DeleteMessageBatchResult> handler = (AsyncHandler<DeleteMessageBatchRequest, DeleteMessageBatchResult>) invocation.getArguments()[1];
+            handler.onSuccess(request, results.get(Math.min(call[0]++, results.size() - 1)));
+            return null;
+        });
+    }
+}
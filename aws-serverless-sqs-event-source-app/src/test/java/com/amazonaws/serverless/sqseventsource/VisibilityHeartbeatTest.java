@@ -0,0 +1,140 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.sqs.model.Message;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class VisibilityHeartbeatTest {
+    private static final int VISIBILITY_TIMEOUT_IN_SECONDS = 30;
+
+    @Mock
+    private SQSProxy sqsProxy;
+    @Mock
+    private ScheduledExecutorService scheduler;
+    @Mock
+    private ScheduledFuture<?> future;
+
+    private VisibilityHeartbeat heartbeat;
+
+    @Before
+    public void setup() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        when(scheduler.scheduleAtFixedRate(any(), anyLong(), anyLong(), any())).thenAnswer(invocation -> future);
+        when(sqsProxy.retryMessages(any())).thenAnswer(invocation -> new SQSBatchResult(
+                Lists.transform((List<RetryMessageRequest>) invocation.getArguments()[0], RetryMessageRequest::getMessage),
+                Collections.emptyList()));
+        heartbeat = new VisibilityHeartbeat(sqsProxy, scheduler, VISIBILITY_TIMEOUT_IN_SECONDS);
+    }
+
+    @Test
+    public void start_extendsEveryHalfVisibilityTimeout() throws Exception {
+        Message m1 = message("1");
+        Message m2 = message("2");
+
+        heartbeat.start(Lists.newArrayList(m1, m2));
+        Runnable beat = scheduledBeat();
+        beat.run();
+
+        verify(sqsProxy).retryMessages(Lists.newArrayList(
+                new RetryMessageRequest(m1, VISIBILITY_TIMEOUT_IN_SECONDS),
+                new RetryMessageRequest(m2, VISIBILITY_TIMEOUT_IN_SECONDS)));
+    }
+
+    @Test
+    public void release_stopsExtendingReleasedMessages() throws Exception {
+        Message m1 = message("1");
+        Message m2 = message("2");
+
+        VisibilityHeartbeat.Extension extension = heartbeat.start(Lists.newArrayList(m1, m2));
+        Runnable beat = scheduledBeat();
+        extension.release(Lists.newArrayList(m1));
+        beat.run();
+
+        verify(sqsProxy).retryMessages(Lists.newArrayList(new RetryMessageRequest(m2, VISIBILITY_TIMEOUT_IN_SECONDS)));
+        verify(future, never()).cancel(anyBoolean());
+
+        extension.release(Lists.newArrayList(m2));
+        beat.run();
+
+        verify(future).cancel(false);
+        verify(sqsProxy, times(1)).retryMessages(any());
+    }
+
+    @Test
+    public void releaseAll() throws Exception {
+        VisibilityHeartbeat.Extension extension = heartbeat.start(Lists.newArrayList(message("1"), message("2")));
+        Runnable beat = scheduledBeat();
+        extension.releaseAll();
+        beat.run();
+
+        verify(future).cancel(false);
+        verify(sqsProxy, never()).retryMessages(any());
+    }
+
+    @Test
+    public void extend_givesUpOnFailedMessages() throws Exception {
+        Message m1 = message("1");
+        Message m2 = message("2");
+        doReturn(new SQSBatchResult(Lists.newArrayList(m2), Lists.newArrayList(m1))).when(sqsProxy).retryMessages(any());
+
+        heartbeat.start(Lists.newArrayList(m1, m2));
+        Runnable beat = scheduledBeat();
+        beat.run();
+        beat.run();
+
+        verify(sqsProxy).retryMessages(Lists.newArrayList(new RetryMessageRequest(m2, VISIBILITY_TIMEOUT_IN_SECONDS)));
+    }
+
+    @Test
+    public void extend_keepsBeatingAfterException() throws Exception {
+        Message m1 = message("1");
+        doThrow(new IllegalStateException()).when(sqsProxy).retryMessages(any());
+
+        heartbeat.start(Lists.newArrayList(m1));
+        Runnable beat = scheduledBeat();
+        beat.run();
+        beat.run();
+
+        verify(sqsProxy, times(2)).retryMessages(Lists.newArrayList(new RetryMessageRequest(m1, VISIBILITY_TIMEOUT_IN_SECONDS)));
+        verify(future, never()).cancel(anyBoolean());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_invalidVisibilityTimeout() throws Exception {
+        new VisibilityHeartbeat(sqsProxy, 1);
+    }
+
+    private Runnable scheduledBeat() {
+        ArgumentCaptor<Runnable> beat = ArgumentCaptor.forClass(Runnable.class);
+        long periodInMillis = TimeUnit.SECONDS.toMillis(VISIBILITY_TIMEOUT_IN_SECONDS) / 2;
+        verify(scheduler).scheduleAtFixedRate(beat.capture(), eq(periodInMillis), eq(periodInMillis), eq(TimeUnit.MILLISECONDS));
+        return beat.getValue();
+    }
+
+    private static Message message(final String messageId) {
+        return new Message().withMessageId(messageId).withReceiptHandle("handle-" + messageId);
+    }
+}
@@ -0,0 +1,43 @@
+package com.amazonaws.serverless.sqseventsource.dagger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Collections;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+public class QueueConfigTest {
+    private static final String QUEUE_URL_1 = "https://sqs.us-east-1.amazonaws.com/123456789012/queue1";
+    private static final String QUEUE_URL_2 = "https://sqs.us-east-1.amazonaws.com/123456789012/queue2";
+
+    @Test
+    public void parseList() throws Exception {
+        assertThat(QueueConfig.parseList(QUEUE_URL_1 + ",processor1,3; " + QUEUE_URL_2 + " , processor2;"), is(Lists.newArrayList(
+                new QueueConfig(QUEUE_URL_1, "processor1", 3),
+                new QueueConfig(QUEUE_URL_2, "processor2", 1))));
+    }
+
+    @Test
+    public void parseList_empty() throws Exception {
+        assertThat(QueueConfig.parseList(null), is(Collections.emptyList()));
+        assertThat(QueueConfig.parseList(""), is(Collections.emptyList()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseList_missingFunctionName() throws Exception {
+        QueueConfig.parseList(QUEUE_URL_1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseList_nonPositiveWeight() throws Exception {
+        QueueConfig.parseList(QUEUE_URL_1 + ",processor1,0");
+    }
+
+    @Test
+    public void getQueueName() throws Exception {
+        assertThat(new QueueConfig(QUEUE_URL_1, "processor1", 1).getQueueName(), is("queue1"));
+    }
+}
@@ -0,0 +1,43 @@
+package com.amazonaws.serverless.sqseventsource.dagger;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.util.Collections;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+public class TierConfigTest {
+    private static final String QUEUE_URL_1 = "https://sqs.us-east-1.amazonaws.com/123456789012/normal";
+    private static final String QUEUE_URL_2 = "https://sqs.us-east-1.amazonaws.com/123456789012/bulk";
+
+    @Test
+    public void parseList() throws Exception {
+        assertThat(TierConfig.parseList(QUEUE_URL_1 + ",20; " + QUEUE_URL_2), is(Lists.newArrayList(
+                new TierConfig(QUEUE_URL_1, 20),
+                new TierConfig(QUEUE_URL_2, TierConfig.DEFAULT_MIN_SHARE_PERCENT))));
+    }
+
+    @Test
+    public void parseList_empty() throws Exception {
+        assertThat(TierConfig.parseList(null), is(Collections.emptyList()));
+        assertThat(TierConfig.parseList(" ; "), is(Collections.emptyList()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseList_shareOutOfRange() throws Exception {
+        TierConfig.parseList(QUEUE_URL_1 + ",100");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseList_sharesAddUpToAll() throws Exception {
+        TierConfig.parseList(QUEUE_URL_1 + ",60;" + QUEUE_URL_2 + ",40");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parseList_tooManyFields() throws Exception {
+        TierConfig.parseList(QUEUE_URL_1 + ",20,processor");
+    }
+}
@@ -0,0 +1,57 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageResult;
+import com.amazonaws.services.sqs.model.Message;
+
+/**
+ * Test data shared by the benchmarks.
+ */
+public final class BenchmarkMessages {
+    private BenchmarkMessages() {
+    }
+
+    /**
+     * Builds messages whose bodies are JSON events of roughly the given size, with the usual SQS system attributes.
+     *
+     * @param count Number of messages.
+     * @param bodySize Approximate body size in bytes.
+     * @return Messages.
+     */
+    public static List<Message> create(final int count, final int bodySize) {
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            StringBuilder body = new StringBuilder(bodySize + 64)
+                    .append("{\"eventId\":\"").append(i).append("\",\"payload\":\"");
+            while (body.length() < bodySize - 2) {
+                body.append((char) ('a' + body.length() % 26));
+            }
+            body.append("\"}");
+            messages.add(new Message()
+                    .withMessageId(String.format("%08d-0000-4000-8000-000000000000", i))
+                    .withReceiptHandle("AQEB" + i + "receipt-handle-padding-to-a-realistic-length-of-a-few-hundred-bytes")
+                    .withMD5OfBody("0123456789abcdef0123456789abcdef")
+                    .withBody(body.toString())
+                    .addAttributesEntry("ApproximateReceiveCount", "1")
+                    .addAttributesEntry("SentTimestamp", "1530000000000")
+                    .addAttributesEntry("ApproximateFirstReceiveTimestamp", "1530000000001"));
+        }
+        return messages;
+    }
+
+    /**
+     * @return One result per message. Every tenth message is retried, the rest succeed.
+     */
+    public static List<SQSMessageResult> results(final List<Message> messages) {
+        List<SQSMessageResult> results = new ArrayList<>(messages.size());
+        for (int i = 0; i < messages.size(); i++) {
+            String messageId = messages.get(i).getMessageId();
+            results.add(i % 10 == 9
+                    ? new SQSMessageResult(messageId, SQSMessageResult.Status.RETRY, 30)
+                    : new SQSMessageResult(messageId, SQSMessageResult.Status.SUCCESS));
+        }
+        return results;
+    }
+}
@@ -0,0 +1,100 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessorRequest;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessorResponse;
+import com.amazonaws.services.lambda.AbstractAWSLambda;
+import com.amazonaws.services.sqs.AbstractAmazonSQSAsync;
+import com.amazonaws.services.sqs.model.Message;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Dispatches a batch through {@link MessageDispatcher} with the processor and queue stubbed out, which measures the poller's
+ * own work per batch: payload size checks, result grouping and building the acks.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageDispatcherBenchmark {
+    @Param({"1", "10", "100"})
+    private int batchSize;
+
+    @Param({"256", "4096"})
+    private int bodySize;
+
+    private List<Message> messages;
+    private MessageDispatcher dispatcher;
+
+    @Setup
+    public void setup() {
+        messages = BenchmarkMessages.create(batchSize, bodySize);
+        SQSMessageProcessorResponse response = new SQSMessageProcessorResponse(BenchmarkMessages.results(messages));
+        dispatcher = MessageDispatcher.builder()
+                .sqsProxy(new StubSQSProxy())
+                .messageProcessorProxy(new StubMessageProcessorProxy(response))
+                .payloadBatcher(new PayloadBatcher())
+                .build();
+    }
+
+    @Benchmark
+    public MessageDispatcher dispatch() {
+        dispatcher.dispatch(messages);
+        return dispatcher;
+    }
+
+    /**
+     * Acks every message immediately.
+     */
+    private static final class StubSQSProxy extends SQSProxy {
+        StubSQSProxy() {
+            super(new AbstractAmazonSQSAsync() {
+            }, "https://sqs.us-east-1.amazonaws.com/123456789012/benchmark");
+        }
+
+        @Override
+        public CompletableFuture<SQSBatchResult> deleteMessagesAsync(final List<Message> messages) {
+            return CompletableFuture.completedFuture(new SQSBatchResult(messages, Collections.emptyList()));
+        }
+
+        @Override
+        public CompletableFuture<SQSBatchResult> retryMessagesAsync(final List<RetryMessageRequest> retryRequests) {
+            return CompletableFuture.completedFuture(SQSBatchResult.EMPTY);
+        }
+    }
+
+    /**
+     * Returns the same response for every batch.
+     */
+    private static final class StubMessageProcessorProxy extends MessageProcessorProxy {
+        private final SQSMessageProcessorResponse response;
+
+        StubMessageProcessorProxy(final SQSMessageProcessorResponse response) {
+            super("benchmark", new AbstractAWSLambda() {
+            });
+            this.response = response;
+        }
+
+        @Override
+        public SQSMessageProcessorResponse invoke(final SQSMessageProcessorRequest request) {
+            return response;
+        }
+    }
+}
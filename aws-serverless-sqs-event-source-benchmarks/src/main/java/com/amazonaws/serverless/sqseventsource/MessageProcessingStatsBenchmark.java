@@ -0,0 +1,63 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures recording samples into, and estimating capacity from, a full {@link MessageProcessingStats} window. Both run once
+ * per batch on the dispatch path.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MessageProcessingStatsBenchmark {
+    private static final int SAMPLE_COUNT = 1024;
+
+    @Param({"16", "64", "256"})
+    private int windowSize;
+
+    private final Duration[] durations = new Duration[SAMPLE_COUNT];
+    private final int[] sizes = new int[SAMPLE_COUNT];
+    private MessageProcessingStats stats;
+    private int next;
+
+    @Setup
+    public void setup() {
+        // batches of 1 to 10 messages taking 100ms plus 20ms per message, with some jitter
+        for (int i = 0; i < SAMPLE_COUNT; i++) {
+            sizes[i] = i % 10 + 1;
+            durations[i] = Duration.ofMillis(100 + 20 * sizes[i] + (i * 31) % 50);
+        }
+        stats = new MessageProcessingStats(windowSize);
+        for (int i = 0; i < windowSize; i++) {
+            stats.record(durations[i % SAMPLE_COUNT], sizes[i % SAMPLE_COUNT]);
+        }
+    }
+
+    @Benchmark
+    public MessageProcessingStats record() {
+        int i = next++ & (SAMPLE_COUNT - 1);
+        stats.record(durations[i], sizes[i]);
+        return stats;
+    }
+
+    @Benchmark
+    public int getEstimatedCapacity() {
+        return stats.getEstimatedCapacity(Duration.ofSeconds(30));
+    }
+}
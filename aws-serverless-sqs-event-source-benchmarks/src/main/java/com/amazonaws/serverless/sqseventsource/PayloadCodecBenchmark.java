@@ -0,0 +1,82 @@
+package com.amazonaws.serverless.sqseventsource;
+
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.serverless.sqseventsource.messageprocessor.JacksonCodec;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.JsonCodec;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessorRequest;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.SQSMessageProcessorResponse;
+import com.amazonaws.serverless.sqseventsource.messageprocessor.WireFormat;
+import com.amazonaws.services.lambda.AbstractAWSLambda;
+import com.amazonaws.services.lambda.model.InvokeRequest;
+import com.amazonaws.services.lambda.model.InvokeResult;
+import com.amazonaws.services.sqs.model.Message;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Round trips a batch through {@link MessageProcessorProxy}: encoding the request and decoding the response, with the lambda
+ * client stubbed out. Covers both codecs and both request wire formats.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PayloadCodecBenchmark {
+    @Param({"gson", "jackson"})
+    private String codec;
+
+    @Param({"1", "2"})
+    private int wireFormatVersion;
+
+    @Param({"10", "100"})
+    private int batchSize;
+
+    @Param({"256", "4096"})
+    private int bodySize;
+
+    private SQSMessageProcessorRequest request;
+    private MessageProcessorProxy proxy;
+
+    @Setup
+    public void setup() throws Exception {
+        JsonCodec jsonCodec = "jackson".equals(codec) ? JacksonCodec.INSTANCE : GsonCodec.INSTANCE;
+        List<Message> messages = BenchmarkMessages.create(batchSize, bodySize);
+        request = new SQSMessageProcessorRequest(messages);
+
+        Integer processorVersion = wireFormatVersion >= WireFormat.COMPACT_VERSION ? wireFormatVersion : null;
+        StringWriter response = new StringWriter();
+        jsonCodec.write(new SQSMessageProcessorResponse(BenchmarkMessages.results(messages), processorVersion), response);
+        ByteBuffer payload = ByteBuffer.wrap(response.toString().getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+
+        proxy = new MessageProcessorProxy("benchmark", new AbstractAWSLambda() {
+            @Override
+            public InvokeResult invoke(final InvokeRequest invokeRequest) {
+                return new InvokeResult().withPayload(payload.duplicate());
+            }
+        }, false, jsonCodec);
+        // the first response tells the proxy which wire format the processor supports
+        proxy.invoke(request);
+    }
+
+    @Benchmark
+    public SQSMessageProcessorResponse roundTrip() throws Exception {
+        return proxy.invoke(request);
+    }
+}
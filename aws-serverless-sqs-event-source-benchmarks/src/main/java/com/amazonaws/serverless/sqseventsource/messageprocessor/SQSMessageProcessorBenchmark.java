@@ -0,0 +1,79 @@
+package com.amazonaws.serverless.sqseventsource.messageprocessor;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.amazonaws.serverless.sqseventsource.BenchmarkMessages;
+import com.amazonaws.services.sqs.model.Message;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Processes a request with {@link SQSMessageProcessor}, binding each JSON body with {@link SQSMessageDeserializers#json(Class)}
+ * and handing it to a trivial delegate. Measures the library's per-message overhead.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SQSMessageProcessorBenchmark {
+    @Param({"1", "10", "100"})
+    private int batchSize;
+
+    @Param({"256", "4096"})
+    private int bodySize;
+
+    private final LongAdder payloadLength = new LongAdder();
+    private SQSMessageProcessorRequest request;
+    private SQSMessageProcessor<Event> messageProcessor;
+
+    @Setup
+    public void setup() {
+        List<Message> messages = BenchmarkMessages.create(batchSize, bodySize);
+        request = new SQSMessageProcessorRequest(messages);
+        messageProcessor = new SQSMessageProcessor<>(SQSMessageDeserializers.json(Event.class),
+                event -> payloadLength.add(event.getPayload().length()));
+    }
+
+    @Benchmark
+    public SQSMessageProcessorResponse apply() {
+        return messageProcessor.apply(request);
+    }
+
+    /**
+     * Body of the messages built by {@link BenchmarkMessages}.
+     */
+    public static class Event {
+        private String eventId;
+        private String payload;
+
+        public String getEventId() {
+            return eventId;
+        }
+
+        public void setEventId(final String eventId) {
+            this.eventId = eventId;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+
+        public void setPayload(final String payload) {
+            this.payload = payload;
+        }
+    }
+}
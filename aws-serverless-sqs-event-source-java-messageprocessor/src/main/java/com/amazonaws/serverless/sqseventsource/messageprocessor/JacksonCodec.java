@@ -0,0 +1,74 @@
+package com.amazonaws.serverless.sqseventsource.messageprocessor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * {@link JsonCodec} backed by Jackson, which the AWS SDK already depends on.
+ * <p>
+ * Readers and writers are built once per type and reused, so the reflective binding for a type is only resolved the first
+ * time it is used. Immutable types without a default constructor, like {@link SQSMessageResult}, are bound through mix-ins
+ * that declare their creators, so the types themselves stay free of Jackson annotations.
+ */
+public final class JacksonCodec implements JsonCodec {
+    public static final JacksonCodec INSTANCE = new JacksonCodec(new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false)
+            .configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false)
+            .setSerializationInclusion(JsonInclude.Include.NON_NULL));
+
+    private final ObjectMapper mapper;
+    private final Map<Type, ObjectReader> readers = new ConcurrentHashMap<>();
+    private final Map<Class<?>, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+    /**
+     * @param mapper Configured mapper. The mix-ins for the message processor types are added to it. Must not be reconfigured
+     *               afterwards.
+     */
+    public JacksonCodec(final ObjectMapper mapper) {
+        this.mapper = mapper.addMixIn(SQSMessageResult.class, SQSMessageResultMixIn.class);
+    }
+
+    @Override
+    public <T> T read(final Reader reader, final Type type) throws IOException {
+        return readerFor(type).readValue(reader);
+    }
+
+    @Override
+    public void write(final Object value, final Writer writer) throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        writers.computeIfAbsent(value.getClass(), mapper::writerFor).writeValue(writer, value);
+    }
+
+    /**
+     * @return Reader for the given type, built on first use.
+     */
+    ObjectReader readerFor(final Type type) {
+        return readers.computeIfAbsent(type, t -> mapper.readerFor(mapper.getTypeFactory().constructType(t)));
+    }
+
+    abstract static class SQSMessageResultMixIn {
+        @JsonCreator
+        SQSMessageResultMixIn(@JsonProperty("messageId") final String messageId,
+                              @JsonProperty("status") final SQSMessageResult.Status status,
+                              @JsonProperty("retryDelayInSeconds") final Integer retryDelayInSeconds) {
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.amazonaws.serverless.sqseventsource.messageprocessor;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+
+/**
+ * Reads and writes JSON. Used by message processors to deserialize message bodies and by the SQS poller to encode invoke
+ * payloads, so either side can plug in the JSON library it prefers.
+ * <p>
+ * Implementations must be thread-safe.
+ */
+public interface JsonCodec {
+    /**
+     * Reads a value of the given type.
+     *
+     * @param reader JSON source. Not closed.
+     * @param type Type to read, e.g. a class or a parameterized type.
+     * @param <T> type of the result.
+     * @return Value read.
+     * @throws IOException If the JSON can't be read or doesn't match the type.
+     */
+    <T> T read(Reader reader, Type type) throws IOException;
+
+    /**
+     * Writes a value. <code>null</code> fields are left out.
+     *
+     * @param value Value to write.
+     * @param writer JSON destination. Not closed.
+     * @throws IOException If writing fails.
+     */
+    void write(Object value, Writer writer) throws IOException;
+}
@@ -0,0 +1,69 @@
+package com.amazonaws.serverless.sqseventsource.messageprocessor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.amazonaws.services.sqs.model.Message;
+
+/**
+ * Helpers for keeping FIFO queue message groups in order.
+ */
+public final class MessageGroups {
+    /**
+     * Name of the system attribute holding a FIFO message's group. It is only returned if requested when receiving.
+     */
+    public static final String MESSAGE_GROUP_ID_ATTRIBUTE = "MessageGroupId";
+
+    private MessageGroups() {
+    }
+
+    /**
+     * @return The message's group id, or <code>null</code> if it has none.
+     */
+    public static String getGroupId(final Message message) {
+        return message.getAttributes() == null ? null : message.getAttributes().get(MESSAGE_GROUP_ID_ATTRIBUTE);
+    }
+
+    /**
+     * Splits messages into their groups, keeping the order of messages within each group. Messages without a group id
+     * form a group of their own.
+     *
+     * @param messages Messages in the order they were received.
+     * @return Message groups, in the order their first message was received.
+     */
+    public static List<List<Message>> split(final List<Message> messages) {
+        Map<String, List<Message>> groups = new LinkedHashMap<>();
+        List<List<Message>> result = new ArrayList<>();
+        for (Message message : messages) {
+            String groupId = getGroupId(message);
+            if (groupId == null) {
+                List<Message> group = new ArrayList<>();
+                group.add(message);
+                result.add(group);
+                continue;
+            }
+            List<Message> group = groups.get(groupId);
+            if (group == null) {
+                group = new ArrayList<>();
+                groups.put(groupId, group);
+                result.add(group);
+            }
+            group.add(message);
+        }
+        return result;
+    }
+
+    /**
+     * Result for a message that was not processed because an earlier message in its group failed. It shares the failed
+     * message's outcome, so a retried group comes back together and in order.
+     *
+     * @param message Skipped message.
+     * @param failure Result of the first message in the group that failed.
+     * @return Result for the skipped message.
+     */
+    public static SQSMessageResult skippedResult(final Message message, final SQSMessageResult failure) {
+        return new SQSMessageResult(message.getMessageId(), failure.getStatus(), failure.getRetryDelayInSeconds());
+    }
+}
@@ -0,0 +1,132 @@
+package com.amazonaws.serverless.sqseventsource.messageprocessor;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.amazonaws.services.sqs.model.Message;
+
+import lombok.NonNull;
+
+/**
+ * Bounded cache of the messages that were recently processed successfully, used to recognize redeliveries of the same
+ * message. SQS delivers messages at least once, so a message may arrive again, e.g. when the SQSPoller failed to delete it.
+ * <p>
+ * The cache holds at most a fixed number of keys, evicting the least recently added first, and forgets keys after a fixed
+ * time. It only lives as long as the lambda container, so keep the processor using it in a field of the handler to share it
+ * across warm invocations. A redelivery that lands on another container, or arrives after the key was forgotten, is still
+ * processed again.
+ */
+public class ProcessedMessageCache {
+    private final Function<Message, String> keyFunction;
+    private final int maxSize;
+    private final Duration timeToLive;
+    private final Clock clock;
+
+    /**
+     * Keys by the time they expire, least recently added first.
+     */
+    private final LinkedHashMap<String, Instant> expiryByKey = new LinkedHashMap<>();
+
+    ProcessedMessageCache(@NonNull final Function<Message, String> keyFunction, final int maxSize, @NonNull final Duration timeToLive,
+                          @NonNull final Clock clock) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("maxSize must be positive");
+        }
+        if (timeToLive.isNegative() || timeToLive.isZero()) {
+            throw new IllegalArgumentException("timeToLive must be positive");
+        }
+        this.keyFunction = keyFunction;
+        this.maxSize = maxSize;
+        this.timeToLive = timeToLive;
+        this.clock = clock;
+    }
+
+    /**
+     * Creates a cache that recognizes redeliveries by SQS message id.
+     *
+     * @param maxSize Maximum number of message ids to remember.
+     * @param timeToLive Time after which a message id is forgotten.
+     * @return A cache keyed by message id.
+     */
+    public static ProcessedMessageCache byMessageId(final int maxSize, final Duration timeToLive) {
+        return byKey(Message::getMessageId, maxSize, timeToLive);
+    }
+
+    /**
+     * Creates a cache that recognizes duplicates by an idempotency key, e.g. a message attribute or a field of the body set
+     * by the sender. Unlike message ids, such keys also recognize a message that was sent twice.
+     *
+     * @param keyFunction Returns a message's idempotency key, or <code>null</code> if the message should never be treated as
+     *                    a duplicate.
+     * @param maxSize Maximum number of keys to remember.
+     * @param timeToLive Time after which a key is forgotten.
+     * @return A cache keyed by the given function.
+     */
+    public static ProcessedMessageCache byKey(final Function<Message, String> keyFunction, final int maxSize, final Duration timeToLive) {
+        return new ProcessedMessageCache(keyFunction, maxSize, timeToLive, Clock.systemUTC());
+    }
+
+    /**
+     * @return <code>true</code> if the message was processed successfully before and has not been forgotten yet.
+     */
+    public boolean contains(final Message message) {
+        String key = keyFunction.apply(message);
+        if (key == null) {
+            return false;
+        }
+        synchronized (expiryByKey) {
+            Instant expiry = expiryByKey.get(key);
+            if (expiry == null) {
+                return false;
+            }
+            if (!expiry.isAfter(Instant.now(clock))) {
+                expiryByKey.remove(key);
+                return false;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Remembers that the message was processed successfully.
+     */
+    public void add(final Message message) {
+        String key = keyFunction.apply(message);
+        if (key == null) {
+            return;
+        }
+        Instant now = Instant.now(clock);
+        synchronized (expiryByKey) {
+            // re-insert so the key moves to the end of the eviction order
+            expiryByKey.remove(key);
+            expiryByKey.put(key, now.plus(timeToLive));
+            evict(now);
+        }
+    }
+
+    /**
+     * @return Number of keys currently remembered, including expired keys that have not been evicted yet.
+     */
+    public int size() {
+        synchronized (expiryByKey) {
+            return expiryByKey.size();
+        }
+    }
+
+    private void evict(final Instant now) {
+        Iterator<Map.Entry<String, Instant>> entries = expiryByKey.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, Instant> entry = entries.next();
+            // keys are in the order they expire, so past the first live key all keys are live
+            if (expiryByKey.size() <= maxSize && entry.getValue().isAfter(now)) {
+                return;
+            }
+            entries.remove();
+        }
+    }
+}
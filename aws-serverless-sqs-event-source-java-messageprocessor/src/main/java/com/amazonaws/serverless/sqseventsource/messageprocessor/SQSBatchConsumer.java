@@ -0,0 +1,22 @@
+package com.amazonaws.serverless.sqseventsource.messageprocessor;
+
+import java.util.List;
+
+/**
+ * Consumes a whole batch of deserialized messages at once, e.g. to write them to a sink in bulk.
+ *
+ * @param <T> type of the deserialized messages.
+ */
+@FunctionalInterface
+public interface SQSBatchConsumer<T> {
+    /**
+     * Processes a batch of messages.
+     * <p>
+     * Throwing a {@link RetryMessageException} retries the whole batch, any other exception marks every message in it as an
+     * error.
+     *
+     * @param items Deserialized messages, in the order they were received.
+     * @return One outcome per item, in the same order.
+     */
+    List<SQSBatchItemResult> accept(List<T> items);
+}
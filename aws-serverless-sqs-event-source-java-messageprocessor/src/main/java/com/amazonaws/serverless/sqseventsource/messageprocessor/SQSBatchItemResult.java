@@ -0,0 +1,40 @@
+package com.amazonaws.serverless.sqseventsource.messageprocessor;
+
+import lombok.AccessLevel;
+import lombok.AllArgsConstructor;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * Outcome of processing one item of a batch passed to an {@link SQSBatchConsumer}.
+ */
+@Value
+@AllArgsConstructor(access = AccessLevel.PRIVATE)
+public class SQSBatchItemResult {
+    private static final SQSBatchItemResult SUCCESS = new SQSBatchItemResult(SQSMessageResult.Status.SUCCESS, null);
+    private static final SQSBatchItemResult ERROR = new SQSBatchItemResult(SQSMessageResult.Status.ERROR, null);
+
+    @NonNull
+    private final SQSMessageResult.Status status;
+
+    /**
+     * If status is RETRY, this value controls how long the app delays before retrying the message.
+     */
+    private final Integer retryDelayInSeconds;
+
+    public static SQSBatchItemResult success() {
+        return SUCCESS;
+    }
+
+    public static SQSBatchItemResult error() {
+        return ERROR;
+    }
+
+    public static SQSBatchItemResult retry() {
+        return new SQSBatchItemResult(SQSMessageResult.Status.RETRY, null);
+    }
+
+    public static SQSBatchItemResult retry(final int retryDelayInSeconds) {
+        return new SQSBatchItemResult(SQSMessageResult.Status.RETRY, retryDelayInSeconds);
+    }
+}
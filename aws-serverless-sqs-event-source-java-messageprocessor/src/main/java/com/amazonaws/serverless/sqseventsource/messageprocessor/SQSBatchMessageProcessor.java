@@ -0,0 +1,84 @@
+package com.amazonaws.serverless.sqseventsource.messageprocessor;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.amazonaws.services.sqs.model.Message;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Helper class for processing SQS messages in bulk. Messages are deserialized one at a time, so a message that fails to
+ * deserialize only fails itself, and the rest are passed to the delegate as a single batch.
+ *
+ * @param <T> type expected by delegate consumer.
+ */
+@RequiredArgsConstructor
+@Slf4j
+public class SQSBatchMessageProcessor<T> implements Function<SQSMessageProcessorRequest, SQSMessageProcessorResponse> {
+    @NonNull
+    private final SQSMessageDeserializer<T> deserializer;
+    @NonNull
+    private final SQSBatchConsumer<T> delegate;
+
+    @Override
+    public SQSMessageProcessorResponse apply(final SQSMessageProcessorRequest request) {
+        List<Message> messages = WireFormat.decodeMessages(request);
+        Map<String, SQSMessageResult> resultsByMessageId = new LinkedHashMap<>();
+        List<Message> deserializedMessages = new ArrayList<>();
+        List<T> items = new ArrayList<>();
+        for (Message message : messages) {
+            // reserve the message's place so results keep the order messages were received in
+            resultsByMessageId.put(message.getMessageId(), null);
+            try {
+                items.add(deserializer.deserialize(message));
+                deserializedMessages.add(message);
+            } catch (Exception e) {
+                resultsByMessageId.put(message.getMessageId(), failureResult(message, e));
+            }
+        }
+
+        if (!items.isEmpty()) {
+            processBatch(deserializedMessages, items).forEach(r -> resultsByMessageId.put(r.getMessageId(), r));
+        }
+        return new SQSMessageProcessorResponse(new ArrayList<>(resultsByMessageId.values()), WireFormat.SUPPORTED_VERSION);
+    }
+
+    private List<SQSMessageResult> processBatch(final List<Message> messages, final List<T> items) {
+        List<SQSMessageResult> results = new ArrayList<>(messages.size());
+        try {
+            List<SQSBatchItemResult> itemResults = delegate.accept(items);
+            if (itemResults == null || itemResults.size() != items.size()) {
+                throw new IllegalStateException(String.format("Batch delegate returned %s results for %d messages",
+                        itemResults == null ? "no" : itemResults.size(), items.size()));
+            }
+            for (int i = 0; i < messages.size(); i++) {
+                SQSBatchItemResult itemResult = itemResults.get(i);
+                results.add(new SQSMessageResult(messages.get(i).getMessageId(), itemResult.getStatus(), itemResult.getRetryDelayInSeconds()));
+            }
+        } catch (RetryMessageException e) {
+            results.clear();
+            log.info("Retrying batch of {} messages", messages.size(), e);
+            messages.forEach(m -> results.add(new SQSMessageResult(m.getMessageId(), SQSMessageResult.Status.RETRY, e.getRetryDelayInSeconds())));
+        } catch (Exception e) {
+            results.clear();
+            log.error("Unhandled exception while processing batch of {} messages", messages.size(), e);
+            messages.forEach(m -> results.add(new SQSMessageResult(m.getMessageId(), SQSMessageResult.Status.ERROR)));
+        }
+        return results;
+    }
+
+    private SQSMessageResult failureResult(final Message message, final Exception e) {
+        if (e instanceof RetryMessageException) {
+            log.info("Retrying message {}", message, e);
+            return new SQSMessageResult(message.getMessageId(), SQSMessageResult.Status.RETRY, ((RetryMessageException) e).getRetryDelayInSeconds());
+        }
+        log.error("Unhandled exception while deserializing message {}", message, e);
+        return new SQSMessageResult(message.getMessageId(), SQSMessageResult.Status.ERROR);
+    }
+}
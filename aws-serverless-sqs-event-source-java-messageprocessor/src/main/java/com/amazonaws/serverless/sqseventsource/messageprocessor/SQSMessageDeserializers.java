@@ -0,0 +1,106 @@
+package com.amazonaws.serverless.sqseventsource.messageprocessor;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectReader;
+
+/**
+ * Ready-made {@link SQSMessageDeserializer}s. All of them are thread-safe and meant to be created once and reused for every
+ * message, e.g. as a field of the lambda handler.
+ * <ul>
+ * <li>{@link #json(Class)} binds JSON bodies to a class with Jackson. The simplest option for most bodies.</li>
+ * <li>{@link #json(JsonCodec, Type)} does the same with any {@link JsonCodec}.</li>
+ * <li>{@link #streaming(BodyParser)} hands a streaming parser to hand-written parsing code. Fastest for large bodies or
+ * when only a few fields are needed.</li>
+ * <li>{@link #string()} and {@link #bytes()} pass the body through as is.</li>
+ * </ul>
+ */
+public final class SQSMessageDeserializers {
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private SQSMessageDeserializers() {
+    }
+
+    /**
+     * Parses a message body from a streaming parser.
+     *
+     * @param <T> parse result type.
+     */
+    @FunctionalInterface
+    public interface BodyParser<T> {
+        /**
+         * @param parser Parser positioned before the first token of the body.
+         * @return Parsed body.
+         * @throws IOException If the body can't be parsed.
+         */
+        T parse(JsonParser parser) throws IOException;
+    }
+
+    /**
+     * @param type Class to bind message bodies to.
+     * @param <T> deserialize type.
+     * @return Deserializer binding JSON bodies with {@link JacksonCodec#INSTANCE}.
+     */
+    public static <T> SQSMessageDeserializer<T> json(final Class<T> type) {
+        ObjectReader reader = JacksonCodec.INSTANCE.readerFor(type);
+        return message -> {
+            try {
+                return reader.readValue(message.getBody());
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to deserialize message " + message.getMessageId(), e);
+            }
+        };
+    }
+
+    /**
+     * @param codec Codec to read message bodies with.
+     * @param type Type to read message bodies as, e.g. a class or a parameterized type.
+     * @param <T> deserialize type.
+     * @return Deserializer reading JSON bodies with the given codec.
+     */
+    public static <T> SQSMessageDeserializer<T> json(final JsonCodec codec, final Type type) {
+        return message -> {
+            try {
+                return codec.read(new StringReader(message.getBody()), type);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to deserialize message " + message.getMessageId(), e);
+            }
+        };
+    }
+
+    /**
+     * @param bodyParser Parses a body from a streaming parser.
+     * @param <T> deserialize type.
+     * @return Deserializer running the body parser over each message body.
+     */
+    public static <T> SQSMessageDeserializer<T> streaming(final BodyParser<T> bodyParser) {
+        return message -> {
+            try (JsonParser parser = JSON_FACTORY.createParser(message.getBody())) {
+                return bodyParser.parse(parser);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to deserialize message " + message.getMessageId(), e);
+            }
+        };
+    }
+
+    /**
+     * @return Deserializer returning message bodies unchanged.
+     */
+    public static SQSMessageDeserializer<String> string() {
+        return Message::getBody;
+    }
+
+    /**
+     * @return Deserializer returning the UTF-8 bytes of message bodies.
+     */
+    public static SQSMessageDeserializer<byte[]> bytes() {
+        return message -> message.getBody().getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -1,7 +1,16 @@
 package com.amazonaws.serverless.sqseventsource.messageprocessor;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Objects;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -14,30 +23,184 @@ import lombok.extern.slf4j.Slf4j;
 
 /**
  * Helper class for processing SQS messages.
+ * <p>
+ * Messages are processed one at a time unless an executor is given, in which case they are processed concurrently on it and
+ * the delegate must be thread-safe. Either way there is one result per message, in the order the messages were received.
+ * <p>
+ * In FIFO mode, messages of the same message group are processed strictly in order and processing of a group stops at its
+ * first message that does not succeed. The rest of the group is reported with that message's outcome. With an executor,
+ * different groups are processed concurrently.
+ * <p>
+ * If given a {@link ProcessedMessageCache}, messages it already knows as processed are reported as succeeded without being
+ * passed to the delegate again.
  *
  * @param <T> type expected by delegate consumer.
  */
 @RequiredArgsConstructor
 @Slf4j
 public class SQSMessageProcessor<T> implements Function<SQSMessageProcessorRequest, SQSMessageProcessorResponse> {
+    /**
+     * Pools of {@link #parallel(SQSMessageDeserializer, Consumer, int)} processors by parallelism, kept for the life of the
+     * container so processors created per invocation do not each start their own threads.
+     */
+    private static final ConcurrentMap<Integer, ForkJoinPool> POOLS = new ConcurrentHashMap<>();
+
     @NonNull
     private final SQSMessageDeserializer<T> deserializer;
     @NonNull
     private final Consumer<T> delegate;
+    /**
+     * Executor messages are processed on. If <code>null</code>, messages are processed sequentially on the calling thread.
+     */
+    private final Executor executor;
+    /**
+     * If <code>true</code>, message group order is preserved as described above.
+     */
+    private final boolean fifo;
+    /**
+     * Messages that were processed successfully before. If <code>null</code>, every message is passed to the delegate.
+     */
+    private final ProcessedMessageCache processedMessages;
+
+    public SQSMessageProcessor(final SQSMessageDeserializer<T> deserializer, final Consumer<T> delegate) {
+        this(deserializer, delegate, null);
+    }
+
+    public SQSMessageProcessor(final SQSMessageDeserializer<T> deserializer, final Consumer<T> delegate, final Executor executor) {
+        this(deserializer, delegate, executor, false);
+    }
+
+    public SQSMessageProcessor(final SQSMessageDeserializer<T> deserializer, final Consumer<T> delegate, final Executor executor, final boolean fifo) {
+        this(deserializer, delegate, executor, fifo, null);
+    }
+
+    /**
+     * Creates a processor that processes up to the given number of messages at once on a fork-join pool. The pool is the
+     * common pool if it has the given parallelism, otherwise it is shared with other processors of the same parallelism.
+     * Create the processor once per container, e.g. when the handler is constructed, or use
+     * {@link #SQSMessageProcessor(SQSMessageDeserializer, Consumer, Executor)} with an executor you manage yourself.
+     *
+     * @param deserializer Deserializer for message bodies.
+     * @param delegate Thread-safe consumer of deserialized messages.
+     * @param parallelism Number of messages to process at once.
+     * @param <T> type expected by delegate consumer.
+     * @return A parallel message processor.
+     */
+    public static <T> SQSMessageProcessor<T> parallel(final SQSMessageDeserializer<T> deserializer, final Consumer<T> delegate, final int parallelism) {
+        return new SQSMessageProcessor<>(deserializer, delegate, pool(parallelism));
+    }
+
+    static ForkJoinPool pool(final int parallelism) {
+        if (parallelism == ForkJoinPool.getCommonPoolParallelism()) {
+            return ForkJoinPool.commonPool();
+        }
+        return POOLS.computeIfAbsent(parallelism, ForkJoinPool::new);
+    }
+
+    /**
+     * Creates a processor for messages from a FIFO queue.
+     *
+     * @param deserializer Deserializer for message bodies.
+     * @param delegate Consumer of deserialized messages. Must be thread-safe if an executor is given.
+     * @param executor Executor to process different message groups concurrently on, or <code>null</code> to process them
+     *                 one after another.
+     * @param <T> type expected by delegate consumer.
+     * @return A FIFO message processor.
+     */
+    public static <T> SQSMessageProcessor<T> fifo(final SQSMessageDeserializer<T> deserializer, final Consumer<T> delegate, final Executor executor) {
+        return new SQSMessageProcessor<>(deserializer, delegate, executor, true);
+    }
 
     @Override
     public SQSMessageProcessorResponse apply(final SQSMessageProcessorRequest request) {
-        List<SQSMessageResult> messageResults = request.getMessages().stream()
-                .map(this::processMessage)
-                .filter(Objects::nonNull)
+        List<Message> messages = WireFormat.decodeMessages(request);
+        // messages that have to be processed in order are grouped together, everything else is processed on its own
+        List<List<Message>> groups = fifo
+                ? MessageGroups.split(messages)
+                : messages.stream().map(Collections::singletonList).collect(Collectors.toList());
+        List<List<SQSMessageResult>> groupResults = executor == null ? processSequentially(groups) : processInParallel(groups);
+        return new SQSMessageProcessorResponse(inReceiveOrder(messages, groups, groupResults), WireFormat.SUPPORTED_VERSION);
+    }
+
+    private List<List<SQSMessageResult>> processSequentially(final List<List<Message>> groups) {
+        return groups.stream()
+                .map(this::processInOrder)
+                .collect(Collectors.toList());
+    }
+
+    private List<List<SQSMessageResult>> processInParallel(final List<List<Message>> groups) {
+        List<CompletableFuture<List<SQSMessageResult>>> results = groups.stream()
+                .map(group -> CompletableFuture.supplyAsync(() -> processInOrder(group), executor))
+                .collect(Collectors.toList());
+        return results.stream()
+                .map(SQSMessageProcessor::join)
                 .collect(Collectors.toList());
-        return new SQSMessageProcessorResponse(messageResults);
+    }
+
+    /**
+     * Interleaves the results of each group again, so they are in the order the messages were received.
+     */
+    private static List<SQSMessageResult> inReceiveOrder(final List<Message> messages, final List<List<Message>> groups,
+                                                         final List<List<SQSMessageResult>> groupResults) {
+        // by identity, a batch may hold the same message twice if it was received twice
+        Map<Message, SQSMessageResult> resultsByMessage = new IdentityHashMap<>(messages.size());
+        for (int i = 0; i < groups.size(); i++) {
+            List<Message> group = groups.get(i);
+            for (int j = 0; j < group.size(); j++) {
+                resultsByMessage.put(group.get(j), groupResults.get(i).get(j));
+            }
+        }
+        return messages.stream()
+                .map(resultsByMessage::get)
+                .collect(Collectors.toList());
+    }
+
+    private List<SQSMessageResult> processInOrder(final List<Message> group) {
+        List<SQSMessageResult> results = new ArrayList<>(group.size());
+        SQSMessageResult failure = null;
+        for (Message message : group) {
+            if (failure != null) {
+                results.add(MessageGroups.skippedResult(message, failure));
+                continue;
+            }
+            SQSMessageResult result = processMessage(message);
+            if (result.getStatus() != SQSMessageResult.Status.SUCCESS) {
+                failure = result;
+            }
+            results.add(result);
+        }
+        if (failure != null && group.size() > 1) {
+            log.info("Stopped processing message group {} at message {}", MessageGroups.getGroupId(group.get(0)), failure.getMessageId());
+        }
+        return results;
+    }
+
+    /**
+     * Waits for a result. Anything {@link #processMessage(Message)} does not turn into a result is rethrown as it would have
+     * been when processing sequentially.
+     */
+    private static <R> R join(final CompletableFuture<R> result) {
+        try {
+            return result.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
     }
 
     private SQSMessageResult processMessage(final Message message) {
+        if (processedMessages != null && processedMessages.contains(message)) {
+            log.info("Skipping message {}, it was processed before", message.getMessageId());
+            return new SQSMessageResult(message.getMessageId(), SQSMessageResult.Status.SUCCESS);
+        }
         try {
             T body = deserializer.deserialize(message);
             delegate.accept(body);
+            if (processedMessages != null) {
+                processedMessages.add(message);
+            }
             return new SQSMessageResult(message.getMessageId(), SQSMessageResult.Status.SUCCESS);
         } catch (RetryMessageException e) {
             log.info("Retrying message {}", message, e);
@@ -4,17 +4,37 @@ import java.util.List;
 
 import com.amazonaws.services.sqs.model.Message;
 
-import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 /**
  * Object passed from SQS poller to delegate lambda function. Contains a batch of messages to be processed.
+ * <p>
+ * Processors that advertise support for {@link WireFormat#COMPACT_VERSION} may instead receive the batch in the compact
+ * format described in {@link WireFormat}. Use {@link WireFormat#decodeMessages(SQSMessageProcessorRequest)} to read either.
  */
 @Data
-@AllArgsConstructor
 // Default constructor required by Jackson
 @NoArgsConstructor
 public class SQSMessageProcessorRequest {
     private List<Message> messages;
+
+    /**
+     * Wire format version the batch is encoded with. <code>null</code> for the original format.
+     */
+    private Integer version;
+
+    /**
+     * Encoding of {@link #compressedMessages}, if present.
+     */
+    private String encoding;
+
+    /**
+     * Base64 encoded, compressed JSON array of messages. Set instead of {@link #messages} if the batch was compressed.
+     */
+    private String compressedMessages;
+
+    public SQSMessageProcessorRequest(final List<Message> messages) {
+        this.messages = messages;
+    }
 }
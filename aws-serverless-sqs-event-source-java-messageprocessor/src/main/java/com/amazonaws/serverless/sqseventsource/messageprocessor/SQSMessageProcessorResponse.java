@@ -17,4 +17,13 @@ import lombok.NonNull;
 public class SQSMessageProcessorResponse {
     @NonNull
     private List<SQSMessageResult> messageResults;
+
+    /**
+     * Newest request wire format version the processor can decode. <code>null</code> if it only supports the original format.
+     */
+    private Integer wireFormatVersion;
+
+    public SQSMessageProcessorResponse(final List<SQSMessageResult> messageResults) {
+        this(messageResults, null);
+    }
 }
@@ -0,0 +1,64 @@
+package com.amazonaws.serverless.sqseventsource.messageprocessor;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+/**
+ * Request wire formats shared by the SQS poller and message processors.
+ * <ul>
+ * <li>Version 1, the original format: complete SQS messages in {@link SQSMessageProcessorRequest#getMessages()}.</li>
+ * <li>Version 2, the compact format: messages only carry their id, body and non-empty attributes. Large batches may be
+ * sent as a gzip compressed, base64 encoded JSON array in {@link SQSMessageProcessorRequest#getCompressedMessages()}
+ * instead.</li>
+ * </ul>
+ * The poller sends version 1 until a response's {@link SQSMessageProcessorResponse#getWireFormatVersion()} says the
+ * processor supports a newer version, so processors built against older versions of this library keep working.
+ */
+public final class WireFormat {
+    public static final int LEGACY_VERSION = 1;
+    public static final int COMPACT_VERSION = 2;
+    /**
+     * Newest version this library can decode.
+     */
+    public static final int SUPPORTED_VERSION = COMPACT_VERSION;
+    public static final String GZIP_ENCODING = "gzip";
+
+    private static final Type MESSAGE_LIST = new TypeReference<List<Message>>() {
+    }.getType();
+
+    private WireFormat() {
+    }
+
+    /**
+     * Returns the messages in a request, whichever format it was sent in.
+     *
+     * @param request Request received from the poller.
+     * @return Messages to process.
+     */
+    public static List<Message> decodeMessages(final SQSMessageProcessorRequest request) {
+        if (request.getCompressedMessages() == null) {
+            return request.getMessages();
+        }
+        if (!GZIP_ENCODING.equals(request.getEncoding())) {
+            throw new IllegalArgumentException("Unsupported message encoding: " + request.getEncoding());
+        }
+
+        byte[] compressed = Base64.getDecoder().decode(request.getCompressedMessages());
+        try (Reader reader = new InputStreamReader(new GZIPInputStream(new ByteArrayInputStream(compressed)), StandardCharsets.UTF_8)) {
+            return JacksonCodec.INSTANCE.read(reader, MESSAGE_LIST);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to decode compressed messages", e);
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package com.amazonaws.serverless.sqseventsource.messageprocessor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.google.common.base.Strings;
+
+import lombok.Data;
+
+/**
+ * Compares the throughput of the {@link SQSMessageDeserializers} on representative SQS message bodies, against the common
+ * hand-written approach of building a new mapper for every message. Run with <code>mvn exec:java</code> against the test
+ * classpath, e.g.
+ * <code>mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=com.amazonaws.serverless.sqseventsource.messageprocessor.DeserializerBenchmark</code>.
+ */
+public final class DeserializerBenchmark {
+    private static final int MESSAGE_COUNT = 1_000;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int ROUNDS = 20;
+
+    private DeserializerBenchmark() {
+    }
+
+    public static void main(final String[] args) {
+        run("small (~150 bytes)", messages(1));
+        run("large (~16KB)", messages(100));
+    }
+
+    private static void run(final String label, final List<Message> messages) {
+        System.out.printf("%s bodies, %d messages%n", label, messages.size());
+        report("new mapper per message", messages, message -> {
+            try {
+                return new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false)
+                        .readValue(message.getBody(), Event.class);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        report("json(Class)", messages, SQSMessageDeserializers.json(Event.class));
+        report("streaming", messages, SQSMessageDeserializers.streaming(DeserializerBenchmark::parseEvent));
+        report("string", messages, SQSMessageDeserializers.string());
+        report("bytes", messages, SQSMessageDeserializers.bytes());
+    }
+
+    private static void report(final String name, final List<Message> messages, final SQSMessageDeserializer<?> deserializer) {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            deserializeAll(messages, deserializer);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            deserializeAll(messages, deserializer);
+        }
+        long elapsed = System.nanoTime() - start;
+        double messagesPerSecond = (double) ROUNDS * messages.size() / elapsed * TimeUnit.SECONDS.toNanos(1);
+        System.out.printf("  %-24s %,12.0f messages/s%n", name, messagesPerSecond);
+    }
+
+    private static void deserializeAll(final List<Message> messages, final SQSMessageDeserializer<?> deserializer) {
+        for (Message message : messages) {
+            if (deserializer.deserialize(message) == null) {
+                throw new IllegalStateException("Benchmark did no work");
+            }
+        }
+    }
+
+    /**
+     * Event-style bodies: a few scalar fields plus a list of line items, which makes up most of the larger bodies.
+     */
+    private static List<Message> messages(final int itemCount) {
+        List<Message> messages = new ArrayList<>(MESSAGE_COUNT);
+        for (int i = 0; i < MESSAGE_COUNT; i++) {
+            StringBuilder body = new StringBuilder()
+                    .append("{\"eventId\":\"").append(i).append("\",")
+                    .append("\"eventType\":\"OrderPlaced\",")
+                    .append("\"timestamp\":").append(1_500_000_000_000L + i).append(',')
+                    .append("\"customerId\":\"customer-").append(i % 97).append("\",")
+                    .append("\"items\":[");
+            for (int j = 0; j < itemCount; j++) {
+                if (j > 0) {
+                    body.append(',');
+                }
+                body.append("{\"sku\":\"SKU-").append(j).append("\",\"quantity\":").append(j % 5 + 1)
+                        .append(",\"description\":\"").append(Strings.repeat("x", 100)).append("\"}");
+            }
+            body.append("]}");
+            messages.add(new Message().withMessageId(Integer.toString(i)).withBody(body.toString()));
+        }
+        return messages;
+    }
+
+    private static Event parseEvent(final JsonParser parser) throws IOException {
+        Event event = new Event();
+        parser.nextToken();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "eventId":
+                    event.setEventId(parser.getText());
+                    break;
+                case "eventType":
+                    event.setEventType(parser.getText());
+                    break;
+                case "timestamp":
+                    event.setTimestamp(parser.getLongValue());
+                    break;
+                case "customerId":
+                    event.setCustomerId(parser.getText());
+                    break;
+                case "items":
+                    List<Item> items = new ArrayList<>();
+                    while (parser.nextToken() == JsonToken.START_OBJECT) {
+                        items.add(parseItem(parser));
+                    }
+                    event.setItems(items);
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return event;
+    }
+
+    private static Item parseItem(final JsonParser parser) throws IOException {
+        Item item = new Item();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            switch (field) {
+                case "sku":
+                    item.setSku(parser.getText());
+                    break;
+                case "quantity":
+                    item.setQuantity(parser.getIntValue());
+                    break;
+                case "description":
+                    item.setDescription(parser.getText());
+                    break;
+                default:
+                    parser.skipChildren();
+            }
+        }
+        return item;
+    }
+
+    @Data
+    public static class Event {
+        private String eventId;
+        private String eventType;
+        private long timestamp;
+        private String customerId;
+        private List<Item> items;
+    }
+
+    @Data
+    public static class Item {
+        private String sku;
+        private int quantity;
+        private String description;
+    }
+}
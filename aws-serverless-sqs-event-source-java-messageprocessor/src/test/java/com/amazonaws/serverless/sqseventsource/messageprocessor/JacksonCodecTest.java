@@ -0,0 +1,37 @@
+package com.amazonaws.serverless.sqseventsource.messageprocessor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+public class JacksonCodecTest {
+    @Test
+    public void response_roundTrip() throws Exception {
+        SQSMessageProcessorResponse response = new SQSMessageProcessorResponse(Lists.newArrayList(
+                new SQSMessageResult("message1", SQSMessageResult.Status.SUCCESS),
+                new SQSMessageResult("message2", SQSMessageResult.Status.RETRY, 30),
+                new SQSMessageResult("message3", SQSMessageResult.Status.ERROR)), 2);
+
+        StringWriter json = new StringWriter();
+        JacksonCodec.INSTANCE.write(response, json);
+        SQSMessageProcessorResponse read = JacksonCodec.INSTANCE.read(new StringReader(json.toString()), SQSMessageProcessorResponse.class);
+
+        assertThat(read, is(response));
+    }
+
+    @Test
+    public void response_withoutOptionalFields() throws Exception {
+        String json = "{\"messageResults\":[{\"messageId\":\"message1\",\"status\":\"SUCCESS\"}]}";
+
+        SQSMessageProcessorResponse read = JacksonCodec.INSTANCE.read(new StringReader(json), SQSMessageProcessorResponse.class);
+
+        assertThat(read, is(new SQSMessageProcessorResponse(
+                Lists.newArrayList(new SQSMessageResult("message1", SQSMessageResult.Status.SUCCESS)))));
+    }
+}
@@ -0,0 +1,109 @@
+package com.amazonaws.serverless.sqseventsource.messageprocessor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.amazonaws.services.sqs.model.MessageAttributeValue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProcessedMessageCacheTest {
+    private static final Instant NOW = Instant.parse("2018-06-01T10:00:00Z");
+    private static final Duration TTL = Duration.ofMinutes(15);
+
+    private Clock clock;
+    private ProcessedMessageCache cache;
+
+    @Before
+    public void setup() throws Exception {
+        clock = mock(Clock.class);
+        when(clock.instant()).thenReturn(NOW);
+        cache = new ProcessedMessageCache(Message::getMessageId, 2, TTL, clock);
+    }
+
+    @Test
+    public void contains() throws Exception {
+        assertThat(cache.contains(message("1")), is(false));
+
+        cache.add(message("1"));
+        assertThat(cache.contains(message("1")), is(true));
+        assertThat(cache.contains(message("2")), is(false));
+    }
+
+    @Test
+    public void add_evictsLeastRecentlyAdded() throws Exception {
+        cache.add(message("1"));
+        cache.add(message("2"));
+        cache.add(message("1"));
+        cache.add(message("3"));
+
+        assertThat(cache.size(), is(2));
+        assertThat(cache.contains(message("1")), is(true));
+        assertThat(cache.contains(message("2")), is(false));
+        assertThat(cache.contains(message("3")), is(true));
+    }
+
+    @Test
+    public void contains_forgetsExpiredKeys() throws Exception {
+        cache.add(message("1"));
+
+        when(clock.instant()).thenReturn(NOW.plus(TTL).minusMillis(1));
+        assertThat(cache.contains(message("1")), is(true));
+
+        when(clock.instant()).thenReturn(NOW.plus(TTL));
+        assertThat(cache.contains(message("1")), is(false));
+        assertThat(cache.size(), is(0));
+    }
+
+    @Test
+    public void add_evictsExpiredKeys() throws Exception {
+        cache.add(message("1"));
+
+        when(clock.instant()).thenReturn(NOW.plus(TTL));
+        cache.add(message("2"));
+
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test
+    public void byKey() throws Exception {
+        cache = new ProcessedMessageCache(m -> m.getMessageAttributes().containsKey("idempotencyKey")
+                ? m.getMessageAttributes().get("idempotencyKey").getStringValue()
+                : null, 2, TTL, clock);
+
+        cache.add(message("1").addMessageAttributesEntry("idempotencyKey", stringAttribute("order-42")));
+        // the same message sent twice has a new message id but the same key
+        assertThat(cache.contains(message("2").addMessageAttributesEntry("idempotencyKey", stringAttribute("order-42"))), is(true));
+
+        // messages without a key are never duplicates
+        cache.add(message("3"));
+        assertThat(cache.contains(message("3")), is(false));
+        assertThat(cache.size(), is(1));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_invalidMaxSize() throws Exception {
+        new ProcessedMessageCache(Message::getMessageId, 0, TTL, clock);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructor_invalidTimeToLive() throws Exception {
+        new ProcessedMessageCache(Message::getMessageId, 2, Duration.ZERO, clock);
+    }
+
+    private static Message message(final String messageId) {
+        return new Message().withMessageId(messageId);
+    }
+
+    private static MessageAttributeValue stringAttribute(final String value) {
+        return new MessageAttributeValue().withDataType("String").withStringValue(value);
+    }
+}
@@ -0,0 +1,125 @@
+package com.amazonaws.serverless.sqseventsource.messageprocessor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import com.amazonaws.services.sqs.model.Message;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+public class SQSBatchMessageProcessorTest {
+    private static final Message M1 = new Message().withMessageId("1").withBody("first");
+    private static final Message M2 = new Message().withMessageId("2").withBody("second");
+    private static final Message M3 = new Message().withMessageId("3").withBody("third");
+    private static final SQSMessageProcessorRequest REQUEST = new SQSMessageProcessorRequest(Lists.newArrayList(M1, M2, M3));
+
+    @Mock
+    private SQSBatchConsumer<String> delegate;
+
+    private SQSBatchMessageProcessor<String> messageProcessor;
+
+    @Before
+    public void setup() throws Exception {
+        MockitoAnnotations.initMocks(this);
+        messageProcessor = new SQSBatchMessageProcessor<>(Message::getBody, delegate);
+    }
+
+    @Test
+    public void apply() throws Exception {
+        when(delegate.accept(Lists.newArrayList("first", "second", "third"))).thenReturn(Lists.newArrayList(
+                SQSBatchItemResult.success(),
+                SQSBatchItemResult.retry(60),
+                SQSBatchItemResult.error()));
+
+        SQSMessageProcessorResponse response = messageProcessor.apply(REQUEST);
+
+        assertThat(response, is(expected(
+                new SQSMessageResult("1", SQSMessageResult.Status.SUCCESS),
+                new SQSMessageResult("2", SQSMessageResult.Status.RETRY, 60),
+                new SQSMessageResult("3", SQSMessageResult.Status.ERROR))));
+    }
+
+    @Test
+    public void apply_deserializationFailuresIsolated() throws Exception {
+        messageProcessor = new SQSBatchMessageProcessor<>(message -> {
+            if (message.getMessageId().equals("1")) {
+                throw new IllegalArgumentException("not json");
+            }
+            if (message.getMessageId().equals("3")) {
+                throw new RetryMessageException("schema not available yet").withRetryDelayInSeconds(30);
+            }
+            return message.getBody();
+        }, delegate);
+        when(delegate.accept(Lists.newArrayList("second"))).thenReturn(Lists.newArrayList(SQSBatchItemResult.success()));
+
+        SQSMessageProcessorResponse response = messageProcessor.apply(REQUEST);
+
+        assertThat(response, is(expected(
+                new SQSMessageResult("1", SQSMessageResult.Status.ERROR),
+                new SQSMessageResult("2", SQSMessageResult.Status.SUCCESS),
+                new SQSMessageResult("3", SQSMessageResult.Status.RETRY, 30))));
+    }
+
+    @Test
+    public void apply_nothingDeserialized() throws Exception {
+        messageProcessor = new SQSBatchMessageProcessor<>(message -> {
+            throw new IllegalArgumentException("not json");
+        }, delegate);
+
+        messageProcessor.apply(REQUEST);
+
+        verify(delegate, never()).accept(any());
+    }
+
+    @Test
+    public void apply_batchRetried() throws Exception {
+        when(delegate.accept(any())).thenThrow(new RetryMessageException("sink throttled").withRetryDelayInSeconds(5));
+
+        SQSMessageProcessorResponse response = messageProcessor.apply(REQUEST);
+
+        assertThat(response, is(expected(
+                new SQSMessageResult("1", SQSMessageResult.Status.RETRY, 5),
+                new SQSMessageResult("2", SQSMessageResult.Status.RETRY, 5),
+                new SQSMessageResult("3", SQSMessageResult.Status.RETRY, 5))));
+    }
+
+    @Test
+    public void apply_batchFailed() throws Exception {
+        when(delegate.accept(any())).thenThrow(new IllegalStateException());
+
+        SQSMessageProcessorResponse response = messageProcessor.apply(REQUEST);
+
+        assertThat(response, is(expected(
+                new SQSMessageResult("1", SQSMessageResult.Status.ERROR),
+                new SQSMessageResult("2", SQSMessageResult.Status.ERROR),
+                new SQSMessageResult("3", SQSMessageResult.Status.ERROR))));
+    }
+
+    @Test
+    public void apply_wrongNumberOfResults() throws Exception {
+        when(delegate.accept(any())).thenReturn(Lists.newArrayList(SQSBatchItemResult.success()));
+
+        SQSMessageProcessorResponse response = messageProcessor.apply(REQUEST);
+
+        assertThat(response, is(expected(
+                new SQSMessageResult("1", SQSMessageResult.Status.ERROR),
+                new SQSMessageResult("2", SQSMessageResult.Status.ERROR),
+                new SQSMessageResult("3", SQSMessageResult.Status.ERROR))));
+    }
+
+    private static SQSMessageProcessorResponse expected(final SQSMessageResult... results) {
+        List<SQSMessageResult> messageResults = Lists.newArrayList(results);
+        return new SQSMessageProcessorResponse(messageResults, WireFormat.SUPPORTED_VERSION);
+    }
+}
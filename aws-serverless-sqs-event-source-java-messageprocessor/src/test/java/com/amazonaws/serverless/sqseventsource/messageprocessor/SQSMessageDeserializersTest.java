@@ -0,0 +1,93 @@
+package com.amazonaws.serverless.sqseventsource.messageprocessor;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.amazonaws.services.sqs.model.Message;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+
+import com.google.common.collect.Lists;
+
+import org.junit.Test;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+public class SQSMessageDeserializersTest {
+    private static final Message ORDER_MESSAGE = new Message()
+            .withMessageId("1")
+            .withBody("{\"id\":\"order1\",\"quantity\":3,\"note\":\"ignored\"}");
+
+    @Test
+    public void json() throws Exception {
+        assertThat(SQSMessageDeserializers.json(Order.class).deserialize(ORDER_MESSAGE), is(new Order("order1", 3)));
+    }
+
+    @Test
+    public void json_parameterizedType() throws Exception {
+        Message message = new Message().withMessageId("1").withBody("[{\"id\":\"order1\",\"quantity\":3},{\"id\":\"order2\"}]");
+        SQSMessageDeserializer<List<Order>> deserializer = SQSMessageDeserializers.json(JacksonCodec.INSTANCE,
+                new TypeReference<List<Order>>() {
+                }.getType());
+
+        List<Order> expected = Lists.newArrayList(new Order("order1", 3), new Order("order2", 0));
+        assertThat(deserializer.deserialize(message), is(expected));
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void json_malformedBody() throws Exception {
+        SQSMessageDeserializers.json(Order.class).deserialize(new Message().withMessageId("1").withBody("{\"id\":"));
+    }
+
+    @Test
+    public void streaming() throws Exception {
+        SQSMessageDeserializer<Order> deserializer = SQSMessageDeserializers.streaming(SQSMessageDeserializersTest::parseOrder);
+
+        assertThat(deserializer.deserialize(ORDER_MESSAGE), is(new Order("order1", 3)));
+    }
+
+    @Test
+    public void string() throws Exception {
+        assertThat(SQSMessageDeserializers.string().deserialize(ORDER_MESSAGE), is(ORDER_MESSAGE.getBody()));
+    }
+
+    @Test
+    public void bytes() throws Exception {
+        Message message = new Message().withMessageId("1").withBody("caf\u00e9");
+
+        assertThat(SQSMessageDeserializers.bytes().deserialize(message), is("caf\u00e9".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static Order parseOrder(final JsonParser parser) throws IOException {
+        Order order = new Order();
+        parser.nextToken();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            parser.nextToken();
+            if ("id".equals(field)) {
+                order.setId(parser.getText());
+            } else if ("quantity".equals(field)) {
+                order.setQuantity(parser.getIntValue());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return order;
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Order {
+        private String id;
+        private int quantity;
+    }
+}
@@ -1,12 +1,27 @@
 package com.amazonaws.serverless.sqseventsource.messageprocessor;
 
 import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Consumer;
+import java.util.zip.GZIPOutputStream;
 
 import com.amazonaws.services.sqs.model.Message;
 
@@ -61,10 +76,146 @@ public class SQSMessageProcessorTest {
                 new SQSMessageResult("1", SQSMessageResult.Status.SUCCESS),
                 new SQSMessageResult("2", SQSMessageResult.Status.RETRY, 60),
                 new SQSMessageResult("3", SQSMessageResult.Status.ERROR)
-        ));
+        ), WireFormat.SUPPORTED_VERSION);
         assertThat(response, is(expected));
     }
 
+    @Test
+    public void apply_compressedRequest() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (OutputStream out = new GZIPOutputStream(compressed)) {
+            out.write("[{\"messageId\":\"1\",\"body\":\"first\"}]".getBytes(StandardCharsets.UTF_8));
+        }
+        SQSMessageProcessorRequest request = new SQSMessageProcessorRequest();
+        request.setVersion(WireFormat.COMPACT_VERSION);
+        request.setEncoding(WireFormat.GZIP_ENCODING);
+        request.setCompressedMessages(Base64.getEncoder().encodeToString(compressed.toByteArray()));
+
+        SQSMessageProcessorResponse response = messageProcessor.apply(request);
+
+        verify(deserializer).deserialize(new Message().withMessageId("1").withBody("first"));
+        SQSMessageProcessorResponse expected = new SQSMessageProcessorResponse(Lists.newArrayList(
+                new SQSMessageResult("1", SQSMessageResult.Status.SUCCESS)
+        ), WireFormat.SUPPORTED_VERSION);
+        assertThat(response, is(expected));
+    }
+
+    @Test(timeout = 10000)
+    public void apply_parallel() throws Exception {
+        // every message waits until all of them are being processed, so this only finishes if they run concurrently
+        CountDownLatch allStarted = new CountDownLatch(3);
+        Consumer<Foo> concurrentDelegate = foo -> {
+            allStarted.countDown();
+            try {
+                allStarted.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            if (foo.getFoo().equals("2")) {
+                throw new RetryMessageException("try again later...").withRetryDelayInSeconds(60);
+            }
+            if (foo.getFoo().equals("3")) {
+                throw new IllegalStateException();
+            }
+        };
+        messageProcessor = SQSMessageProcessor.parallel(message -> new Foo(message.getBody()), concurrentDelegate, 3);
+
+        Message m1 = new Message().withMessageId("1").withBody("1");
+        Message m2 = new Message().withMessageId("2").withBody("2");
+        Message m3 = new Message().withMessageId("3").withBody("3");
+
+        SQSMessageProcessorRequest request = new SQSMessageProcessorRequest(Lists.newArrayList(m1, m2, m3));
+        SQSMessageProcessorResponse response = messageProcessor.apply(request);
+
+        SQSMessageProcessorResponse expected = new SQSMessageProcessorResponse(Lists.newArrayList(
+                new SQSMessageResult("1", SQSMessageResult.Status.SUCCESS),
+                new SQSMessageResult("2", SQSMessageResult.Status.RETRY, 60),
+                new SQSMessageResult("3", SQSMessageResult.Status.ERROR)
+        ), WireFormat.SUPPORTED_VERSION);
+        assertThat(response, is(expected));
+    }
+
+    @Test
+    public void parallel_reusesPools() throws Exception {
+        assertThat(SQSMessageProcessor.pool(3), is(sameInstance(SQSMessageProcessor.pool(3))));
+        assertThat(SQSMessageProcessor.pool(3).getParallelism(), is(3));
+        assertThat(SQSMessageProcessor.pool(ForkJoinPool.getCommonPoolParallelism()), is(sameInstance(ForkJoinPool.commonPool())));
+    }
+
+    @Test(timeout = 10000)
+    public void apply_fifo() throws Exception {
+        // both groups wait for each other, so this only finishes if groups are processed concurrently
+        CountDownLatch groupsStarted = new CountDownLatch(2);
+        List<String> processed = Collections.synchronizedList(new ArrayList<>());
+        Consumer<Foo> fifoDelegate = foo -> {
+            if (foo.getFoo().endsWith("1")) {
+                groupsStarted.countDown();
+                try {
+                    groupsStarted.await();
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            processed.add(foo.getFoo());
+            if (foo.getFoo().equals("a2")) {
+                throw new RetryMessageException("try again later...").withRetryDelayInSeconds(60);
+            }
+        };
+        messageProcessor = SQSMessageProcessor.fifo(message -> new Foo(message.getBody()), fifoDelegate, Executors.newFixedThreadPool(2));
+
+        SQSMessageProcessorRequest request = new SQSMessageProcessorRequest(Lists.newArrayList(
+                groupMessage("a1", "a"), groupMessage("b1", "b"), groupMessage("a2", "a"), groupMessage("a3", "a"), groupMessage("b2", "b")));
+        SQSMessageProcessorResponse response = messageProcessor.apply(request);
+
+        // results are in the order the messages were received, not grouped
+        SQSMessageProcessorResponse expected = new SQSMessageProcessorResponse(Lists.newArrayList(
+                new SQSMessageResult("a1", SQSMessageResult.Status.SUCCESS),
+                new SQSMessageResult("b1", SQSMessageResult.Status.SUCCESS),
+                new SQSMessageResult("a2", SQSMessageResult.Status.RETRY, 60),
+                new SQSMessageResult("a3", SQSMessageResult.Status.RETRY, 60),
+                new SQSMessageResult("b2", SQSMessageResult.Status.SUCCESS)
+        ), WireFormat.SUPPORTED_VERSION);
+        assertThat(response, is(expected));
+        // a3 is never processed once a2 has failed
+        assertThat(processed.contains("a3"), is(false));
+        assertThat(processed.indexOf("a1") < processed.indexOf("a2"), is(true));
+        assertThat(processed.indexOf("b1") < processed.indexOf("b2"), is(true));
+    }
+
+    @Test
+    public void apply_processedMessageCache() throws Exception {
+        doNothing()
+                .doThrow(RuntimeException.class)
+                .doNothing()
+                .when(delegate).accept(any(Foo.class));
+        messageProcessor = new SQSMessageProcessor<>(deserializer, delegate, null, false,
+                ProcessedMessageCache.byMessageId(100, Duration.ofMinutes(15)));
+
+        Message m1 = new Message().withMessageId("1");
+        Message m2 = new Message().withMessageId("2");
+        SQSMessageProcessorRequest request = new SQSMessageProcessorRequest(Lists.newArrayList(m1, m2));
+
+        assertThat(messageProcessor.apply(request), is(new SQSMessageProcessorResponse(Lists.newArrayList(
+                new SQSMessageResult("1", SQSMessageResult.Status.SUCCESS),
+                new SQSMessageResult("2", SQSMessageResult.Status.ERROR)
+        ), WireFormat.SUPPORTED_VERSION)));
+
+        // on redelivery, only the message that failed is processed again
+        assertThat(messageProcessor.apply(request), is(new SQSMessageProcessorResponse(Lists.newArrayList(
+                new SQSMessageResult("1", SQSMessageResult.Status.SUCCESS),
+                new SQSMessageResult("2", SQSMessageResult.Status.SUCCESS)
+        ), WireFormat.SUPPORTED_VERSION)));
+        verify(deserializer, times(3)).deserialize(any(Message.class));
+        verify(delegate, times(3)).accept(any(Foo.class));
+    }
+
+    private static Message groupMessage(final String messageId, final String groupId) {
+        return new Message()
+                .withMessageId(messageId)
+                .withBody(messageId)
+                .addAttributesEntry(MessageGroups.MESSAGE_GROUP_ID_ATTRIBUTE, groupId);
+    }
+
     @Value
     private static class Foo {
         private final String foo;